@@ -0,0 +1,22 @@
+package benchmarks;
+
+import automail.Building;
+import automail.MailItem;
+
+import java.util.Random;
+
+/**
+ * Random mail for benchmarks, arrived at time 0 so it is already waiting on any clock
+ */
+final class BenchmarkMail {
+
+    private BenchmarkMail() {
+    }
+
+    static MailItem random(Random random) {
+        int floor = Building.LOWEST_FLOOR + random.nextInt(Building.FLOORS);
+        int size = MailItem.POSSIBLE_SIZES[random.nextInt(MailItem.POSSIBLE_SIZES.length)];
+        String priority = MailItem.PRIORITY_LEVELS[random.nextInt(MailItem.PRIORITY_LEVELS.length)];
+        return new MailItem(floor, size, priority, 0);
+    }
+}
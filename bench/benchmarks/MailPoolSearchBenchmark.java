@@ -0,0 +1,49 @@
+package benchmarks;
+
+import automail.MailItem;
+import org.openjdk.jmh.annotations.*;
+import strategies.AdvancedMailPool;
+import strategies.SearchMode;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one AdvancedMailPool.getMails call at a given pool size.
+ * The mails it takes are put back so every invocation sees a pool of the same size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MailPoolSearchBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int poolSize;
+
+    @Param({"SERIAL", "PARALLEL"})
+    public SearchMode searchMode;
+
+    private AdvancedMailPool pool;
+
+    @Setup(Level.Trial)
+    public void fillPool() {
+        pool = new AdvancedMailPool(searchMode);
+        Random random = new Random(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            pool.addToPool(BenchmarkMail.random(random));
+        }
+    }
+
+    @Benchmark
+    public List<MailItem> getMails() {
+        List<MailItem> mails = pool.getMails();
+        for (MailItem mail : mails) {
+            pool.addToPool(mail);
+        }
+        return mails;
+    }
+}
@@ -0,0 +1,65 @@
+package benchmarks;
+
+import automail.Priority;
+import org.openjdk.jmh.annotations.*;
+import strategies.ScoreKernel;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring one frontier of candidate loads, as the search does for the children of a node, with the
+ * scalar kernel and with the Vector API kernel when it was built (ant compile-vector before ant bench).
+ * Without the vector kernel, or without jdk.incubator.vector in the forked JVM, both rows score with the
+ * scalar one; ScoreKernel.create().getName() tells which kernel a run gets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class ScoreKernelBenchmark {
+
+    /** Floors and the waiting time of the oldest mail, in steps */
+    private static final int FLOORS = 10;
+    private static final int MAX_WAIT = 500;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    @Param({"17", "64"})
+    public int candidates;
+
+    @Param({"4"})
+    public int length;
+
+    @Param({"true", "false"})
+    public boolean scalar;
+
+    private ScoreKernel kernel;
+    private int[] floors;
+    private int[] arrivals;
+    private double[] weights;
+    private double[] scores;
+
+    @Setup(Level.Trial)
+    public void fillFrontier() {
+        System.setProperty("automail.scalarScoring", Boolean.toString(scalar));
+        kernel = ScoreKernel.create();
+        Random random = new Random(candidates);
+        floors = new int[length * candidates];
+        arrivals = new int[length * candidates];
+        weights = new double[length * candidates];
+        scores = new double[candidates];
+        for (int i = 0; i < floors.length; i++) {
+            floors[i] = 1 + random.nextInt(FLOORS);
+            arrivals[i] = random.nextInt(MAX_WAIT);
+            weights[i] = PRIORITIES[random.nextInt(PRIORITIES.length)].weight();
+        }
+    }
+
+    @Benchmark
+    public double[] score() {
+        kernel.score(candidates, length, floors, arrivals, weights, candidates, 1, MAX_WAIT, scores);
+        return scores;
+    }
+}
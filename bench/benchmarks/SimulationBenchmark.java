@@ -0,0 +1,31 @@
+package benchmarks;
+
+import automail.Simulation;
+import automail.SimulationResult;
+import org.openjdk.jmh.annotations.*;
+import strategies.MailStrategy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a complete simulation run, from mail generation to the last delivery
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    @Param({"SIMPLE", "ADVANCED"})
+    public MailStrategy strategy;
+
+    @Param({"42"})
+    public int seed;
+
+    @Benchmark
+    public SimulationResult run() {
+        return new Simulation(seed, strategy).run();
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import automail.MailItem;
+import automail.StorageTube;
+import exceptions.TubeFullException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of filling, sizing and emptying the robot's storage tube
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StorageTubeBenchmark {
+
+    private StorageTube emptyTube;
+    private StorageTube loadedTube;
+    private MailItem[] mails;
+
+    @Setup(Level.Trial)
+    public void createTubes() throws TubeFullException {
+        emptyTube = new StorageTube();
+        loadedTube = new StorageTube();
+        mails = new MailItem[emptyTube.getCapacity()];
+        for (int i = 0; i < mails.length; i++) {
+            mails[i] = new MailItem(1 + i, 1, "LOW", 0);
+            loadedTube.addItem(mails[i]);
+        }
+    }
+
+    /** Add mails up to capacity, then pop them all so the next invocation starts empty */
+    @Benchmark
+    public int addItem() throws TubeFullException {
+        for (MailItem mail : mails) {
+            emptyTube.addItem(mail);
+        }
+        int popped = 0;
+        while (!emptyTube.isEmpty()) {
+            popped += emptyTube.pop().getSize();
+        }
+        return popped;
+    }
+
+    /** Size of a full tube */
+    @Benchmark
+    public int getTotalOfSizes() {
+        return loadedTube.getTotalOfSizes();
+    }
+}
@@ -0,0 +1,124 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * How fast mail arrives over time, for ModelMailGenerator. Every model gives a rate, the expected mail per
+ * time step, and the number arriving on a step is Poisson of that rate, so arrivals on different steps are
+ * independent and a model can be scaled up or down without changing its shape.
+ * poisson is a constant rate, bursty alternates between a busy and a quiet rate, and diurnal follows a curve
+ * repeating every period, such as the hours of a day.
+ */
+public final class ArrivalModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    /** Rates at evenly spaced points of the period, linearly interpolated in between unless stepped */
+    private final double[] curve;
+    private final int period;
+    /** BURSTY: on for the first onSteps of the period, off for the rest */
+    private final int onSteps;
+    private final boolean stepped;
+
+    private ArrivalModel(String name, double[] curve, int period, int onSteps, boolean stepped){
+        for(double rate : curve){
+            if(!(rate >= 0) || Double.isInfinite(rate)){
+                throw new IllegalArgumentException("Arrival rates must be finite and not negative, got " + rate);
+            }
+        }
+        if(period < 1){
+            throw new IllegalArgumentException("An arrival period needs at least one step, got " + period);
+        }
+        this.name = name;
+        this.curve = curve;
+        this.period = period;
+        this.onSteps = onSteps;
+        this.stepped = stepped;
+    }
+
+    /**
+     * Mail arriving at a constant rate
+     * @param rate expected mail per time step
+     * @return model
+     */
+    public static ArrivalModel poisson(double rate){
+        return new ArrivalModel("poisson", new double[]{rate}, 1, 1, true);
+    }
+
+    /**
+     * Mail arriving in bursts: onSteps steps at onRate, then offSteps steps at offRate, over and over
+     * @param onRate expected mail per step during a burst
+     * @param onSteps length of a burst
+     * @param offRate expected mail per step between bursts
+     * @param offSteps length of the quiet time between bursts
+     * @return model
+     */
+    public static ArrivalModel bursty(double onRate, int onSteps, double offRate, int offSteps){
+        if(onSteps < 1 || offSteps < 0){
+            throw new IllegalArgumentException("Bursts of " + onSteps + " steps every " + offSteps + " steps");
+        }
+        return new ArrivalModel("bursty", new double[]{onRate, offRate}, onSteps + offSteps, onSteps, true);
+    }
+
+    /**
+     * Mail arriving along a curve that repeats every period, such as busy mornings and quiet nights
+     * @param curve expected mail per step at evenly spaced points of the period, the first at its start
+     * @param period steps before the curve repeats
+     * @return model
+     */
+    public static ArrivalModel diurnal(double[] curve, int period){
+        if(curve.length == 0){
+            throw new IllegalArgumentException("A diurnal curve needs at least one rate");
+        }
+        return new ArrivalModel("diurnal", curve.clone(), period, period, false);
+    }
+
+    /**
+     * @param step time step
+     * @return expected mail arriving on that step
+     */
+    public double rate(int step){
+        int phase = Math.floorMod(step, period);
+        if(stepped){
+            return phase < onSteps ? curve[0] : curve[curve.length - 1];
+        }
+        double position = (double) phase * curve.length / period;
+        int point = (int) position;
+        double next = curve[(point + 1) % curve.length];
+        return curve[point] + (next - curve[point]) * (position - point);
+    }
+
+    /**
+     * @return expected mail per step over a whole period
+     */
+    public double getMeanRate(){
+        double total = 0;
+        for(int step = 0; step < period; step++){
+            total += rate(step);
+        }
+        return total / period;
+    }
+
+    /**
+     * The same shape with every rate multiplied, to find the load a strategy keeps up with
+     * @param factor multiplier of the rates
+     * @return model
+     */
+    public ArrivalModel scaled(double factor){
+        double[] scaledCurve = new double[curve.length];
+        for(int i = 0; i < curve.length; i++){
+            scaledCurve[i] = curve[i] * factor;
+        }
+        return new ArrivalModel(name, scaledCurve, period, onSteps, stepped);
+    }
+
+    @Override
+    public String toString(){
+        if(name.equals("bursty")){
+            return String.format("bursty %.1f for %d, %.1f for %d", curve[0], onSteps, curve[1], period - onSteps);
+        }
+        return name.equals("poisson") ? String.format("poisson %.1f", curve[0]) :
+                "diurnal " + Arrays.toString(curve) + " over " + period;
+    }
+}
@@ -1,28 +1,153 @@
 package automail;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
 import strategies.*;
 
-public class Automail {
+public class Automail implements Serializable {
+    private static final long serialVersionUID = 1L;
 	      
+    /** First robot of the fleet */
     public Robot robot;
+    /** Every robot of the fleet, all drawing from the same mail pool */
+    public Robot[] robots;
     public IMailPool mailPool;
+    private boolean parallelSteps;
     
     Automail(IMailDelivery delivery) {
+    	this(delivery, MailStrategy.ADVANCED);
+    }
+
+    Automail(IMailDelivery delivery, MailStrategy strategy) {
+    	this(delivery, strategy, 1);
+    }
+
+    Automail(IMailDelivery delivery, MailStrategy strategy, int robotCount) {
+    	this(delivery, strategy, robotCount, Scenario.DEFAULT);
+    }
+
+    Automail(IMailDelivery delivery, MailStrategy strategy, int robotCount, Scenario scenario) {
+    	if (robotCount < 1) {
+    		throw new IllegalArgumentException("A fleet needs at least one robot, got " + robotCount);
+    	}
     	
     /** CHANGE NOTHING ABOVE HERE */
     	
-    	/** Initialize the MailPool */
-    	AdvancedMailPool advancedMailPool = new AdvancedMailPool();
-    	mailPool = advancedMailPool;
-    	
-        /** Initialize the MailSorter */
-    	IMailSorter sorter = new AdvancedMailSorter(advancedMailPool);
+    	/** Initialize the MailPool and the MailSorter working on it */
+    	IMailSorter sorter = createPool(strategy, scenario);
     	
     /** CHANGE NOTHING BELOW HERE */
     	
-    	/** Initialize robot */
-    	robot = new Robot(sorter, delivery);
+    	/** Initialize robots, they share the sorter and through it the pool */
+    	robots = new Robot[robotCount];
+    	for (int i = 0; i < robotCount; i++) {
+    		robots[i] = new Robot(sorter, delivery, scenario);
+    	}
+    	robot = robots[0];
     	
     }
+
+    /**
+     * Replace the pool with a new empty one of the given strategy
+     * @param strategy strategy of the pool and sorter
+     * @param scenario building and tubes the fleet was made for
+     * @return sorter working on the new pool
+     */
+    private IMailSorter createPool(MailStrategy strategy, Scenario scenario) {
+    	switch (strategy) {
+    		case SIMPLE:
+    			SimpleMailPool simpleMailPool = new SimpleMailPool(scenario);
+    			mailPool = simpleMailPool;
+    			return new SimpleMailSorter(simpleMailPool);
+    		case MONTE_CARLO:
+    			MonteCarloMailPool monteCarloMailPool = new MonteCarloMailPool(scenario);
+    			mailPool = monteCarloMailPool;
+    			return new MonteCarloMailSorter(monteCarloMailPool);
+    		case EXACT:
+    			ExactMailPool exactMailPool = new ExactMailPool(scenario);
+    			mailPool = exactMailPool;
+    			return new ExactMailSorter(exactMailPool);
+    		case INCREMENTAL:
+    			IncrementalMailPool incrementalMailPool = new IncrementalMailPool(scenario);
+    			mailPool = incrementalMailPool;
+    			return new IncrementalMailSorter(incrementalMailPool);
+    		case ADVANCED:
+    		default:
+    			AdvancedMailPool advancedMailPool = new AdvancedMailPool(scenario);
+    			mailPool = advancedMailPool;
+    			return new AdvancedMailSorter(advancedMailPool);
+    	}
+    }
+
+    /**
+     * Let robots of the fleet step at the same time within a tick. The pool keeps them from taking the
+     * same mail, but which robot gets which load then depends on thread timing, so runs are only
+     * reproducible with parallel steps off.
+     * @param parallelSteps true to step robots concurrently
+     */
+    public void setParallelSteps(boolean parallelSteps) {
+    	this.parallelSteps = parallelSteps;
+    }
+
+    /**
+     * Replace the pool and sorter with those of another strategy, moving the mail waiting in the pool over in
+     * the order it arrived. Robots out delivering keep the mail in their tubes, robots still waiting in the
+     * mailroom put theirs back, since the new sorter fills tubes its own way.
+     * @param strategy strategy to work with from now on
+     * @param scenario building and tubes the fleet was made for
+     */
+    public void switchStrategy(MailStrategy strategy, Scenario scenario) {
+    	if (!(mailPool instanceof IDrainablePool)) {
+    		throw new UnsupportedOperationException("Cannot take the mail out of " + mailPool.getClass().getSimpleName());
+    	}
+    	List<MailItem> waiting = ((IDrainablePool) mailPool).drainPool();
+    	for (Robot fleetRobot : robots) {
+    		if (fleetRobot.getState() == Robot.RobotState.WAITING) {
+    			while (!fleetRobot.tube.isEmpty()) {
+    				waiting.add(fleetRobot.tube.pop());
+    			}
+    		}
+    	}
+    	waiting.sort(Comparator.comparingInt(MailItem::getArrivalTime).thenComparingInt(MailItem::getNumber));
+    	IMailSorter sorter = createPool(strategy, scenario);
+    	for (Robot fleetRobot : robots) {
+    		fleetRobot.sorter = sorter;
+    	}
+    	for (MailItem mailItem : waiting) {
+    		mailPool.addToPool(mailItem);
+    	}
+    }
+
+    /**
+     * Move every robot of the fleet one time step, in fleet order unless parallel steps are on
+     */
+    public void step() {
+    	if (!parallelSteps || robots.length == 1) {
+    		for (Robot fleetRobot : robots) {
+    			fleetRobot.step();
+    		}
+    		return;
+    	}
+
+    	/** Worker threads have to see the clock of the thread running the simulation */
+    	Clock clock = Clock.current();
+    	List<ForkJoinTask<?>> steps = new ArrayList<>(robots.length);
+    	for (Robot fleetRobot : robots) {
+    		steps.add(ForkJoinTask.adapt(() -> {
+    			Clock previous = Clock.current();
+    			Clock.bind(clock);
+    			try {
+    				fleetRobot.step();
+    			} finally {
+    				Clock.bind(previous);
+    			}
+    		}));
+    	}
+    	ForkJoinTask.invokeAll(steps);
+    }
     
 }
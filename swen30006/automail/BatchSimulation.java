@@ -0,0 +1,129 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import strategies.MailStrategy;
+
+/**
+ * Runs the simulation over a range of seeds concurrently and summarises the results.
+ * Every run has its own clock, delivery log and fleet, so runs do not interfere.
+ */
+public class BatchSimulation {
+
+    private final int firstSeed;
+    private final int lastSeed;
+    private final int threads;
+    private final MailStrategy strategy;
+    private final int robots;
+
+    /**
+     * Usage: BatchSimulation firstSeed lastSeed [threads] [SIMPLE|ADVANCED|MONTE_CARLO|EXACT|INCREMENTAL] [robots]
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if(args.length < 2){
+            System.out.println("Usage: BatchSimulation firstSeed lastSeed [threads] [SIMPLE|ADVANCED|MONTE_CARLO|EXACT|INCREMENTAL] [robots]");
+            return;
+        }
+        int firstSeed = Integer.parseInt(args[0]);
+        int lastSeed = Integer.parseInt(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        MailStrategy strategy = args.length > 3 ? MailStrategy.valueOf(args[3]) : MailStrategy.ADVANCED;
+        int robots = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+
+        BatchSimulation batch = new BatchSimulation(firstSeed, lastSeed, threads, strategy, robots);
+        long start = System.nanoTime();
+        List<SimulationResult> results = batch.run();
+        long elapsed = System.nanoTime() - start;
+        printResults(results, elapsed);
+    }
+
+    /**
+     * Constructor for a batch of simulations
+     * @param firstSeed first seed to run, inclusive
+     * @param lastSeed last seed to run, inclusive
+     * @param threads number of simulations to run at once
+     * @param strategy mail pool and sorter every run works with
+     */
+    public BatchSimulation(int firstSeed, int lastSeed, int threads, MailStrategy strategy){
+        this(firstSeed, lastSeed, threads, strategy, 1);
+    }
+
+    /**
+     * Constructor for a batch of simulations
+     * @param firstSeed first seed to run, inclusive
+     * @param lastSeed last seed to run, inclusive
+     * @param threads number of simulations to run at once
+     * @param strategy mail pool and sorter every run works with
+     * @param robots number of robots in every run
+     */
+    public BatchSimulation(int firstSeed, int lastSeed, int threads, MailStrategy strategy, int robots){
+        if(lastSeed < firstSeed){
+            throw new IllegalArgumentException("Empty seed range " + firstSeed + ".." + lastSeed);
+        }
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+        this.threads = threads;
+        this.strategy = strategy;
+        this.robots = robots;
+    }
+
+    /**
+     * Runs one simulation per seed
+     * @return results in seed order
+     */
+    public List<SimulationResult> run() throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SimulationResult>> futures = new ArrayList<>();
+            for(int seed = firstSeed; seed <= lastSeed; seed++){
+                final int runSeed = seed;
+                futures.add(executor.submit(() -> {
+                    Simulation simulation = new Simulation(runSeed, strategy);
+                    simulation.setRobotCount(robots);
+                    return simulation.run();
+                }));
+            }
+
+            List<SimulationResult> results = new ArrayList<>(futures.size());
+            for(Future<SimulationResult> future : futures){
+                results.add(future.get());
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * @return statistics of the final score over the given results
+     */
+    public static Statistics scoreStatistics(List<SimulationResult> results){
+        double[] scores = new double[results.size()];
+        for(int i = 0; i < scores.length; i++){
+            scores[i] = results.get(i).getFinalScore();
+        }
+        return new Statistics(scores);
+    }
+
+    /**
+     * @return statistics of the final delivery time over the given results
+     */
+    public static Statistics deliveryTimeStatistics(List<SimulationResult> results){
+        double[] times = new double[results.size()];
+        for(int i = 0; i < times.length; i++){
+            times[i] = results.get(i).getFinalDeliveryTime();
+        }
+        return new Statistics(times);
+    }
+
+    public static void printResults(List<SimulationResult> results, long elapsedNanos){
+        System.out.println("Batch complete! " + results.size() + " runs in " + elapsedNanos / 1000000 + "ms");
+        System.out.println("Final Score: " + scoreStatistics(results));
+        System.out.println("Final Delivery time: " + deliveryTimeStatistics(results));
+    }
+}
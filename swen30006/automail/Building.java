@@ -1,5 +1,6 @@
 package automail;
 
+/** The building the simulation was written for, see Scenario for other buildings */
 public class Building {
 	
 	
@@ -0,0 +1,105 @@
+package automail;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Saves a paused simulation to a file and loads it back, see Simulation.checkpoint and Simulation.resume.
+ * Everything a run depends on belongs to its Simulation: the clock, the ledger, the robots with their tubes,
+ * the pool with its indexes, the generator with its random state and the mail store. The whole object graph is
+ * written with Java serialization, so a resumed run makes exactly the steps, loads and score the paused one
+ * would have. A checkpoint is an 8 byte header followed by the deflated serialized simulation:
+ * <pre>
+ * header:  int magic, int version
+ * </pre>
+ * Caches, metrics and background planners are not saved, they are rebuilt empty and do not change the run.
+ * Reading only creates the classes of this tree and the few java types they hold, see CLASSES, so a crafted
+ * file cannot make it build anything else.
+ */
+public final class Checkpoint {
+
+    /** "MCKP" */
+    public static final int MAGIC = 0x4D434B50;
+    /**
+     * Layout of the saved classes. Each declares a serialVersionUID of 1L, so recompiling them keeps old
+     * checkpoints readable; bump this whenever a saved class changes its serialized fields instead
+     */
+    public static final int VERSION = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Classes a checkpoint may hold, any other is rejected before it is created. Arrays go by their element type.
+     * The limits bound what a file can make the reader allocate. A run of 200000 mails saves graphs 11 objects
+     * deep with 730000 references and arrays of 330000 elements; the limits leave room for runs ten times larger.
+     */
+    private static final ObjectInputFilter CLASSES = ObjectInputFilter.Config.createFilter(
+            "maxdepth=64;maxrefs=16777216;maxarray=4194304;automail.*;strategies.*;"
+            + "java.lang.Boolean;java.lang.Integer;java.lang.Long;java.lang.Double;java.lang.Number;java.lang.Enum;"
+            + "java.lang.Object;java.util.ArrayList;java.util.HashMap;java.util.HashSet;java.util.TreeMap;"
+            + "java.util.Map$Entry;java.util.Random;java.util.Stack;java.util.Vector;java.util.concurrent.atomic.*;"
+            + "java.util.concurrent.locks.*;!*");
+
+    private Checkpoint(){
+    }
+
+    /**
+     * Writes a simulation, replacing any file at the path
+     * @param simulation simulation not running at the moment
+     * @param checkpoint file to write
+     */
+    static void write(Simulation simulation, Path checkpoint) throws IOException {
+        // the stream only ends deflaters it made itself
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (OutputStream file = new BufferedOutputStream(Files.newOutputStream(checkpoint), BUFFER_SIZE)) {
+            DataOutputStream header = new DataOutputStream(file);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.flush();
+            DeflaterOutputStream deflated = new DeflaterOutputStream(file, deflater, BUFFER_SIZE);
+            ObjectOutputStream out = new ObjectOutputStream(deflated);
+            out.writeObject(simulation);
+            out.flush();
+            deflated.finish();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Reads a simulation written by write
+     * @param checkpoint file to read
+     * @return the simulation, paused where it was written
+     * @throws IOException if it is not a checkpoint this version reads, or holds a class CLASSES rejects
+     */
+    static Simulation read(Path checkpoint) throws IOException {
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(checkpoint), BUFFER_SIZE)) {
+            DataInputStream header = new DataInputStream(file);
+            if(header.readInt() != MAGIC){
+                throw new IOException("Not a simulation checkpoint");
+            }
+            int version = header.readInt();
+            if(version != VERSION){
+                throw new IOException("Checkpoint of version " + version + ", expected version " + VERSION);
+            }
+            ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(file));
+            in.setObjectInputFilter(CLASSES);
+            return (Simulation) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Checkpoint of classes this version does not have", e);
+        }
+    }
+}
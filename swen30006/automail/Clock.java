@@ -1,18 +1,65 @@
 package automail;
 
-public class Clock {
+import java.io.Serializable;
+
+public class Clock implements Serializable {
+	private static final long serialVersionUID = 1L;
 	
-	/** Represents the current time **/
-    private static int Time = 0;
-    
-    /** The threshold for the latest time for mail to arrive **/
+	/** The threshold for the latest time for mail to arrive, in the default Scenario **/
     public static final int LAST_DELIVERY_TIME = 100;
 
+    /** Clock read by threads that have not bound one of their own */
+    private static final Clock GLOBAL = new Clock();
+
+    /** Clock each thread reads through Time() and Tick(), so simulations on different threads keep apart */
+    private static final ThreadLocal<Clock> CURRENT = ThreadLocal.withInitial(() -> GLOBAL);
+
+	/** Represents the current time **/
+    private int time = 0;
+
     public static int Time() {
-    	return Time;
+    	return CURRENT.get().time;
     }
     
     public static void Tick() {
-    	Time++;
+    	CURRENT.get().time++;
+    }
+
+    /**
+     * Move the clock straight to a later time, skipping the steps in between
+     * @param time time to move to, not before the current time
+     */
+    public static void JumpTo(int time) {
+    	Clock clock = CURRENT.get();
+    	if (time < clock.time) {
+    		throw new IllegalArgumentException("Cannot go back from " + clock.time + " to " + time);
+    	}
+    	clock.time = time;
+    }
+
+    /**
+     * The clock Time() and Tick() use on the calling thread
+     */
+    public static Clock current() {
+    	return CURRENT.get();
+    }
+
+    /**
+     * Make Time() and Tick() on the calling thread use the given clock
+     * @param clock clock to use, or null to go back to the shared one
+     */
+    public static void bind(Clock clock) {
+    	if (clock == null) {
+    		CURRENT.remove();
+    	} else {
+    		CURRENT.set(clock);
+    	}
+    }
+
+    /**
+     * @return the time of this clock
+     */
+    public int time() {
+    	return time;
     }
 }
@@ -0,0 +1,139 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Record of every delivery in a run. Numbered mail is tracked in a bitset indexed by MailItem.getNumber(),
+ * so checking for a repeated delivery is O(1) and costs a bit per mail. Mail without a number falls back
+ * to a hash set. The score and per-priority totals are kept up to date as deliveries come in.
+ */
+public class DeliveryLedger implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Penalty for longer delivery times */
+    private static final double PENALTY = 1.1;
+
+    private long[] deliveredBits = new long[16];
+    private final HashSet<MailItem> deliveredUnnumbered = new HashSet<MailItem>();
+    private int deliveredCount = 0;
+    private double totalScore = 0;
+    private final int[] countByPriority = new int[MailItem.PRIORITY_LEVELS.length];
+    private final long[] latencyByPriority = new long[MailItem.PRIORITY_LEVELS.length];
+
+    /**
+     * Record a delivery and add its score
+     * @param deliveryItem the mail item delivered
+     * @param deliveryTime the time it was delivered at
+     * @return false, recording nothing, if the mail item had already been delivered
+     */
+    public boolean record(MailItem deliveryItem, int deliveryTime){
+        if(!markDelivered(deliveryItem)){
+            return false;
+        }
+        int priority = deliveryItem.getPriority().ordinal();
+        int latency = deliveryTime - deliveryItem.getArrivalTime();
+        deliveredCount++;
+        countByPriority[priority]++;
+        latencyByPriority[priority] += latency;
+        totalScore += deliveryScore(deliveryItem, deliveryTime);
+        return true;
+    }
+
+    /**
+     * @return whether the mail item has been delivered
+     */
+    public boolean isDelivered(MailItem mailItem){
+        int number = mailItem.getNumber();
+        if(number < 0){
+            return deliveredUnnumbered.contains(mailItem);
+        }
+        int word = number >>> 6;
+        return word < deliveredBits.length && (deliveredBits[word] & (1L << number)) != 0;
+    }
+
+    /**
+     * Score of a delivery, (delivery time - arrival time)^1.1 * priority weight
+     * @param deliveryItem the mail item delivered
+     * @param deliveryTime the time it was delivered at
+     * @return the penalty for the delivery
+     */
+    public static double deliveryScore(MailItem deliveryItem, int deliveryTime){
+        // Take (delivery time - arrivalTime)**penalty * priority_weight
+        return Math.pow(deliveryTime - deliveryItem.getArrivalTime(), PENALTY)*deliveryItem.getPriority().weight();
+    }
+
+    /**
+     * @return number of mail items delivered
+     */
+    public int getDeliveredCount(){
+        return deliveredCount;
+    }
+
+    /**
+     * @return sum of the scores of all deliveries
+     */
+    public double getTotalScore(){
+        return totalScore;
+    }
+
+    /**
+     * @param priorityLevel one of MailItem.PRIORITY_LEVELS
+     * @return number of mail items of that priority delivered
+     */
+    public int getDeliveredCount(String priorityLevel){
+        return countByPriority[priorityIndex(priorityLevel)];
+    }
+
+    /**
+     * @param priorityLevel one of MailItem.PRIORITY_LEVELS
+     * @return total time between arrival and delivery over the mail items of that priority
+     */
+    public long getLatencySum(String priorityLevel){
+        return latencyByPriority[priorityIndex(priorityLevel)];
+    }
+
+    /**
+     * @param priorityLevel one of MailItem.PRIORITY_LEVELS
+     * @return mean time between arrival and delivery of that priority, 0 if none was delivered
+     */
+    public double getMeanLatency(String priorityLevel){
+        int index = priorityIndex(priorityLevel);
+        return countByPriority[index] == 0 ? 0 : (double) latencyByPriority[index] / countByPriority[index];
+    }
+
+    @Override
+    public String toString(){
+        StringBuilder builder = new StringBuilder();
+        for(String priorityLevel : MailItem.PRIORITY_LEVELS){
+            if(builder.length() > 0){
+                builder.append(", ");
+            }
+            builder.append(String.format("%s: %d delivered, mean latency %.2f", priorityLevel,
+                    getDeliveredCount(priorityLevel), getMeanLatency(priorityLevel)));
+        }
+        return builder.toString();
+    }
+
+    private boolean markDelivered(MailItem mailItem){
+        int number = mailItem.getNumber();
+        if(number < 0){
+            return deliveredUnnumbered.add(mailItem);
+        }
+        int word = number >>> 6;
+        if(word >= deliveredBits.length){
+            deliveredBits = Arrays.copyOf(deliveredBits, Math.max(word + 1, deliveredBits.length * 2));
+        }
+        long bit = 1L << number;
+        if((deliveredBits[word] & bit) != 0){
+            return false;
+        }
+        deliveredBits[word] |= bit;
+        return true;
+    }
+
+    private static int priorityIndex(String priorityLevel){
+        return Priority.of(priorityLevel).ordinal();
+    }
+}
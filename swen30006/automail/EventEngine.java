@@ -0,0 +1,156 @@
+package automail;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs a simulation from event to event instead of tick by tick. Events are a robot reaching the floor it was
+ * heading for, a robot that had been waiting for mail becoming active and mail arriving. Between events robots
+ * only move or wait, so the clock jumps straight to the next event and robots catch up on the moves they
+ * skipped when they are next stepped. Each time step that is processed runs exactly as in the tick loop,
+ * generator first and then the robots due in fleet order, so time and score come out the same.
+ */
+class EventEngine {
+
+    private static final int MAIL = -1;
+
+    private final Robot[] robots;
+    private final IMailGenerator generator;
+    private final BooleanSupplier finished;
+
+    /** Events as time << 32 | (robot + 1), robot MAIL for arrivals. Superseded events stay until polled. */
+    private final PriorityQueue<Long> events = new PriorityQueue<Long>();
+    private final int[] wakeTimes;
+    private final int[] lastSteps;
+    private final boolean[] due;
+    private final int[] dueRobots;
+    private int arrivalTime;
+
+    /**
+     * @param robots fleet, stepped in this order within a time step
+     * @param generator source of mail
+     * @param finished whether the simulation is over, checked between time steps
+     */
+    EventEngine(Robot[] robots, IMailGenerator generator, BooleanSupplier finished) {
+        this.robots = robots;
+        this.generator = generator;
+        this.finished = finished;
+        this.wakeTimes = new int[robots.length];
+        this.lastSteps = new int[robots.length];
+        this.due = new boolean[robots.length];
+        this.dueRobots = new int[robots.length];
+    }
+
+    /**
+     * Runs until finished or the stop time. The clock is left one step after the last time step processed, as
+     * the tick loop leaves it, or at the stop time with the robots caught up on the steps before it, so a new
+     * engine can carry on from there.
+     * @param stopTime time step not to process, Integer.MAX_VALUE to run until finished
+     */
+    void run(int stopTime) {
+        int now = Clock.Time();
+        for (int i = 0; i < robots.length; i++) {
+            lastSteps[i] = now - 1;
+            schedule(i, now);
+        }
+        arrivalTime = generator.nextArrivalTime();
+        schedule(MAIL, arrivalTime);
+
+        while (!finished.getAsBoolean()) {
+            int time = nextEventTime();
+            if (time >= stopTime) {
+                pause(stopTime);
+                return;
+            }
+            Clock.JumpTo(time);
+
+            /** Robots woken by their own events, plus every waiting robot if mail arrives now */
+            int dueCount = 0;
+            while (!events.isEmpty() && timeOf(events.peek()) == time) {
+                int robot = robotOf(events.poll());
+                if (robot != MAIL && wakeTimes[robot] == time && !due[robot]) {
+                    due[robot] = true;
+                    dueRobots[dueCount++] = robot;
+                }
+            }
+            boolean arrivals = arrivalTime == time;
+            if (arrivals) {
+                for (int i = 0; i < robots.length; i++) {
+                    if (!due[i] && robots[i].getState() == Robot.RobotState.WAITING) {
+                        due[i] = true;
+                        dueRobots[dueCount++] = i;
+                    }
+                }
+            }
+            Arrays.sort(dueRobots, 0, dueCount);
+
+            generator.step();
+            for (int d = 0; d < dueCount; d++) {
+                int i = dueRobots[d];
+                due[i] = false;
+                if (robots[i].isIdle()) {
+                    /** Robots earlier in the fleet took all the mail it could have had */
+                    schedule(i, robots[i].nextActiveTime());
+                    continue;
+                }
+                robots[i].skipSteps(time - lastSteps[i] - 1);
+                robots[i].step();
+                lastSteps[i] = time;
+                schedule(i, robots[i].nextActiveTime());
+            }
+            Clock.Tick();
+            if (arrivals) {
+                arrivalTime = generator.nextArrivalTime();
+                schedule(MAIL, arrivalTime);
+            }
+        }
+    }
+
+    /**
+     * Catches every robot up to the step before the stop time, which only moves or waits until its next event
+     */
+    private void pause(int stopTime) {
+        for (int i = 0; i < robots.length; i++) {
+            if (stopTime - 1 > lastSteps[i]) {
+                robots[i].skipSteps(stopTime - 1 - lastSteps[i]);
+                lastSteps[i] = stopTime - 1;
+            }
+        }
+        Clock.JumpTo(stopTime);
+    }
+
+    /**
+     * @return time of the earliest event still current, dropping superseded ones
+     */
+    private int nextEventTime() {
+        while (!events.isEmpty()) {
+            long event = events.peek();
+            int robot = robotOf(event);
+            int time = timeOf(event);
+            if (robot == MAIL ? time == arrivalTime : time == wakeTimes[robot]) {
+                return time;
+            }
+            events.poll();
+        }
+        throw new IllegalStateException("Simulation is not finished at " + Clock.Time()
+                + " but no robot will move and no mail will arrive");
+    }
+
+    private void schedule(int robot, int time) {
+        if (robot != MAIL) {
+            wakeTimes[robot] = time;
+        }
+        if (time != Integer.MAX_VALUE) {
+            events.add(((long) time << 32) | (robot + 1));
+        }
+    }
+
+    private static int timeOf(long event) {
+        return (int) (event >>> 32);
+    }
+
+    private static int robotOf(long event) {
+        return (int) event - 1;
+    }
+}
@@ -0,0 +1,94 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Which floors mail goes to, for ModelMailGenerator. Either every floor alike, or Zipf-skewed: the hottest
+ * floor gets the most mail, the floor above it half as much for an exponent of 1, the next a third, and so on,
+ * wrapping round to the lowest floor past the top of the building.
+ */
+public final class FloorDistribution implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final FloorDistribution UNIFORM = new FloorDistribution(0, 0);
+
+    private final double exponent;
+    private final int hottestFloor;
+
+    private FloorDistribution(double exponent, int hottestFloor){
+        this.exponent = exponent;
+        this.hottestFloor = hottestFloor;
+    }
+
+    /**
+     * Floors skewed after Zipf's law, the k-th floor from the hottest one getting mail in proportion to 1/k^exponent
+     * @param exponent skew, 0 for every floor alike
+     * @param hottestFloor floor getting the most mail
+     * @return distribution
+     */
+    public static FloorDistribution zipf(double exponent, int hottestFloor){
+        if(!(exponent >= 0) || Double.isInfinite(exponent)){
+            throw new IllegalArgumentException("A Zipf exponent must be finite and not negative, got " + exponent);
+        }
+        return new FloorDistribution(exponent, hottestFloor);
+    }
+
+    /**
+     * @param scenario building the mail goes to
+     * @return sampler of this distribution over the building's floors
+     */
+    Sampler sampler(Scenario scenario){
+        return new Sampler(scenario);
+    }
+
+    @Override
+    public String toString(){
+        return exponent == 0 ? "uniform" : "zipf " + exponent + " from floor " + hottestFloor;
+    }
+
+    /**
+     * Draws floors of one building by a binary search of the cumulative weights of the floors by rank
+     */
+    final class Sampler implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final int lowestFloor;
+        private final int floors;
+        private final int hottestOffset;
+        private final double[] cumulative;   // null when uniform
+
+        private Sampler(Scenario scenario){
+            lowestFloor = scenario.getLowestFloor();
+            floors = scenario.getFloors();
+            hottestOffset = exponent == 0 ? 0 : Math.floorMod(hottestFloor - lowestFloor, floors);
+            if(exponent == 0){
+                cumulative = null;
+                return;
+            }
+            cumulative = new double[floors];
+            double total = 0;
+            for(int rank = 0; rank < floors; rank++){
+                total += Math.pow(rank + 1, -exponent);
+                cumulative[rank] = total;
+            }
+            for(int rank = 0; rank < floors; rank++){
+                cumulative[rank] /= total;
+            }
+        }
+
+        /**
+         * @param random source of randomness, drawn from once
+         * @return destination floor
+         */
+        int nextFloor(RandomGenerator random){
+            if(cumulative == null){
+                return lowestFloor + random.nextInt(floors);
+            }
+            int rank = Arrays.binarySearch(cumulative, random.nextDouble());
+            rank = Math.min(rank >= 0 ? rank + 1 : -rank - 1, floors - 1);
+            return lowestFloor + (hottestOffset + rank) % floors;
+        }
+    }
+}
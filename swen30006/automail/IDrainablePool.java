@@ -0,0 +1,15 @@
+package automail;
+
+import java.util.List;
+
+/**
+ * A MailPool that can give back all the mail it holds, so a paused simulation can hand it to the pool of
+ * another strategy, see Simulation.switchStrategy
+ */
+public interface IDrainablePool extends IMailPool {
+	/**
+     * Takes every mail out of the pool
+     * @return the mail, in no particular order
+     */
+    List<MailItem> drainPool();
+}
@@ -0,0 +1,31 @@
+package automail;
+
+/**
+ * A MailGenerator is called by the simulation on every time step and adds the mail arriving
+ * at that time to the MailPool.
+ */
+public interface IMailGenerator {
+    /** Arrival time reported when no more mail will arrive */
+    int NEVER = Integer.MAX_VALUE;
+
+    /**
+     * Adds the mail arriving at the current time to the mail pool
+     */
+    void step();
+
+    /**
+     * @return true once no more mail will ever arrive
+     */
+    boolean isComplete();
+
+    /**
+     * @return how many mail items have been created so far
+     */
+    int getMailCreated();
+
+    /**
+     * Lets the simulation jump over steps without arrivals; step() need only be called at the time returned
+     * @return the earliest time step from now on at which mail arrives, or NEVER
+     */
+    int nextArrivalTime();
+}
@@ -7,4 +7,13 @@ public interface IMailSorter {
     /** Fills the robot's tube or backpack and tells robot whether or not to go (start delivering) */
     /** This method is called in Simulation.java on every time step */
     boolean fillStorageTube(StorageTube tube);
+
+    /**
+     * Earliest time fillStorageTube could do anything for a robot waiting with this tube, assuming no more mail
+     * arrives. Lets the simulation skip the steps in between; by default none are skipped.
+     * @return the current time, a later time, or Integer.MAX_VALUE if only new mail can make it do anything
+     */
+    default int idleUntil(StorageTube tube) {
+        return Clock.Time();
+    }
 }
@@ -0,0 +1,12 @@
+package automail;
+
+/**
+ * A MailPool whose search draws random numbers. By default it seeds itself the way it always has; given the
+ * simulation's streams it takes its randomness from the SEARCH streams instead.
+ */
+public interface IRandomizedPool extends IMailPool {
+    /**
+     * @param streams streams of the simulation, null for the pool's own seeding
+     */
+    void setRandomStreams(RandomStreams streams);
+}
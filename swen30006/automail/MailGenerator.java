@@ -1,23 +1,35 @@
 package automail;
 
+import java.io.Serializable;
 import java.util.*;
+import java.util.random.RandomGenerator;
 
 /**
- * This class generates the mail
+ * This class generates the mail, the whole schedule at once
  */
-public class MailGenerator {
+public class MailGenerator implements IMailGenerator, Serializable {
+    private static final long serialVersionUID = 1L;
 
     private final int MAIL_TO_CREATE;
 
     private int mailCreated;
+    private final MailStore mailStore = new MailStore();
 
-    private final Random random;
-    /** This seed is used to make the behavior deterministic */
+    /** One source of randomness per field, all the same Random unless built from RandomStreams */
+    private final RandomGenerator floorRandom;
+    private final RandomGenerator sizeRandom;
+    private final RandomGenerator priorityRandom;
+    private final RandomGenerator arrivalRandom;
+
+    private final Scenario scenario;
     
     private boolean complete;
     private IMailPool mailPool;
 
     private HashMap<Integer,ArrayList<MailItem>> allMail;
+    /** Times in allMail in order, and how many of them have passed */
+    private int[] arrivalTimes = new int[0];
+    private int arrivalsPassed;
 
     /**
      * Constructor for mail generation
@@ -25,19 +37,71 @@ public class MailGenerator {
      * @param floors the number of floors in the building
      */
     public MailGenerator(int mailToCreate, IMailPool mailPool, HashMap<Boolean,Integer> seed){
+        this(mailToCreate, mailPool, seed, Scenario.DEFAULT);
+    }
+
+    /**
+     * Constructor for mail generation in the given building
+     * @param mailToCreate how many mail to create
+     * @param mailPool pool receiving the mail
+     * @param seed seed under the key true, or no seed under the key false
+     * @param scenario floors mail goes to and time it arrives by
+     */
+    public MailGenerator(int mailToCreate, IMailPool mailPool, HashMap<Boolean,Integer> seed, Scenario scenario){
+        this(mailToCreate, mailPool, seededRandom(seed), scenario);
+    }
+
+    /**
+     * Constructor for mail generation drawing every field from its own stream, so changing how one field
+     * is drawn leaves the others alone. A seed gives different mail than with the other constructor.
+     * @param mailToCreate how many mail to create
+     * @param mailPool pool receiving the mail
+     * @param streams streams of the simulation
+     */
+    public MailGenerator(int mailToCreate, IMailPool mailPool, RandomStreams streams){
+        this(mailToCreate, mailPool, streams, Scenario.DEFAULT);
+    }
+
+    /**
+     * Constructor for mail generation in the given building drawing every field from its own stream
+     * @param mailToCreate how many mail to create
+     * @param mailPool pool receiving the mail
+     * @param streams streams of the simulation
+     * @param scenario floors mail goes to and time it arrives by
+     */
+    public MailGenerator(int mailToCreate, IMailPool mailPool, RandomStreams streams, Scenario scenario){
+        this(mailToCreate, mailPool, streams.stream(RandomStreams.Purpose.DESTINATION),
+                streams.stream(RandomStreams.Purpose.SIZE), streams.stream(RandomStreams.Purpose.PRIORITY),
+                streams.stream(RandomStreams.Purpose.ARRIVAL), scenario);
+    }
+
+    private MailGenerator(int mailToCreate, IMailPool mailPool, Random random, Scenario scenario){
+        this(mailToCreate, mailPool, random, random, random, random, scenario);
+    }
+
+    private MailGenerator(int mailToCreate, IMailPool mailPool, RandomGenerator floorRandom,
+                          RandomGenerator sizeRandom, RandomGenerator priorityRandom, RandomGenerator arrivalRandom,
+                          Scenario scenario){
         MAIL_TO_CREATE = mailToCreate;
+        this.scenario = scenario;
         mailCreated = 0;
-        if(seed.containsKey(true)){
-        	this.random = new Random((long) seed.get(true));
-        }
-        else{
-        	this.random = new Random();	
-        }
+        this.floorRandom = floorRandom;
+        this.sizeRandom = sizeRandom;
+        this.priorityRandom = priorityRandom;
+        this.arrivalRandom = arrivalRandom;
         complete = false;
         allMail = new HashMap<Integer,ArrayList<MailItem>>();
         this.mailPool = mailPool;
     }
 
+    /** Random shared by all fields, the seed is used to make the behavior deterministic */
+    private static Random seededRandom(HashMap<Boolean,Integer> seed){
+        if(seed.containsKey(true)){
+        	return new Random((long) seed.get(true));
+        }
+        return new Random();
+    }
+
     /**
      * Creates a mail item that needs to be delivered
      */
@@ -46,39 +110,40 @@ public class MailGenerator {
         int size = generateSize();
         String priority_level = generatePriorityLevel();
         int arrival_time = generateArrivalTime();
-        return new MailItem(dest_floor,size,priority_level,arrival_time);
+        return mailStore.add(dest_floor,size,Priority.of(priority_level),arrival_time);
     }
 
     /**
      * Creates a destination floor between the ranges of GROUND_FLOOR to FLOOR
      */
     public int generateDestinationFloor(){
-        return Building.LOWEST_FLOOR + this.random.nextInt(Building.FLOORS);
+        return scenario.getLowestFloor() + this.floorRandom.nextInt(scenario.getFloors());
     }
 
     /**
      * Creates a random size selected from the POSSIBLE_SIZES array
      */
     public int generateSize(){
-        return (int) getRandom(MailItem.POSSIBLE_SIZES);
+        return (int) getRandom(MailItem.POSSIBLE_SIZES, sizeRandom);
     }
 
     /**
      * Creates a random priority level selected from the PRIORITY_LEVELS array
      */
     public String generatePriorityLevel(){
-        return (String) getRandom(MailItem.PRIORITY_LEVELS);
+        return (String) getRandom(MailItem.PRIORITY_LEVELS, priorityRandom);
     }
 
     public int generateArrivalTime(){
-        return 1 + random.nextInt(Clock.LAST_DELIVERY_TIME);
+        return 1 + arrivalRandom.nextInt(scenario.getLastDeliveryTime());
     }
 
     /**
      * Returns a random element from an array
      * @param array of objects
+     * @param random source of randomness of the field
      */
-    private Object getRandom(Object[] array){
+    private Object getRandom(Object[] array, RandomGenerator random){
         return array[random.nextInt(array.length)];
     }
 
@@ -86,6 +151,7 @@ public class MailGenerator {
      * This class initializes all mail and sets their corresponding values,
      */
     public void generateAllMail(){
+        complete = mailCreated >= MAIL_TO_CREATE;
         while(!complete){
             MailItem newMail =  generateMail();
             int timeToDeliver = newMail.getArrivalTime();
@@ -110,11 +176,42 @@ public class MailGenerator {
                 complete = true;
             }
         }
+
+        arrivalTimes = new int[allMail.size()];
+        int i = 0;
+        for(int time : allMail.keySet()){
+            arrivalTimes[i++] = time;
+        }
+        Arrays.sort(arrivalTimes);
+        arrivalsPassed = 0;
     }
     
+    /**
+     * @return true once generateAllMail has created all the mail
+     */
+    @Override
+    public boolean isComplete(){
+        return complete;
+    }
+
+    @Override
+    public int getMailCreated(){
+        return mailCreated;
+    }
+
+    @Override
+    public int nextArrivalTime(){
+        int now = Clock.Time();
+        while(arrivalsPassed < arrivalTimes.length && arrivalTimes[arrivalsPassed] < now){
+            arrivalsPassed++;
+        }
+        return arrivalsPassed < arrivalTimes.length ? arrivalTimes[arrivalsPassed] : NEVER;
+    }
+
     /**
      * While there are steps left, create a new mail item to deliver
      */
+    @Override
     public void step(){
     	// Check if there are any mail to create
         if(this.allMail.containsKey(Clock.Time())){
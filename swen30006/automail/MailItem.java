@@ -1,43 +1,51 @@
 package automail;
 
-import java.util.UUID;
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Represents a mail item
  */
-public class MailItem {
+public class MailItem implements Serializable {
+    private static final long serialVersionUID = 1L;
 	
     public final static Integer[] POSSIBLE_SIZES = {1,2,4};
     public final static String[] PRIORITY_LEVELS = {"LOW","MEDIUM","HIGH"};
 
-    /** Represents the destination floor the mail is intended to go to*/
-    private final int DESTINATION_FLOOR;
-    private final int UNIT_SIZE;
-    private final String ID;
-    private final String PRIORITY_LEVEL;
-    private final int ARRIVAL_TIME;
+    /** Detached mail is numbered separately so its IDs stay unique */
+    private static final AtomicInteger DETACHED_IDS = new AtomicInteger();
+
+    /** The row of the store holding this mail item's fields */
+    private final MailStore store;
+    private final int number;
 
     /**
-     * Constructor for a MailItem
+     * Constructor for a MailItem outside any generator's store
      * @param dest_floor the destination floor intended for this mail item
      * @param mailSize the size of the mail can be 1,2 or 4
      */
     public MailItem(int dest_floor, int mailSize, String priority_level, int arrival_time){
-        this.DESTINATION_FLOOR = dest_floor;
-        this.UNIT_SIZE = mailSize;
-        this.ID = UUID.randomUUID().toString();
-        this.PRIORITY_LEVEL = priority_level;
-        this.ARRIVAL_TIME = arrival_time;
+        this.store = MailStore.detached();
+        store.add(dest_floor, mailSize, Priority.of(priority_level), arrival_time);
+        this.number = DETACHED_IDS.getAndIncrement();
+    }
+
+    /**
+     * Constructor for a handle onto a row of a store, see MailStore.add
+     */
+    MailItem(MailStore store, int number){
+        this.store = store;
+        this.number = number;
     }
 
     @Override
     public String toString(){
         return "Mail Item : { " +
-                "ID: " + ID +
-                ", Destination: "+ DESTINATION_FLOOR +
-                ", Size: "+ UNIT_SIZE +
-                ", Priority Level: "+ PRIORITY_LEVEL +
-                ", Arrival Time: "+ ARRIVAL_TIME +
+                "ID: " + getId() +
+                ", Destination: "+ getDestFloor() +
+                ", Size: "+ getSize() +
+                ", Priority Level: "+ getPriorityLevel() +
+                ", Arrival Time: "+ getArrivalTime() +
                 "}";
     }
 
@@ -46,7 +54,7 @@ public class MailItem {
      * @return the destination floor of the mail item
      */
     public int getDestFloor() {
-        return DESTINATION_FLOOR;
+        return store.getDestFloor(row());
     }
 
     /**
@@ -54,7 +62,7 @@ public class MailItem {
      * @return the unit size for a mail item
      */
     public int getSize() {
-        return UNIT_SIZE;
+        return store.getSize(row());
     }
 
     /**
@@ -62,7 +70,15 @@ public class MailItem {
      * @return the ID of a mail item
      */
     public String getId() {
-        return ID;
+        return store.isNumbered() ? Integer.toString(number) : "D" + number;
+    }
+
+    /**
+     *
+     * @return the number its generator gave this mail item, or -1 if it has none
+     */
+    public int getNumber() {
+        return store.isNumbered() ? number : -1;
     }
 
     /**
@@ -70,7 +86,15 @@ public class MailItem {
      * @return the priority level of a mail item
      */
     public String getPriorityLevel(){
-        return PRIORITY_LEVEL;
+        return getPriority().name();
+    }
+
+    /**
+     *
+     * @return the priority of a mail item
+     */
+    public Priority getPriority(){
+        return store.getPriority(row());
     }
 
     /**
@@ -78,7 +102,21 @@ public class MailItem {
      * @return the arrival time of a mail item
      */
     public int getArrivalTime(){
-        return ARRIVAL_TIME;
+        return store.getArrivalTime(row());
+    }
+
+    /**
+     * Releases the mail item's row once it has been delivered, see MailStore.retire
+     */
+    void retire(){
+        if(store.isNumbered()){
+            store.retire(number);
+        }
+    }
+
+    /** Detached mail is the only row of its store */
+    private int row(){
+        return store.isNumbered() ? number : 0;
     }
 
 }
@@ -0,0 +1,172 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Compact storage for the mail a generator creates. Every mail gets the next int number and its fields live in
+ * parallel primitive arrays, about ten bytes a mail; a MailItem is only a handle onto its row. The arrays are split
+ * into pages so the store grows without copying, and a page is dropped once all of its mail has been retired after
+ * delivery, so a long run only keeps the pages that still hold mail on its way. A dropped page is kept for reuse
+ * by the next new page, so a steady stream of mail allocates no more pages once it is under way.
+ */
+public final class MailStore implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final boolean numbered;
+    private int[][] destFloors = new int[1][];
+    private int[][] arrivalTimes = new int[1][];
+    private byte[][] sizes = new byte[1][];
+    private byte[][] priorities = new byte[1][];
+    private int[] livePerPage = new int[1];
+    private int count = 0;
+
+    /** Arrays of the last dropped page, null if there is none to reuse */
+    private int[] spareDestFloors;
+    private int[] spareArrivalTimes;
+    private byte[] spareSizes;
+    private byte[] sparePriorities;
+
+    /**
+     * Constructor for an empty store numbering its mail from 0
+     */
+    public MailStore(){
+        this(true);
+    }
+
+    private MailStore(boolean numbered){
+        this.numbered = numbered;
+    }
+
+    /**
+     * A store holding a single mail item made outside any generator. Mail in it has no number.
+     */
+    static MailStore detached(){
+        return new MailStore(false);
+    }
+
+    /**
+     * Adds a mail item to the store
+     * @param dest_floor the destination floor intended for the mail item
+     * @param mailSize the size of the mail can be 1,2 or 4
+     * @param priority the priority of the mail item
+     * @param arrival_time the time the mail item arrives at the mailroom
+     * @return the mail item, numbered with its position in the store
+     */
+    public MailItem add(int dest_floor, int mailSize, Priority priority, int arrival_time){
+        int number = count;
+        int page = number >>> PAGE_BITS;
+        if(page == destFloors.length){
+            int pages = page * 2;
+            destFloors = Arrays.copyOf(destFloors, pages);
+            arrivalTimes = Arrays.copyOf(arrivalTimes, pages);
+            sizes = Arrays.copyOf(sizes, pages);
+            priorities = Arrays.copyOf(priorities, pages);
+            livePerPage = Arrays.copyOf(livePerPage, pages);
+        }
+        if(destFloors[page] == null){
+            if(spareDestFloors != null){
+                destFloors[page] = spareDestFloors;
+                arrivalTimes[page] = spareArrivalTimes;
+                sizes[page] = spareSizes;
+                priorities[page] = sparePriorities;
+                spareDestFloors = null;
+            } else{
+                int pageSize = numbered ? PAGE_SIZE : 1;
+                destFloors[page] = new int[pageSize];
+                arrivalTimes[page] = new int[pageSize];
+                sizes[page] = new byte[pageSize];
+                priorities[page] = new byte[pageSize];
+            }
+        }
+        int slot = number & PAGE_MASK;
+        destFloors[page][slot] = dest_floor;
+        arrivalTimes[page][slot] = arrival_time;
+        sizes[page][slot] = (byte) mailSize;
+        priorities[page][slot] = (byte) priority.ordinal();
+        livePerPage[page]++;
+        count++;
+        return new MailItem(this, number);
+    }
+
+    /**
+     * @return the number of mail items added so far
+     */
+    public int size(){
+        return count;
+    }
+
+    /**
+     * @return whether the mail of this store is numbered, which only mail made outside a generator is not
+     */
+    public boolean isNumbered(){
+        return numbered;
+    }
+
+    /**
+     * Releases a delivered mail item. Its fields may no longer be read once every mail sharing its page is retired.
+     * @param number the number of the mail item
+     */
+    public void retire(int number){
+        int page = number >>> PAGE_BITS;
+        if(--livePerPage[page] == 0 && numbered && count >= (page + 1) << PAGE_BITS){
+            spareDestFloors = destFloors[page];
+            spareArrivalTimes = arrivalTimes[page];
+            spareSizes = sizes[page];
+            sparePriorities = priorities[page];
+            destFloors[page] = null;
+            arrivalTimes[page] = null;
+            sizes[page] = null;
+            priorities[page] = null;
+        }
+    }
+
+    /**
+     * @return the destination floor of the mail item with the given number
+     */
+    public int getDestFloor(int number){
+        return intPage(destFloors, number)[number & PAGE_MASK];
+    }
+
+    /**
+     * @return the arrival time of the mail item with the given number
+     */
+    public int getArrivalTime(int number){
+        return intPage(arrivalTimes, number)[number & PAGE_MASK];
+    }
+
+    /**
+     * @return the unit size of the mail item with the given number
+     */
+    public int getSize(int number){
+        return bytePage(sizes, number)[number & PAGE_MASK];
+    }
+
+    /**
+     * @return the priority of the mail item with the given number
+     */
+    public Priority getPriority(int number){
+        return PRIORITIES[bytePage(priorities, number)[number & PAGE_MASK]];
+    }
+
+    private static int[] intPage(int[][] pages, int number){
+        int[] page = pages[number >>> PAGE_BITS];
+        if(page == null){
+            throw new IllegalStateException("Mail " + number + " has been retired");
+        }
+        return page;
+    }
+
+    private static byte[] bytePage(byte[][] pages, int number){
+        byte[] page = pages[number >>> PAGE_BITS];
+        if(page == null){
+            throw new IllegalStateException("Mail " + number + " has been retired");
+        }
+        return page;
+    }
+}
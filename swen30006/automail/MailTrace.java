@@ -0,0 +1,76 @@
+package automail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Layout of a mail trace, the binary file TraceRecorder writes and TraceReader reads.
+ * A trace is a 16 byte header followed by fixed-width records of RECORD_SIZE bytes, all little-endian:
+ * <pre>
+ * header:  int magic, short version, short record size, long record count (-1 until the trace is closed)
+ * record:  int time, int mail number, int destination floor, byte kind, byte size, byte priority, byte 0
+ * </pre>
+ * An ARRIVAL record is written when mail enters the pool and a DELIVERY record when a robot delivers it, so
+ * arrivals appear in the order of their times and each delivery shares the number of its arrival.
+ */
+public final class MailTrace {
+
+    /** "MTRC" */
+    public static final int MAGIC = 0x4D545243;
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 16;
+    public static final int RECORD_SIZE = 16;
+    public static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    /** Kinds of record */
+    public static final byte ARRIVAL = 0;
+    public static final byte DELIVERY = 1;
+
+    static final int TIME = 0;
+    static final int NUMBER = 4;
+    static final int FLOOR = 8;
+    static final int KIND = 12;
+    static final int SIZE = 13;
+    static final int PRIORITY = 14;
+
+    /** Offset in the header of the record count */
+    static final int COUNT = 8;
+    static final long UNFINISHED = -1;
+
+    private MailTrace(){
+    }
+
+    /**
+     * Writes the header of a trace
+     * @param header buffer of at least HEADER_SIZE bytes in ORDER, written from position 0
+     * @param recordCount number of records, UNFINISHED while the trace is still being written
+     */
+    static void putHeader(ByteBuffer header, long recordCount){
+        header.putInt(0, MAGIC);
+        header.putShort(4, VERSION);
+        header.putShort(6, (short) RECORD_SIZE);
+        header.putLong(COUNT, recordCount);
+    }
+
+    /**
+     * Checks the header of a trace
+     * @param header buffer of HEADER_SIZE bytes in ORDER
+     * @return number of records of the trace
+     * @throws IOException if it is not a trace this version reads, or was never closed
+     */
+    static long checkHeader(ByteBuffer header) throws IOException {
+        if(header.getInt(0) != MAGIC){
+            throw new IOException("Not a mail trace");
+        }
+        if(header.getShort(4) != VERSION || header.getShort(6) != RECORD_SIZE){
+            throw new IOException("Mail trace of version " + header.getShort(4) + " with records of "
+                    + header.getShort(6) + " bytes, expected version " + VERSION);
+        }
+        long recordCount = header.getLong(COUNT);
+        if(recordCount == UNFINISHED){
+            throw new IOException("Mail trace was not closed after recording");
+        }
+        return recordCount;
+    }
+}
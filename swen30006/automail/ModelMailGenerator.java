@@ -0,0 +1,214 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates mail the way an ArrivalModel, a FloorDistribution and a PriorityDistribution describe, one time
+ * step at a time, until the scenario's last delivery time. The number arriving on each step is drawn from a
+ * Poisson distribution of the model's rate in constant time, by inversion for small rates and by transformed
+ * rejection (Hormann's PTRS) for large ones, and each mail costs three more draws and a row of a MailStore.
+ * Hundreds of mail a step, or millions an hour at a step a second, are generated in a few milliseconds, and
+ * memory stays constant as in StreamingMailGenerator. Sizes are uniform as in the other generators.
+ */
+public class ModelMailGenerator implements IMailGenerator, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Below this rate arrivals are drawn by inversion, from it on by rejection */
+    private static final double REJECTION_RATE = 10;
+
+    private final ArrivalModel model;
+    private final FloorDistribution.Sampler floors;
+    private final PriorityDistribution priorities;
+    /** One source of randomness per field, all the same Random unless built from RandomStreams */
+    private final RandomGenerator floorRandom;
+    private final RandomGenerator sizeRandom;
+    private final RandomGenerator priorityRandom;
+    private final RandomGenerator arrivalRandom;
+    private final int lastArrivalTime;
+    private final IMailPool mailPool;
+    private final MailStore mailStore = new MailStore();
+
+    private int mailCreated;
+    private int drawnUntil;     // last time step whose number of arrivals has been drawn
+    private boolean arrivalDrawn;
+    private int nextArrival;    // time step of the drawn arrivals, NEVER if no more mail will arrive
+    private int nextCount;      // how many mail arrive then
+
+    /**
+     * Constructor for a generator seeded as the other generators are
+     * @param model how fast mail arrives
+     * @param floorDistribution which floors mail goes to
+     * @param priorities which priorities mail has
+     * @param mailPool pool receiving the mail
+     * @param seed seed under the key true, or no seed under the key false
+     * @param scenario floors mail goes to and time it arrives by
+     */
+    public ModelMailGenerator(ArrivalModel model, FloorDistribution floorDistribution, PriorityDistribution priorities,
+                              IMailPool mailPool, HashMap<Boolean,Integer> seed, Scenario scenario){
+        this(model, floorDistribution, priorities, mailPool, seededRandom(seed), scenario);
+    }
+
+    /**
+     * Constructor for a generator drawing arrivals, floors, sizes and priorities from their own streams
+     * @param model how fast mail arrives
+     * @param floorDistribution which floors mail goes to
+     * @param priorities which priorities mail has
+     * @param mailPool pool receiving the mail
+     * @param streams streams of the simulation
+     * @param scenario floors mail goes to and time it arrives by
+     */
+    public ModelMailGenerator(ArrivalModel model, FloorDistribution floorDistribution, PriorityDistribution priorities,
+                              IMailPool mailPool, RandomStreams streams, Scenario scenario){
+        this(model, floorDistribution, priorities, mailPool, streams.stream(RandomStreams.Purpose.DESTINATION),
+                streams.stream(RandomStreams.Purpose.SIZE), streams.stream(RandomStreams.Purpose.PRIORITY),
+                streams.stream(RandomStreams.Purpose.ARRIVAL), scenario);
+    }
+
+    private ModelMailGenerator(ArrivalModel model, FloorDistribution floorDistribution, PriorityDistribution priorities,
+                               IMailPool mailPool, Random random, Scenario scenario){
+        this(model, floorDistribution, priorities, mailPool, random, random, random, random, scenario);
+    }
+
+    private ModelMailGenerator(ArrivalModel model, FloorDistribution floorDistribution, PriorityDistribution priorities,
+                               IMailPool mailPool, RandomGenerator floorRandom, RandomGenerator sizeRandom,
+                               RandomGenerator priorityRandom, RandomGenerator arrivalRandom, Scenario scenario){
+        this.model = model;
+        this.floors = floorDistribution.sampler(scenario);
+        this.priorities = priorities;
+        this.mailPool = mailPool;
+        this.floorRandom = floorRandom;
+        this.sizeRandom = sizeRandom;
+        this.priorityRandom = priorityRandom;
+        this.arrivalRandom = arrivalRandom;
+        this.lastArrivalTime = scenario.getLastDeliveryTime();
+    }
+
+    /**
+     * Creates the mail arriving up to the current time step. Steps without arrivals may be skipped.
+     */
+    @Override
+    public void step(){
+        int now = Clock.Time();
+        while(nextArrivalTime() <= now){
+            for(int i = 0; i < nextCount; i++){
+                mailPool.addToPool(generateMail(nextArrival));
+            }
+            mailCreated += nextCount;
+            arrivalDrawn = false;
+        }
+    }
+
+    @Override
+    public boolean isComplete(){
+        return nextArrivalTime() == NEVER;
+    }
+
+    @Override
+    public int nextArrivalTime(){
+        if(!arrivalDrawn){
+            drawNextArrival();
+        }
+        return nextArrival;
+    }
+
+    @Override
+    public int getMailCreated(){
+        return mailCreated;
+    }
+
+    /**
+     * Draws the number of arrivals of the steps after drawnUntil until one of them has mail. Steps of rate 0
+     * draw nothing.
+     */
+    private void drawNextArrival(){
+        arrivalDrawn = true;
+        while(drawnUntil < lastArrivalTime){
+            int step = ++drawnUntil;
+            double rate = model.rate(step);
+            int arriving = rate == 0 ? 0 : poisson(rate);
+            if(arriving > 0){
+                nextArrival = step;
+                nextCount = arriving;
+                return;
+            }
+        }
+        nextArrival = NEVER;
+    }
+
+    /**
+     * Creates a mail item arriving at the given time
+     */
+    private MailItem generateMail(int arrivalTime){
+        int destFloor = floors.nextFloor(floorRandom);
+        int size = MailItem.POSSIBLE_SIZES[sizeRandom.nextInt(MailItem.POSSIBLE_SIZES.length)];
+        Priority priority = priorities.next(priorityRandom);
+        return mailStore.add(destFloor, size, priority, arrivalTime);
+    }
+
+    /**
+     * Number of arrivals of a Poisson distribution of the given mean
+     */
+    private int poisson(double mean){
+        if(mean < REJECTION_RATE){
+            double probability = Math.exp(-mean);
+            double cumulative = probability;
+            double u = arrivalRandom.nextDouble();
+            int count = 0;
+            while(u > cumulative && probability > 0){
+                count++;
+                probability *= mean / count;
+                cumulative += probability;
+            }
+            return count;
+        }
+
+        /** PTRS, W. Hormann, The transformed rejection method for generating Poisson random variables, 1993 */
+        double sqrtMean = Math.sqrt(mean);
+        double logMean = Math.log(mean);
+        double b = 0.931 + 2.53 * sqrtMean;
+        double a = -0.059 + 0.02483 * b;
+        double logInverseAlpha = Math.log(1.1239 + 1.1328 / (b - 3.4));
+        double acceptAll = 0.9277 - 3.6224 / (b - 2);
+        while(true){
+            double u = arrivalRandom.nextDouble() - 0.5;
+            double v = arrivalRandom.nextDouble();
+            double us = 0.5 - Math.abs(u);
+            long count = (long) Math.floor((2 * a / us + b) * u + mean + 0.43);
+            if(us >= 0.07 && v <= acceptAll){
+                return (int) count;
+            }
+            if(count < 0 || (us < 0.013 && v > us)){
+                continue;
+            }
+            if(Math.log(v) + logInverseAlpha - Math.log(a / (us * us) + b)
+                    <= -mean + count * logMean - logFactorial(count)){
+                return (int) count;
+            }
+        }
+    }
+
+    /**
+     * ln(n!), summed for small n and from Stirling's series otherwise
+     */
+    private static double logFactorial(long n){
+        if(n < 16){
+            double sum = 0;
+            for(int i = 2; i <= n; i++){
+                sum += Math.log(i);
+            }
+            return sum;
+        }
+        double x = n;
+        double inverse = 1 / x;
+        double inverseSquared = inverse * inverse;
+        return x * Math.log(x) - x + 0.5 * Math.log(2 * Math.PI * x)
+                + inverse * (1.0 / 12 - inverseSquared * (1.0 / 360 - inverseSquared / 1260));
+    }
+
+    private static Random seededRandom(HashMap<Boolean,Integer> seed){
+        return seed.containsKey(true) ? new Random((long) seed.get(true)) : new Random();
+    }
+}
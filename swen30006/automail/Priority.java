@@ -0,0 +1,39 @@
+package automail;
+
+/**
+ * Priority levels of mail, in the order of MailItem.PRIORITY_LEVELS, with the weight each gives the delivery score
+ */
+public enum Priority {
+    LOW(1),
+    MEDIUM(1.5),
+    HIGH(2);
+
+    private final double weight;
+
+    Priority(double weight){
+        this.weight = weight;
+    }
+
+    /**
+     * @return the factor the delivery score of mail at this level is multiplied by
+     */
+    public double weight(){
+        return weight;
+    }
+
+    /**
+     * @param level one of MailItem.PRIORITY_LEVELS
+     * @return the priority with that name
+     */
+    public static Priority of(String level){
+        switch(level){
+            case "LOW":
+                return LOW;
+            case "MEDIUM":
+                return MEDIUM;
+            case "HIGH":
+                return HIGH;
+        }
+        throw new IllegalArgumentException("Unknown priority level " + level);
+    }
+}
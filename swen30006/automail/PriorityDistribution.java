@@ -0,0 +1,82 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Which priorities mail has, for ModelMailGenerator. Either every level alike, as in the other generators, or
+ * skewed by a share per level, such as a building where one mail in two is HIGH. The score weighs priorities,
+ * so a skew towards HIGH makes every late delivery cost more at the same load.
+ */
+public final class PriorityDistribution implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    public static final PriorityDistribution UNIFORM = new PriorityDistribution(null);
+
+    private final double[] cumulative;   // null when uniform
+
+    private PriorityDistribution(double[] cumulative){
+        this.cumulative = cumulative;
+    }
+
+    /**
+     * Priorities in proportion to the given shares
+     * @param shares share of each level, in the order of Priority, not all 0
+     * @return distribution
+     */
+    public static PriorityDistribution weighted(double... shares){
+        if(shares.length != PRIORITIES.length){
+            throw new IllegalArgumentException("Expected a share for each of " + Arrays.toString(PRIORITIES)
+                    + ", got " + shares.length);
+        }
+        double[] cumulative = new double[shares.length];
+        double total = 0;
+        for(int p = 0; p < shares.length; p++){
+            if(!(shares[p] >= 0) || Double.isInfinite(shares[p])){
+                throw new IllegalArgumentException("Priority shares must be finite and not negative, got " + shares[p]);
+            }
+            total += shares[p];
+            cumulative[p] = total;
+        }
+        if(total == 0){
+            throw new IllegalArgumentException("At least one priority needs a share");
+        }
+        for(int p = 0; p < shares.length; p++){
+            cumulative[p] /= total;
+        }
+        return new PriorityDistribution(cumulative);
+    }
+
+    /**
+     * @param random source of randomness, drawn from once
+     * @return priority of the next mail
+     */
+    Priority next(RandomGenerator random){
+        if(cumulative == null){
+            return PRIORITIES[random.nextInt(PRIORITIES.length)];
+        }
+        double u = random.nextDouble();
+        for(int p = 0; p < cumulative.length - 1; p++){
+            if(u < cumulative[p]){
+                return PRIORITIES[p];
+            }
+        }
+        return PRIORITIES[cumulative.length - 1];
+    }
+
+    @Override
+    public String toString(){
+        if(cumulative == null){
+            return "uniform";
+        }
+        StringBuilder shares = new StringBuilder();
+        for(int p = 0; p < cumulative.length; p++){
+            double share = cumulative[p] - (p == 0 ? 0 : cumulative[p - 1]);
+            shares.append(p == 0 ? "" : " ").append(PRIORITIES[p]).append(String.format(" %.0f%%", share * 100));
+        }
+        return shares.toString();
+    }
+}
@@ -0,0 +1,88 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.SplittableRandom;
+
+/**
+ * Independent random number streams derived from one simulation seed. Each stream is named by what it is
+ * for and an index, and its seed is a pure function of the simulation seed, the purpose and the index
+ * (SplitMix64 over a counter), so a stream comes out the same whichever thread asks for it and in whichever
+ * order streams are asked for.
+ */
+public final class RandomStreams implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** What a stream is used for, every purpose gets its own family of streams */
+    public enum Purpose {
+        DESTINATION,
+        SIZE,
+        PRIORITY,
+        ARRIVAL,
+        SEARCH
+    }
+
+    /** Odd constant SplitMix64 advances its counter by */
+    static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long seed;
+
+    /**
+     * @param seed simulation seed every stream is derived from
+     */
+    public RandomStreams(long seed){
+        this.seed = seed;
+    }
+
+    /**
+     * @return streams derived from a seed that differs on every call
+     */
+    public static RandomStreams unseeded(){
+        return new RandomStreams(new SplittableRandom().nextLong());
+    }
+
+    /**
+     * @return the simulation seed
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Seed of one stream
+     * @param purpose what the stream is for
+     * @param index which of the streams for that purpose
+     * @return the seed
+     */
+    public long seedOf(Purpose purpose, long index){
+        long family = mix(seed + (purpose.ordinal() + 1) * GOLDEN_GAMMA);
+        return mix(family + (index + 1) * GOLDEN_GAMMA);
+    }
+
+    /**
+     * @param purpose what the stream is for
+     * @return the first stream for that purpose
+     */
+    public StreamRandom stream(Purpose purpose){
+        return stream(purpose, 0);
+    }
+
+    /**
+     * @param purpose what the stream is for
+     * @param index which of the streams for that purpose
+     * @return a new generator at the start of the stream, drawing as a SplittableRandom of its seed would
+     */
+    public StreamRandom stream(Purpose purpose, long index){
+        return new StreamRandom(seedOf(purpose, index));
+    }
+
+    /**
+     * SplitMix64 finalizer: a bijection on longs that spreads every input bit over the whole output
+     * @param z value to mix
+     * @return mixed value
+     */
+    public static long mix(long z){
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
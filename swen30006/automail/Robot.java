@@ -1,16 +1,20 @@
 package automail;
 
+import java.io.Serializable;
+
 /**
  * The robot delivers mail!
  */
-public class Robot {
+public class Robot implements Serializable {
+	private static final long serialVersionUID = 1L;
 
 	StorageTube tube;
     IMailSorter sorter;
     IMailDelivery delivery;
     /** Possible states the robot can be in */
     public enum RobotState { DELIVERING, WAITING, RETURNING};
-    public static RobotState current_state;
+    private RobotState current_state;
+    private final int mailroom_location;
     private int current_floor;
     private int destination_floor;
     
@@ -23,10 +27,18 @@ public class Robot {
      * also set it to be waiting for mail.
      */
     public Robot(IMailSorter sorter, IMailDelivery delivery){
+        this(sorter, delivery, Scenario.DEFAULT);
+    }
+
+    /**
+     * Initiates the robot in the mailroom of the given building, carrying a tube of its capacity
+     */
+    public Robot(IMailSorter sorter, IMailDelivery delivery, Scenario scenario){
         // current_state = RobotState.WAITING;
     	current_state = RobotState.RETURNING;
-        current_floor = Building.MAILROOM_LOCATION;
-        tube = new StorageTube();
+        mailroom_location = scenario.getMailroomLocation();
+        current_floor = mailroom_location;
+        tube = new StorageTube(scenario.getTubeCapacity());
         this.sorter = sorter;
         this.delivery = delivery;
         this.logtime = 0;
@@ -43,11 +55,11 @@ public class Robot {
     		/** This state is triggered when the robot is returning to the mailroom after a delivery */
     		case RETURNING:
     			/** If its current position is at the mailroom, then the robot should change state */
-                if(current_floor == Building.MAILROOM_LOCATION){
+                if(current_floor == mailroom_location){
                     current_state = RobotState.WAITING; //Drop through
                 } else {
                 	/** If the robot is not at the mailroom floor yet, then move towards it! */
-                    moveTowards(Building.MAILROOM_LOCATION);
+                    moveTowards(mailroom_location);
                 	break;
                 }
     		case WAITING:
@@ -82,6 +94,55 @@ public class Robot {
     	}
     }
 
+    /**
+     * Earliest time step at which step() does more than move one floor or wait, assuming no new mail
+     * arrives. Called after step() on the current time step.
+     * @return a time after the current one, or Integer.MAX_VALUE if the robot waits for new mail
+     */
+    public int nextActiveTime(){
+        int now = Clock.Time();
+        switch(current_state) {
+            case RETURNING:
+                return now + 1 + Math.abs(current_floor - mailroom_location);
+            case DELIVERING:
+                return now + 1 + Math.abs(current_floor - destination_floor);
+            case WAITING:
+            default:
+                return Math.max(now + 1, sorter.idleUntil(tube));
+        }
+    }
+
+    /**
+     * @return whether step() on the current time step would only keep the robot waiting
+     */
+    public boolean isIdle(){
+        return current_state == RobotState.WAITING && sorter.idleUntil(tube) > Clock.Time();
+    }
+
+    /**
+     * Catch up on steps skipped because nextActiveTime() showed they only move the robot or let it wait
+     * @param steps number of steps skipped
+     */
+    public void skipSteps(int steps){
+        switch(current_state) {
+            case RETURNING:
+                moveBy(mailroom_location, steps);
+                break;
+            case DELIVERING:
+                moveBy(destination_floor, steps);
+                break;
+            case WAITING:
+                break;
+        }
+    }
+
+    /**
+     * @return the state the robot is in
+     */
+    public RobotState getState(){
+        return current_state;
+    }
+
     /**
      * Sets the route for the robot
      */
@@ -92,6 +153,12 @@ public class Robot {
         destination_floor = deliveryItem.getDestFloor();
     }
 
+    /** Moves the robot the given number of floors towards the destination, stopping there */
+    private void moveBy(int destination, int floors){
+        int distance = Math.min(floors, Math.abs(destination - current_floor));
+        current_floor += current_floor < destination ? distance : -distance;
+    }
+
     /** Generic function that moves the robot towards the destination */
     public void moveTowards(int destination){
         if(current_floor < destination){
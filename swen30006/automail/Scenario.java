@@ -0,0 +1,137 @@
+package automail;
+
+import java.io.Serializable;
+
+/**
+ * The building and fleet a simulation runs in: the floors, where the mailroom is, until when mail arrives
+ * and how much a robot's storage tube holds. Immutable, each with method returns a changed copy.
+ * DEFAULT is the building of Building, Clock and StorageTube.
+ */
+public final class Scenario implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The building the simulation was written for */
+    public static final Scenario DEFAULT = new Scenario(Building.FLOORS, Building.LOWEST_FLOOR,
+            Building.MAILROOM_LOCATION, Clock.LAST_DELIVERY_TIME, StorageTube.DEFAULT_CAPACITY);
+
+    private final int floors;
+    private final int lowestFloor;
+    private final int mailroomLocation;
+    private final int lastDeliveryTime;
+    private final int tubeCapacity;
+
+    /**
+     * Constructor for a scenario
+     * @param floors number of floors in the building
+     * @param lowestFloor number of the ground floor
+     * @param mailroomLocation floor of the mailroom
+     * @param lastDeliveryTime latest time for mail to arrive
+     * @param tubeCapacity total size of mail a storage tube holds
+     */
+    public Scenario(int floors, int lowestFloor, int mailroomLocation, int lastDeliveryTime, int tubeCapacity){
+        if(floors < 1){
+            throw new IllegalArgumentException("A building needs at least one floor, got " + floors);
+        }
+        if(mailroomLocation < lowestFloor || mailroomLocation >= lowestFloor + floors){
+            throw new IllegalArgumentException("Mailroom " + mailroomLocation + " is outside floors "
+                    + lowestFloor + ".." + (lowestFloor + floors - 1));
+        }
+        if(lastDeliveryTime < 1){
+            throw new IllegalArgumentException("Mail needs at least one step to arrive in, got " + lastDeliveryTime);
+        }
+        int largestMail = 0;
+        for(int size : MailItem.POSSIBLE_SIZES){
+            largestMail = Math.max(largestMail, size);
+        }
+        if(tubeCapacity < largestMail){
+            throw new IllegalArgumentException("A tube of " + tubeCapacity + " cannot hold mail of size " + largestMail);
+        }
+        this.floors = floors;
+        this.lowestFloor = lowestFloor;
+        this.mailroomLocation = mailroomLocation;
+        this.lastDeliveryTime = lastDeliveryTime;
+        this.tubeCapacity = tubeCapacity;
+    }
+
+    /**
+     * A building of the given height with the mailroom at the same share of the height as in DEFAULT
+     * @param floors number of floors in the building
+     * @return changed copy
+     */
+    public Scenario withFloors(int floors){
+        int mailroom = lowestFloor + (int) ((long) (mailroomLocation - lowestFloor) * floors / this.floors);
+        return new Scenario(floors, lowestFloor, mailroom, lastDeliveryTime, tubeCapacity);
+    }
+
+    /**
+     * @param mailroomLocation floor of the mailroom
+     * @return changed copy
+     */
+    public Scenario withMailroom(int mailroomLocation){
+        return new Scenario(floors, lowestFloor, mailroomLocation, lastDeliveryTime, tubeCapacity);
+    }
+
+    /**
+     * @param lastDeliveryTime latest time for mail to arrive
+     * @return changed copy
+     */
+    public Scenario withLastDeliveryTime(int lastDeliveryTime){
+        return new Scenario(floors, lowestFloor, mailroomLocation, lastDeliveryTime, tubeCapacity);
+    }
+
+    /**
+     * @param tubeCapacity total size of mail a storage tube holds
+     * @return changed copy
+     */
+    public Scenario withTubeCapacity(int tubeCapacity){
+        return new Scenario(floors, lowestFloor, mailroomLocation, lastDeliveryTime, tubeCapacity);
+    }
+
+    /**
+     * @return number of floors in the building
+     */
+    public int getFloors() {
+        return floors;
+    }
+
+    /**
+     * @return number of the ground floor
+     */
+    public int getLowestFloor() {
+        return lowestFloor;
+    }
+
+    /**
+     * @return number of the top floor
+     */
+    public int getHighestFloor() {
+        return lowestFloor + floors - 1;
+    }
+
+    /**
+     * @return floor of the mailroom
+     */
+    public int getMailroomLocation() {
+        return mailroomLocation;
+    }
+
+    /**
+     * @return latest time for mail to arrive
+     */
+    public int getLastDeliveryTime() {
+        return lastDeliveryTime;
+    }
+
+    /**
+     * @return total size of mail a storage tube holds
+     */
+    public int getTubeCapacity() {
+        return tubeCapacity;
+    }
+
+    @Override
+    public String toString(){
+        return "floors " + lowestFloor + ".." + getHighestFloor() + ", mailroom " + mailroomLocation
+                + ", mail until " + lastDeliveryTime + ", tube capacity " + tubeCapacity;
+    }
+}
@@ -2,24 +2,58 @@ package automail;
 
 import exceptions.MailAlreadyDeliveredException;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.HashMap;
 
+import strategies.AdvancedMailPool;
+import strategies.AdvancedMailSorter;
+import strategies.MailStrategy;
+import strategies.SearchMetrics;
+import strategies.SearchParameters;
+
 /**
- * This class simulates the behavior of AutoMail
+ * This class simulates the behavior of AutoMail.
+ * A run can be paused with runUntil, saved with checkpoint and picked up again, in this process or another,
+ * with resume, see Checkpoint.
  */
-public class Simulation {
+public class Simulation implements Serializable {
+    private static final long serialVersionUID = 1L;
 
-    /** Constant for the mail generator */
+    /** Default for the mail generator */
     private static final int MAIL_TO_CREATE = 50;
 
-    private static ArrayList<MailItem> MAIL_DELIVERED;
-    private static double total_score = 0;
+    /** Everything below belongs to one run, so several simulations can run side by side */
+    private final HashMap<Boolean, Integer> seedMap;
+    private MailStrategy strategy;
+    private final Clock clock;
+    private final DeliveryLedger ledger;
+    private int robotCount = 1;
+    private boolean parallelSteps = false;
+    private int mailToCreate = MAIL_TO_CREATE;
+    private boolean streamingArrivals = false;
+    private boolean eventDriven = false;
+    private transient SearchMetrics searchMetrics = null;
+    private SearchParameters searchParameters = null;
+    private boolean speculativePlanning = false;
+    private boolean independentStreams = false;
+    private Scenario scenario = Scenario.DEFAULT;
+    private ArrivalModel arrivalModel = null;
+    private FloorDistribution floorDistribution = FloorDistribution.UNIFORM;
+    private PriorityDistribution priorityDistribution = PriorityDistribution.UNIFORM;
+    private transient Path traceRecording = null;
+    private transient Path traceReplay = null;
+
+    /** State of the run once started, kept between calls to runUntil */
+    private Automail automail = null;
+    private IMailGenerator generator = null;
+    private RandomStreams streams = null;
+    private transient TraceRecorder recorder = null;
 
     public static void main(String[] args){
 
-        MAIL_DELIVERED = new ArrayList<MailItem>();
-                
         /** Used to see whether a seed is initialized or not */
         HashMap<Boolean, Integer> seedMap = new HashMap<>();
         
@@ -30,29 +64,374 @@ public class Simulation {
         } else{
         	seedMap.put(false, 0);
         }
-        Automail automail = new Automail(new ReportDelivery());
-        MailGenerator generator = new MailGenerator(MAIL_TO_CREATE, automail.mailPool, seedMap);
-        
-        /** Initiate all the mail */
-        generator.generateAllMail();
+        Simulation simulation = new Simulation(seedMap);
+        /** Read the second argument as the size of the fleet if it exists */
+        if(args.length > 1){
+            simulation.setRobotCount(Integer.parseInt(args[1]));
+        }
+        simulation.run();
+        simulation.printResults();
+    }
+
+    /**
+     * Constructor for a simulation
+     * @param seedMap seed under the key true, or no seed under the key false
+     */
+    public Simulation(HashMap<Boolean, Integer> seedMap){
+        this(seedMap, MailStrategy.ADVANCED);
+    }
+
+    /**
+     * Constructor for a simulation
+     * @param seedMap seed under the key true, or no seed under the key false
+     * @param strategy mail pool and sorter the robot works with
+     */
+    public Simulation(HashMap<Boolean, Integer> seedMap, MailStrategy strategy){
+        this.seedMap = seedMap;
+        this.strategy = strategy;
+        this.clock = new Clock();
+        this.ledger = new DeliveryLedger();
+    }
+
+    /**
+     * Constructor for a simulation with a fixed seed
+     * @param seed seed of the mail generator
+     */
+    public Simulation(int seed){
+        this(seedOf(seed));
+    }
+
+    /**
+     * Constructor for a simulation with a fixed seed
+     * @param seed seed of the mail generator
+     * @param strategy mail pool and sorter the robot works with
+     */
+    public Simulation(int seed, MailStrategy strategy){
+        this(seedOf(seed), strategy);
+    }
+
+    /**
+     * @param robotCount number of robots sharing the mail pool
+     */
+    public void setRobotCount(int robotCount){
+        if(robotCount < 1){
+            throw new IllegalArgumentException("A fleet needs at least one robot, got " + robotCount);
+        }
+        this.robotCount = robotCount;
+    }
+
+    /**
+     * @param mailToCreate how much mail arrives over the run
+     */
+    public void setMailToCreate(int mailToCreate){
+        if(mailToCreate < 0){
+            throw new IllegalArgumentException("Negative amount of mail: " + mailToCreate);
+        }
+        this.mailToCreate = mailToCreate;
+    }
+
+    /**
+     * Generate mail one step at a time instead of building the whole schedule before the run starts.
+     * Memory then stays constant in the amount of mail, but a seed gives different mail than with the
+     * schedule, see StreamingMailGenerator.
+     * @param streamingArrivals true to stream the mail
+     */
+    public void setStreamingArrivals(boolean streamingArrivals){
+        this.streamingArrivals = streamingArrivals;
+    }
+
+    /**
+     * Jump the clock from event to event instead of ticking through every step. Time and score are the
+     * same either way, see EventEngine. Robots then always step one after another.
+     * @param eventDriven true to skip the steps where robots only move or wait
+     */
+    public void setEventDriven(boolean eventDriven){
+        this.eventDriven = eventDriven;
+    }
+
+    /**
+     * Record what each search of the mail pool costs, see AdvancedMailPool.setMetrics. Only the ADVANCED
+     * strategy searches this way, the others ignore it. Metrics are not saved in checkpoints.
+     * @param searchMetrics metrics to record into, null to not measure
+     */
+    public void setSearchMetrics(SearchMetrics searchMetrics){
+        this.searchMetrics = searchMetrics;
+        if(automail != null){
+            configureStrategy();
+        }
+    }
+
+    /**
+     * Tune the tree search of the mail pool, see AdvancedMailPool.setParameters. Only the ADVANCED strategy
+     * searches this way, the others ignore it.
+     * Set on a paused run, they apply from the next search on.
+     * @param searchParameters parameters of the search, null for SearchParameters.DEFAULT
+     */
+    public void setSearchParameters(SearchParameters searchParameters){
+        this.searchParameters = searchParameters;
+        if(automail != null){
+            configureStrategy();
+        }
+    }
+
+    /**
+     * Let the sorter plan each robot's next load in the background while the robot is out, see
+     * AdvancedMailSorter.setSpeculativePlanning. Time and score are the same either way. Only the ADVANCED
+     * strategy plans ahead, the others ignore it.
+     * @param speculativePlanning true to plan ahead
+     */
+    public void setSpeculativePlanning(boolean speculativePlanning){
+        this.speculativePlanning = speculativePlanning;
+    }
+
+    /**
+     * Give the mail generator and the search of the mail pool their own random streams, all derived from the
+     * seed, see RandomStreams. A seed then gives the same run whichever search mode or thread counts are
+     * used, but different mail and loads than with the single java.util.Random of the generator.
+     * @param independentStreams true to derive independent streams from the seed
+     */
+    public void setIndependentStreams(boolean independentStreams){
+        this.independentStreams = independentStreams;
+    }
+
+    /**
+     * Run in another building or with other tubes than Building, Clock and StorageTube describe. Mail then
+     * goes to the scenario's floors and arrives until its last delivery time.
+     * @param scenario building and tubes of the run
+     */
+    public void setScenario(Scenario scenario){
+        this.scenario = scenario;
+    }
+
+    /**
+     * Let mail arrive as the model says until the scenario's last delivery time, see ModelMailGenerator,
+     * instead of spreading a fixed amount of mail evenly. The amount of mail and streaming arrivals then make
+     * no difference.
+     * @param arrivalModel how fast mail arrives, null for the usual generators
+     */
+    public void setArrivalModel(ArrivalModel arrivalModel){
+        this.arrivalModel = arrivalModel;
+    }
+
+    /**
+     * @param floorDistribution which floors the mail of the arrival model goes to, see setArrivalModel
+     */
+    public void setFloorDistribution(FloorDistribution floorDistribution){
+        this.floorDistribution = floorDistribution;
+    }
+
+    /**
+     * @param priorityDistribution which priorities the mail of the arrival model has, see setArrivalModel
+     */
+    public void setPriorityDistribution(PriorityDistribution priorityDistribution){
+        this.priorityDistribution = priorityDistribution;
+    }
+
+    /**
+     * Record every arrival and delivery of the run into a mail trace, through TraceRecorder.recordingArrivals
+     * and TraceRecorder.recordingDeliveries
+     * @param traceRecording file to record into, null to not record
+     */
+    public void setTraceRecording(Path traceRecording){
+        this.traceRecording = traceRecording;
+    }
+
+    /**
+     * Take the mail from a recorded trace instead of generating it, see TraceMailGenerator. The seed, the
+     * amount of mail and streaming arrivals then make no difference.
+     * @param traceReplay trace to replay, null to generate mail
+     */
+    public void setTraceReplay(Path traceReplay){
+        this.traceReplay = traceReplay;
+    }
+
+    /**
+     * @param parallelSteps true to step the robots of the fleet concurrently, see Automail.setParallelSteps
+     */
+    public void setParallelSteps(boolean parallelSteps){
+        this.parallelSteps = parallelSteps;
+    }
+
+    /**
+     * Runs the simulation until all mail is delivered. The simulation's own clock is bound to the calling
+     * thread for the duration of the run.
+     * @return the final delivery time and score
+     */
+    public SimulationResult run(){
+        return runUntil(Integer.MAX_VALUE);
+    }
 
-        while(MAIL_DELIVERED.size() != MAIL_TO_CREATE) {
-        	// System.out.println("-- Step: "+Clock.Time());
-            generator.step();
-            automail.robot.step();
-            Clock.Tick();
+    /**
+     * Runs the simulation, or carries on with a paused one, until all mail is delivered or the clock reaches
+     * the given time. Every time step before it is then done, and a later call or a resumed checkpoint goes
+     * on from there exactly as if the run had never stopped.
+     * @param stopTime time step to pause at
+     * @return the delivery time and score reached
+     */
+    public SimulationResult runUntil(int stopTime){
+        Clock previous = Clock.current();
+        Clock.bind(clock);
+        boolean paused = false;
+        try {
+            if(automail == null){
+                start();
+            }
+            planAhead(speculativePlanning);
+            if(eventDriven){
+                new EventEngine(automail.robots, generator, this::isFinished).run(stopTime);
+            } else{
+                while(!isFinished() && Clock.Time() < stopTime) {
+                	// System.out.println("-- Step: "+Clock.Time());
+                    generator.step();
+                    automail.step();
+                    Clock.Tick();
+                }
+            }
+            planAhead(false);
+            paused = !isFinished();
+            return getResult();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot access mail trace", e);
+        } finally {
+            if(!paused){
+                closeTraces(recorder, generator instanceof TraceMailGenerator ? (TraceMailGenerator) generator : null);
+            }
+            Clock.bind(previous);
+        }
+    }
+
+    /**
+     * @return mail that has arrived but not been delivered yet, waiting in the pool or carried by a robot
+     */
+    public int getBacklog(){
+        return generator == null ? 0 : generator.getMailCreated() - ledger.getDeliveredCount();
+    }
+
+    /**
+     * @return true once all mail has arrived and been delivered
+     */
+    public boolean isFinished(){
+        return generator != null && generator.isComplete() && ledger.getDeliveredCount() == generator.getMailCreated();
+    }
+
+    /**
+     * Saves the run so far, see Checkpoint. Runs recording a mail trace cannot be saved, nor can runs that
+     * are to replay one but have not started yet.
+     * @param checkpoint file to write
+     */
+    public void checkpoint(Path checkpoint) throws IOException {
+        if(traceRecording != null || (automail == null && traceReplay != null)){
+            throw new IllegalStateException("Cannot checkpoint a run recording a mail trace or yet to replay one");
+        }
+        Checkpoint.write(this, checkpoint);
+    }
+
+    /**
+     * Loads a run saved by checkpoint, to carry on with runUntil or run
+     * @param checkpoint file written by checkpoint
+     * @return the simulation, at the time step it was saved
+     */
+    public static Simulation resume(Path checkpoint) throws IOException {
+        return Checkpoint.read(checkpoint);
+    }
+
+    /**
+     * Hands the mail waiting in the pool to a new pool and sorter of another strategy. Robots keep the mail
+     * they carry and take their next load from the new strategy, so several strategies can be tried from
+     * one resumed checkpoint.
+     * @param strategy mail pool and sorter the robots work with from now on
+     */
+    public void switchStrategy(MailStrategy strategy){
+        this.strategy = strategy;
+        if(automail == null){
+            return;
+        }
+        Clock previous = Clock.current();
+        Clock.bind(clock);
+        try {
+            automail.switchStrategy(strategy, scenario);
+            configureStrategy();
+        } finally {
+            Clock.bind(previous);
+        }
+    }
+
+    /** Builds the fleet and the mail generator of the run */
+    private void start() throws IOException {
+        IMailDelivery delivery = new ReportDelivery();
+        if(traceRecording != null){
+            recorder = new TraceRecorder(traceRecording);
+            delivery = recorder.recordingDeliveries(delivery);
+        }
+        automail = new Automail(delivery, strategy, robotCount, scenario);
+        automail.setParallelSteps(parallelSteps);
+        if(independentStreams){
+            streams = seedMap.containsKey(true) ? new RandomStreams(seedMap.get(true)) : RandomStreams.unseeded();
+        }
+        configureStrategy();
+        IMailPool arrivals = recorder == null ? new PoolArrivals() : recorder.recordingArrivals(new PoolArrivals());
+        if(traceReplay != null){
+            generator = new TraceMailGenerator(traceReplay, arrivals);
+        } else if(arrivalModel != null){
+            generator = streams == null ?
+                    new ModelMailGenerator(arrivalModel, floorDistribution, priorityDistribution, arrivals, seedMap,
+                            scenario) :
+                    new ModelMailGenerator(arrivalModel, floorDistribution, priorityDistribution, arrivals, streams,
+                            scenario);
+        } else if(streamingArrivals){
+            generator = streams == null ?
+                    new StreamingMailGenerator(mailToCreate, false, arrivals, seedMap, scenario) :
+                    new StreamingMailGenerator(mailToCreate, false, arrivals, streams, scenario);
+        } else{
+            MailGenerator scheduledGenerator = streams == null ?
+                    new MailGenerator(mailToCreate, arrivals, seedMap, scenario) :
+                    new MailGenerator(mailToCreate, arrivals, streams, scenario);
+            /** Initiate all the mail */
+            scheduledGenerator.generateAllMail();
+            generator = scheduledGenerator;
+        }
+    }
+
+    /** Gives the pool of the fleet the metrics, search parameters and random streams of the run */
+    private void configureStrategy(){
+        if(automail.mailPool instanceof AdvancedMailPool){
+            AdvancedMailPool advancedMailPool = (AdvancedMailPool) automail.mailPool;
+            if(searchMetrics != null){
+                advancedMailPool.setMetrics(searchMetrics);
+            }
+            if(searchParameters != null){
+                advancedMailPool.setParameters(searchParameters);
+            }
+        }
+        if(streams != null && automail.mailPool instanceof IRandomizedPool){
+            ((IRandomizedPool) automail.mailPool).setRandomStreams(streams);
+        }
+    }
+
+    /** Plans stop while the run is paused, so nothing touches the pool while it is saved */
+    private void planAhead(boolean ahead){
+        if(speculativePlanning && automail.robot.sorter instanceof AdvancedMailSorter){
+            ((AdvancedMailSorter) automail.robot.sorter).setSpeculativePlanning(ahead);
+        }
+    }
+
+    /** Passes arriving mail on to whichever pool the fleet has at the time, see switchStrategy */
+    class PoolArrivals implements IMailPool, Serializable {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void addToPool(MailItem mailItem){
+            automail.mailPool.addToPool(mailItem);
         }
-        printResults();
     }
     
-    static class ReportDelivery implements IMailDelivery {
+    class ReportDelivery implements IMailDelivery, Serializable {
+        private static final long serialVersionUID = 1L;
     	
-    /** Confirm the delivery and calculate the total score */
-    public void deliver(MailItem deliveryItem){
-        if(!MAIL_DELIVERED.contains(deliveryItem)){
-            MAIL_DELIVERED.add(deliveryItem);
-            // Calculate delivery score
-            total_score += calculateDeliveryScore(deliveryItem);
+    /** Confirm the delivery and calculate the total score, robots stepping in parallel may report at once */
+    public synchronized void deliver(MailItem deliveryItem){
+        if(ledger.record(deliveryItem, Clock.Time())){
+            deliveryItem.retire();
         }
         else{
             try {
@@ -65,31 +444,48 @@ public class Simulation {
 
     }
 
-    private static double calculateDeliveryScore(MailItem deliveryItem) {
-    	// Penalty for longer delivery times
-    	final double penalty = 1.1;
-        // Take (delivery time - arrivalTime)**penalty * priority_weight
-        double priority_weight = 0;
-        
-        // Determine the priority_weight
-        switch(deliveryItem.getPriorityLevel()){
-            case "LOW":
-                priority_weight = 1;
-                break;
-            case "MEDIUM":
-                priority_weight = 1.5;
-                break;
-            case "HIGH":
-                priority_weight = 2;
-                break;
-        }
-//        System.out.println(Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*priority_weight);
-        return Math.pow(Clock.Time() - deliveryItem.getArrivalTime(),penalty)*priority_weight;
-    }
-
-    public static void printResults(){
+    /**
+     * @return the delivery time and score reached so far
+     */
+    public SimulationResult getResult(){
+        Integer seed = seedMap.get(true);
+        return new SimulationResult(seed, clock.time(), ledger.getTotalScore());
+    }
+
+    /**
+     * @return the deliveries made so far, with per-priority counts and latencies
+     */
+    public DeliveryLedger getLedger(){
+        return ledger;
+    }
+
+    public void printResults(){
         System.out.println("Simulation complete!");
-        System.out.println("Final Delivery time: "+Clock.Time());
-        System.out.println("Final Score: "+total_score);
+        System.out.println("Deliveries: "+ledger);
+        if(searchMetrics != null){
+            System.out.println("Searches: "+searchMetrics);
+        }
+        System.out.println("Final Delivery time: "+clock.time());
+        System.out.println("Final Score: "+ledger.getTotalScore());
+    }
+
+    /** Closing the recorder finishes its trace */
+    private static void closeTraces(TraceRecorder recorder, TraceMailGenerator replay){
+        try {
+            if(recorder != null){
+                recorder.close();
+            }
+            if(replay != null){
+                replay.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close mail trace", e);
+        }
+    }
+
+    private static HashMap<Boolean, Integer> seedOf(int seed){
+        HashMap<Boolean, Integer> seedMap = new HashMap<>();
+        seedMap.put(true, seed);
+        return seedMap;
     }
 }
@@ -0,0 +1,49 @@
+package automail;
+
+/**
+ * The outcome of one simulation run
+ */
+public class SimulationResult {
+
+    private final Integer seed;
+    private final int finalDeliveryTime;
+    private final double finalScore;
+
+    /**
+     * Constructor for a simulation result
+     * @param seed seed of the run, null if it was unseeded
+     * @param finalDeliveryTime time the last mail was delivered
+     * @param finalScore total delivery score
+     */
+    public SimulationResult(Integer seed, int finalDeliveryTime, double finalScore){
+        this.seed = seed;
+        this.finalDeliveryTime = finalDeliveryTime;
+        this.finalScore = finalScore;
+    }
+
+    /**
+     * @return seed of the run, null if it was unseeded
+     */
+    public Integer getSeed() {
+        return seed;
+    }
+
+    /**
+     * @return time the last mail was delivered
+     */
+    public int getFinalDeliveryTime() {
+        return finalDeliveryTime;
+    }
+
+    /**
+     * @return total delivery score
+     */
+    public double getFinalScore() {
+        return finalScore;
+    }
+
+    @Override
+    public String toString(){
+        return "Seed: " + seed + ", Final Delivery time: " + finalDeliveryTime + ", Final Score: " + finalScore;
+    }
+}
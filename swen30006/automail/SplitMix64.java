@@ -0,0 +1,36 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.random.RandomGenerator;
+
+/**
+ * Counter-based generator: the n-th output is RandomStreams.mix(seed + n * GOLDEN_GAMMA). Unlike
+ * SplittableRandom it can be reseeded, so a search can move it to a node's own stream without allocating.
+ * Not safe to share between threads.
+ */
+public final class SplitMix64 implements RandomGenerator, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long state;
+
+    /**
+     * @param seed start of the stream
+     */
+    public SplitMix64(long seed){
+        this.state = seed;
+    }
+
+    /**
+     * Move to the start of another stream
+     * @param seed start of the stream
+     */
+    public void reseed(long seed){
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong(){
+        state += RandomStreams.GOLDEN_GAMMA;
+        return RandomStreams.mix(state);
+    }
+}
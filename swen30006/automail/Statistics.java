@@ -0,0 +1,90 @@
+package automail;
+
+import java.util.Arrays;
+
+/**
+ * Summary statistics of a sample: mean, standard deviation and percentiles
+ */
+public class Statistics {
+
+    private final double[] sorted;
+    private final double mean;
+    private final double stddev;
+
+    /**
+     * Constructor for the statistics of a sample
+     * @param values the sample, not modified
+     */
+    public Statistics(double[] values){
+        this.sorted = values.clone();
+        Arrays.sort(sorted);
+
+        double sum = 0;
+        for(double value : sorted){
+            sum += value;
+        }
+        this.mean = sorted.length == 0 ? Double.NaN : sum / sorted.length;
+
+        double squares = 0;
+        for(double value : sorted){
+            squares += (value - mean) * (value - mean);
+        }
+        this.stddev = sorted.length < 2 ? 0 : Math.sqrt(squares / (sorted.length - 1));
+    }
+
+    /**
+     * @return number of values in the sample
+     */
+    public int count() {
+        return sorted.length;
+    }
+
+    /**
+     * @return arithmetic mean of the sample
+     */
+    public double mean() {
+        return mean;
+    }
+
+    /**
+     * @return sample standard deviation
+     */
+    public double stddev() {
+        return stddev;
+    }
+
+    /**
+     * @return smallest value of the sample
+     */
+    public double min() {
+        return percentile(0);
+    }
+
+    /**
+     * @return largest value of the sample
+     */
+    public double max() {
+        return percentile(100);
+    }
+
+    /**
+     * Percentile by linear interpolation between the closest ranks
+     * @param percent between 0 and 100
+     * @return value below which the given percent of the sample falls
+     */
+    public double percentile(double percent) {
+        if(sorted.length == 0){
+            return Double.NaN;
+        }
+        double rank = percent / 100 * (sorted.length - 1);
+        int lower = (int) Math.floor(rank);
+        int upper = (int) Math.ceil(rank);
+        return sorted[lower] + (rank - lower) * (sorted[upper] - sorted[lower]);
+    }
+
+    @Override
+    public String toString(){
+        return String.format("mean %.3f, stddev %.3f, min %.3f, p50 %.3f, p90 %.3f, p95 %.3f, p99 %.3f, max %.3f",
+                mean, stddev, min(), percentile(50), percentile(90), percentile(95), percentile(99), max());
+    }
+}
@@ -3,28 +3,49 @@ package automail;
 // import exceptions.RobotNotInMailRoomException;
 import exceptions.TubeFullException;
 
+import java.io.Serializable;
 import java.util.Stack;
 
 /**
  * The storage tube carried by the robot.
  */
-public class StorageTube {
+public class StorageTube implements Serializable {
+    private static final long serialVersionUID = 1L;
 
-    public final int MAXIMUM_CAPACITY = 4;
+    /** Capacity of the tubes of the building the simulation was written for */
+    public static final int DEFAULT_CAPACITY = 4;
+
+    private final int capacity;
     public Stack<MailItem> tube;
 
     /**
      * Constructor for the storage tube
      */
     public StorageTube(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for a storage tube of the given capacity
+     * @param capacity total size of mail the tube holds
+     */
+    public StorageTube(int capacity){
+        this.capacity = capacity;
         this.tube = new Stack<MailItem>();
     }
 
+    /**
+     * @return total size of mail the tube holds
+     */
+    public int getCapacity(){
+        return capacity;
+    }
+
     /**
      * Check if the storage tube is full
      */
     public boolean isFull(){
-        return tube.capacity() == MAXIMUM_CAPACITY;
+        return tube.capacity() == capacity;
     }
 
     /**
@@ -47,7 +68,7 @@ public class StorageTube {
     	}
     	*/
         int current = getTotalOfSizes();
-        if(current + item.getSize() <= MAXIMUM_CAPACITY){
+        if(current + item.getSize() <= capacity){
         	tube.add(item);
         } else {
             throw new TubeFullException(current,item.getSize());
@@ -0,0 +1,35 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generator of one stream of RandomStreams. It draws exactly what a SplittableRandom of the same seed draws,
+ * through the same RandomGenerator methods, but unlike SplittableRandom it can be saved in a checkpoint.
+ */
+public final class StreamRandom implements RandomGenerator, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private long state;
+
+    /**
+     * @param seed start of the stream
+     */
+    public StreamRandom(long seed){
+        this.state = seed;
+    }
+
+    @Override
+    public long nextLong(){
+        state += RandomStreams.GOLDEN_GAMMA;
+        return RandomStreams.mix(state);
+    }
+
+    /** The 32 bit finalizer of SplittableRandom, which nextInt draws through */
+    @Override
+    public int nextInt(){
+        state += RandomStreams.GOLDEN_GAMMA;
+        long z = (state ^ (state >>> 33)) * 0x62A9D9ED799705F5L;
+        return (int) (((z ^ (z >>> 28)) * 0xCB24D0A5C88C35B3L) >>> 32);
+    }
+}
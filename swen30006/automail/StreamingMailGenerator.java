@@ -0,0 +1,228 @@
+package automail;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.random.RandomGenerator;
+
+/**
+ * Generates mail lazily, one time step at a time, instead of building the whole schedule up front.
+ * Arrival times are spread over a window of the scenario's last delivery time just as in MailGenerator:
+ * with n mails left and r steps left in the window, the number arriving now is Binomial(n, 1/r), which
+ * is the same distribution as giving every mail its own uniform arrival time. Only the current step's
+ * mail exists at any moment, so memory stays constant however much mail is created.
+ * The same seed always gives the same mail, but not the same mail as MailGenerator.
+ */
+public class StreamingMailGenerator implements IMailGenerator, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int mailPerWindow;
+    private final boolean unbounded;
+    /** One source of randomness per field, all the same Random unless built from RandomStreams */
+    private final RandomGenerator floorRandom;
+    private final RandomGenerator sizeRandom;
+    private final RandomGenerator priorityRandom;
+    private final RandomGenerator arrivalRandom;
+    private final Scenario scenario;
+    private final int window;   // steps mail of one window arrives over
+    private final IMailPool mailPool;
+    private final MailStore mailStore = new MailStore();
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private int mailCreated;
+    private int mailLeft;       // mail of the current window whose arrival has not been drawn yet
+    private int windowStart;    // last time step before the current window
+    private int drawnUntil;     // last time step whose number of arrivals has been drawn
+    private boolean arrivalDrawn;
+    private int nextArrival;    // time step of the drawn arrivals, NEVER if no more mail will arrive
+    private int nextCount;      // how many mail arrive then
+
+    /**
+     * Constructor for a generator creating a fixed amount of mail over one window
+     * @param mailToCreate how many mail to create
+     * @param mailPool pool receiving the mail
+     * @param seed seed under the key true, or no seed under the key false
+     */
+    public StreamingMailGenerator(int mailToCreate, IMailPool mailPool, HashMap<Boolean,Integer> seed){
+        this(mailToCreate, false, mailPool, seed);
+    }
+
+    /**
+     * Constructor for a mail generator
+     * @param mailPerWindow how many mail arrive in every window of Clock.LAST_DELIVERY_TIME steps
+     * @param unbounded true to start a new window whenever one ends, so mail never stops arriving
+     * @param mailPool pool receiving the mail
+     * @param seed seed under the key true, or no seed under the key false
+     */
+    public StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool,
+                                  HashMap<Boolean,Integer> seed){
+        this(mailPerWindow, unbounded, mailPool, seed, Scenario.DEFAULT);
+    }
+
+    /**
+     * Constructor for a mail generator in the given building
+     * @param mailPerWindow how many mail arrive in every window of the scenario's last delivery time
+     * @param unbounded true to start a new window whenever one ends, so mail never stops arriving
+     * @param mailPool pool receiving the mail
+     * @param seed seed under the key true, or no seed under the key false
+     * @param scenario floors mail goes to and length of a window
+     */
+    public StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool,
+                                  HashMap<Boolean,Integer> seed, Scenario scenario){
+        this(mailPerWindow, unbounded, mailPool, seed.containsKey(true) ? new Random((long) seed.get(true)) :
+                new Random(), scenario);
+    }
+
+    /**
+     * Constructor for a mail generator drawing arrivals, floors, sizes and priorities from their own
+     * streams. A seed gives different mail than with the other constructors.
+     * @param mailPerWindow how many mail arrive in every window of Clock.LAST_DELIVERY_TIME steps
+     * @param unbounded true to start a new window whenever one ends, so mail never stops arriving
+     * @param mailPool pool receiving the mail
+     * @param streams streams of the simulation
+     */
+    public StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool, RandomStreams streams){
+        this(mailPerWindow, unbounded, mailPool, streams, Scenario.DEFAULT);
+    }
+
+    /**
+     * Constructor for a mail generator in the given building drawing every field from its own stream
+     * @param mailPerWindow how many mail arrive in every window of the scenario's last delivery time
+     * @param unbounded true to start a new window whenever one ends, so mail never stops arriving
+     * @param mailPool pool receiving the mail
+     * @param streams streams of the simulation
+     * @param scenario floors mail goes to and length of a window
+     */
+    public StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool, RandomStreams streams,
+                                  Scenario scenario){
+        this(mailPerWindow, unbounded, mailPool, streams.stream(RandomStreams.Purpose.DESTINATION),
+                streams.stream(RandomStreams.Purpose.SIZE), streams.stream(RandomStreams.Purpose.PRIORITY),
+                streams.stream(RandomStreams.Purpose.ARRIVAL), scenario);
+    }
+
+    private StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool, Random random,
+                                   Scenario scenario){
+        this(mailPerWindow, unbounded, mailPool, random, random, random, random, scenario);
+    }
+
+    private StreamingMailGenerator(int mailPerWindow, boolean unbounded, IMailPool mailPool,
+                                   RandomGenerator floorRandom, RandomGenerator sizeRandom,
+                                   RandomGenerator priorityRandom, RandomGenerator arrivalRandom, Scenario scenario){
+        if(mailPerWindow < 0){
+            throw new IllegalArgumentException("Negative amount of mail: " + mailPerWindow);
+        }
+        this.scenario = scenario;
+        this.window = scenario.getLastDeliveryTime();
+        this.mailPerWindow = mailPerWindow;
+        this.unbounded = unbounded;
+        this.mailPool = mailPool;
+        this.floorRandom = floorRandom;
+        this.sizeRandom = sizeRandom;
+        this.priorityRandom = priorityRandom;
+        this.arrivalRandom = arrivalRandom;
+        mailCreated = 0;
+        mailLeft = mailPerWindow;
+        windowStart = 0;
+        drawnUntil = 0;
+        arrivalDrawn = false;
+    }
+
+    /**
+     * Creates the mail arriving up to the current time step. Steps without arrivals may be skipped.
+     */
+    @Override
+    public void step(){
+        int now = Clock.Time();
+        while(nextArrivalTime() <= now){
+            for(int i = 0; i < nextCount; i++){
+                mailPool.addToPool(generateMail(nextArrival));
+                mailCreated++;
+            }
+            arrivalDrawn = false;
+        }
+    }
+
+    @Override
+    public boolean isComplete(){
+        return !unbounded && mailLeft == 0 && (!arrivalDrawn || nextArrival == NEVER);
+    }
+
+    @Override
+    public int nextArrivalTime(){
+        if(!arrivalDrawn){
+            drawNextArrival();
+        }
+        return nextArrival;
+    }
+
+    @Override
+    public int getMailCreated(){
+        return mailCreated;
+    }
+
+    /**
+     * Draws the number of arrivals of the steps after drawnUntil until one of them has mail. Steps without
+     * mail draw nothing else, so drawing ahead uses the random numbers in the same order as drawing on
+     * every step would.
+     */
+    private void drawNextArrival(){
+        arrivalDrawn = true;
+        while(true){
+            int step = drawnUntil + 1;
+            if(step > windowStart + window){
+                if(!unbounded || mailPerWindow == 0){
+                    nextArrival = NEVER;
+                    return;
+                }
+                windowStart += window;
+                mailLeft = mailPerWindow;
+            }
+            if(mailLeft == 0){
+                if(!unbounded){
+                    nextArrival = NEVER;
+                    return;
+                }
+                /** Everything of this window has arrived, go on with the next one */
+                drawnUntil = windowStart + window;
+                continue;
+            }
+
+            drawnUntil = step;
+            int stepsLeft = windowStart + window - step + 1;
+            int arriving = stepsLeft <= 1 ? mailLeft : binomial(mailLeft, 1.0 / stepsLeft);
+            if(arriving > 0){
+                mailLeft -= arriving;
+                nextArrival = step;
+                nextCount = arriving;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Creates a mail item arriving at the given time
+     */
+    private MailItem generateMail(int arrivalTime){
+        int dest_floor = scenario.getLowestFloor() + floorRandom.nextInt(scenario.getFloors());
+        int size = MailItem.POSSIBLE_SIZES[sizeRandom.nextInt(MailItem.POSSIBLE_SIZES.length)];
+        Priority priority = PRIORITIES[priorityRandom.nextInt(PRIORITIES.length)];
+        return mailStore.add(dest_floor, size, priority, arrivalTime);
+    }
+
+    /**
+     * Number of successes in n trials of probability p, found by jumping over the failures between
+     * successes with geometric gaps. Expected cost is O(n * p + 1) and nothing underflows for large n.
+     */
+    private int binomial(int n, double p){
+        double logFailure = Math.log1p(-p);
+        int successes = 0;
+        long trial = 0;
+        while(true){
+            trial += (long) (Math.log(1 - arrivalRandom.nextDouble()) / logFailure) + 1;
+            if(trial > n){
+                return successes;
+            }
+            successes++;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package automail;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Replays the arrivals of a mail trace, see MailTrace, so a recorded workload can be run against any strategy.
+ * Mail is added to the pool at its recorded arrival time, in the order it was recorded, and delivery records
+ * are skipped. Fields go straight from the mapped file into a MailStore whose pages are dropped after delivery,
+ * so memory stays constant however long the trace is. A checkpoint keeps the path of the trace and where the
+ * replay is in it, so the trace has to be at the same path when the checkpoint is resumed.
+ */
+public class TraceMailGenerator implements IMailGenerator, AutoCloseable, Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final String trace;
+    private transient TraceReader reader;
+    private final IMailPool mailPool;
+    private final MailStore mailStore = new MailStore();
+
+    private int mailCreated;
+    private boolean positioned;  // the reader is on the next arrival to add
+    private boolean exhausted;   // no arrivals are left
+    private int lastArrival;
+
+    /**
+     * Constructor for a generator replaying a trace
+     * @param trace file written by a TraceRecorder
+     * @param mailPool pool receiving the mail
+     */
+    public TraceMailGenerator(Path trace, IMailPool mailPool) throws IOException {
+        this.trace = trace.toString();
+        this.reader = new TraceReader(trace);
+        this.mailPool = mailPool;
+    }
+
+    /**
+     * Adds the mail whose recorded arrival is up to the current time step
+     */
+    @Override
+    public void step(){
+        int now = Clock.Time();
+        while(nextArrivalTime() <= now){
+            mailPool.addToPool(mailStore.add(reader.getDestFloor(), reader.getSize(), reader.getPriority(),
+                    reader.getTime()));
+            mailCreated++;
+            positioned = false;
+        }
+    }
+
+    @Override
+    public boolean isComplete(){
+        return nextArrivalTime() == NEVER;
+    }
+
+    @Override
+    public int getMailCreated(){
+        return mailCreated;
+    }
+
+    @Override
+    public int nextArrivalTime(){
+        while(!positioned && !exhausted){
+            if(!reader.next()){
+                exhausted = true;
+            } else if(reader.getKind() == MailTrace.ARRIVAL){
+                int arrival = reader.getTime();
+                if(arrival < lastArrival){
+                    throw new IllegalStateException("Arrival at " + arrival + " recorded after one at "
+                            + lastArrival + ", record " + reader.getIndex());
+                }
+                lastArrival = arrival;
+                positioned = true;
+            }
+        }
+        return exhausted ? NEVER : reader.getTime();
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeLong(reader.getIndex());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        reader = new TraceReader(Paths.get(trace));
+        long index = in.readLong();
+        if(index > reader.getRecordCount()){
+            reader.close();
+            throw new InvalidObjectException("Mail trace " + trace + " is shorter than when it was saved");
+        }
+        reader.seek(index);
+    }
+}
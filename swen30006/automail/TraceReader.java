@@ -0,0 +1,161 @@
+package automail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Cursor over the records of a mail trace, see MailTrace. The file is memory-mapped a window at a time and
+ * the fields of the current record are read straight from the mapping, so scanning allocates nothing per
+ * record and runs at the speed the pages come in.
+ */
+public class TraceReader implements AutoCloseable {
+
+    /** Records mapped at a time, 1GB */
+    private static final int WINDOW_RECORDS = 1 << 26;
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final FileChannel channel;
+    private final long recordCount;
+    private MappedByteBuffer window;
+    private long windowFirst;    // index of the first record of the window
+    private int windowRecords;
+    private long index = -1;     // index of the current record
+    private int offset;          // byte of the current record in the window
+
+    /**
+     * Constructor for a reader positioned before the first record
+     * @param trace file written by a TraceRecorder
+     */
+    public TraceReader(Path trace) throws IOException {
+        channel = FileChannel.open(trace, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(MailTrace.HEADER_SIZE).order(MailTrace.ORDER);
+            if(channel.read(header, 0) < MailTrace.HEADER_SIZE){
+                throw new IOException("Mail trace is shorter than its header");
+            }
+            recordCount = MailTrace.checkHeader(header);
+            if(channel.size() < MailTrace.HEADER_SIZE + recordCount * MailTrace.RECORD_SIZE){
+                throw new IOException("Mail trace holds fewer than its " + recordCount + " records");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record
+     * @return false once there are no more records
+     */
+    public boolean next(){
+        if(index + 1 >= recordCount){
+            index = recordCount;
+            return false;
+        }
+        index++;
+        if(window == null || index >= windowFirst + windowRecords){
+            mapWindow(index);
+        }
+        offset = (int) (index - windowFirst) * MailTrace.RECORD_SIZE;
+        return true;
+    }
+
+    /**
+     * Moves to the given record, so a reader can pick up where another left off
+     * @param record index of the record, -1 for before the first and the record count for after the last
+     */
+    public void seek(long record){
+        if(record < -1 || record > recordCount){
+            throw new IndexOutOfBoundsException("Record " + record + " of a trace of " + recordCount);
+        }
+        index = record;
+        if(record < 0 || record == recordCount){
+            return;
+        }
+        if(window == null || record < windowFirst || record >= windowFirst + windowRecords){
+            mapWindow(record);
+        }
+        offset = (int) (record - windowFirst) * MailTrace.RECORD_SIZE;
+    }
+
+    /**
+     * @return total number of records of the trace
+     */
+    public long getRecordCount(){
+        return recordCount;
+    }
+
+    /**
+     * @return index of the current record
+     */
+    public long getIndex(){
+        return index;
+    }
+
+    /**
+     * @return MailTrace.ARRIVAL or MailTrace.DELIVERY
+     */
+    public byte getKind(){
+        return window.get(offset + MailTrace.KIND);
+    }
+
+    /**
+     * @return arrival time of an ARRIVAL record, delivery time of a DELIVERY record
+     */
+    public int getTime(){
+        return window.getInt(offset + MailTrace.TIME);
+    }
+
+    /**
+     * @return number the recorded mail had in its generator, -1 if it had none
+     */
+    public int getNumber(){
+        return window.getInt(offset + MailTrace.NUMBER);
+    }
+
+    /**
+     * @return destination floor of the recorded mail
+     */
+    public int getDestFloor(){
+        return window.getInt(offset + MailTrace.FLOOR);
+    }
+
+    /**
+     * @return unit size of the recorded mail
+     */
+    public int getSize(){
+        return window.get(offset + MailTrace.SIZE);
+    }
+
+    /**
+     * @return priority of the recorded mail
+     */
+    public Priority getPriority(){
+        return PRIORITIES[window.get(offset + MailTrace.PRIORITY)];
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    private void mapWindow(long first){
+        int records = (int) Math.min(WINDOW_RECORDS, recordCount - first);
+        try {
+            window = channel.map(FileChannel.MapMode.READ_ONLY,
+                    MailTrace.HEADER_SIZE + first * MailTrace.RECORD_SIZE, (long) records * MailTrace.RECORD_SIZE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot map mail trace", e);
+        }
+        window.order(MailTrace.ORDER);
+        windowFirst = first;
+        windowRecords = records;
+    }
+}
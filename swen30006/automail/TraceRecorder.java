@@ -0,0 +1,145 @@
+package automail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records the mail entering a pool and the mail robots deliver into a mail trace, see MailTrace.
+ * Records are written into a direct buffer that goes to the end of the file a block at a time, so recording
+ * allocates nothing per mail and the file only ever holds the records written. A memory-mapped window would
+ * grow the file a whole window ahead, and a file cannot be cut back while it is mapped on every platform. Wrap the pool the generator feeds with recordingArrivals and the
+ * delivery robots report to with recordingDeliveries. Robots stepping in parallel may record at once.
+ */
+public class TraceRecorder implements AutoCloseable {
+
+    /** Records written to the file at a time, 1MB */
+    private static final int BLOCK_RECORDS = 1 << 16;
+
+    private final FileChannel channel;
+    private final ByteBuffer block;
+    private long blockStart;     // file position of the first record of the block
+    private long recordCount;
+    private boolean closed;
+
+    /**
+     * Constructor for a recorder, replacing any file at the path
+     * @param trace file to record into
+     */
+    public TraceRecorder(Path trace) throws IOException {
+        channel = FileChannel.open(trace, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        writeHeader(MailTrace.UNFINISHED);
+        block = ByteBuffer.allocateDirect(BLOCK_RECORDS * MailTrace.RECORD_SIZE).order(MailTrace.ORDER);
+        blockStart = MailTrace.HEADER_SIZE;
+    }
+
+    /**
+     * A pool recording every mail added to it before passing it on
+     * @param pool pool the mail goes to
+     * @return pool for the mail generator to feed
+     */
+    public IMailPool recordingArrivals(IMailPool pool){
+        return mailItem -> {
+            recordArrival(mailItem);
+            pool.addToPool(mailItem);
+        };
+    }
+
+    /**
+     * A delivery recording every mail delivered through it before passing it on. The mail is recorded first
+     * as delivering it may retire its fields.
+     * @param delivery delivery the mail goes to
+     * @return delivery for the robots to report to
+     */
+    public IMailDelivery recordingDeliveries(IMailDelivery delivery){
+        return mailItem -> {
+            recordDelivery(mailItem, Clock.Time());
+            delivery.deliver(mailItem);
+        };
+    }
+
+    /**
+     * Records mail entering the pool at its arrival time
+     * @param mailItem the mail item
+     */
+    public synchronized void recordArrival(MailItem mailItem){
+        put(MailTrace.ARRIVAL, mailItem.getArrivalTime(), mailItem);
+    }
+
+    /**
+     * Records mail being delivered
+     * @param mailItem the mail item
+     * @param time time of the delivery
+     */
+    public synchronized void recordDelivery(MailItem mailItem, int time){
+        put(MailTrace.DELIVERY, time, mailItem);
+    }
+
+    /**
+     * @return number of records written so far
+     */
+    public synchronized long getRecordCount(){
+        return recordCount;
+    }
+
+    /**
+     * Writes the records still in the block and the record count into the header. A trace can only be
+     * replayed once its recorder is closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            writeBlock();
+            writeHeader(recordCount);
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void put(byte kind, int time, MailItem mailItem){
+        if(closed){
+            throw new IllegalStateException("Trace recorder is closed");
+        }
+        if(!block.hasRemaining()){
+            try {
+                writeBlock();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write mail trace", e);
+            }
+        }
+        ByteBuffer buffer = block;
+        int record = buffer.position();
+        buffer.putInt(record + MailTrace.TIME, time);
+        buffer.putInt(record + MailTrace.NUMBER, mailItem.getNumber());
+        buffer.putInt(record + MailTrace.FLOOR, mailItem.getDestFloor());
+        buffer.put(record + MailTrace.KIND, kind);
+        buffer.put(record + MailTrace.SIZE, (byte) mailItem.getSize());
+        buffer.put(record + MailTrace.PRIORITY, (byte) mailItem.getPriority().ordinal());
+        buffer.put(record + MailTrace.PRIORITY + 1, (byte) 0);
+        buffer.position(record + MailTrace.RECORD_SIZE);
+        recordCount++;
+    }
+
+    private void writeBlock() throws IOException {
+        block.flip();
+        while(block.hasRemaining()){
+            blockStart += channel.write(block, blockStart);
+        }
+        block.clear();
+    }
+
+    private void writeHeader(long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MailTrace.HEADER_SIZE).order(MailTrace.ORDER);
+        MailTrace.putHeader(header, count);
+        channel.write(header, 0);
+    }
+}
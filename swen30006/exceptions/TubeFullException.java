@@ -5,6 +5,7 @@ package exceptions;
  * capacity to hold said MailItem
  */
 public class TubeFullException extends Exception {
+    private static final long serialVersionUID = 1L;
 
     public TubeFullException(int toAdd, int currentCapacity){
         super("Not enough space in the tube! " +
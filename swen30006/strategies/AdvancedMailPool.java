@@ -2,28 +2,89 @@ package strategies;
 
 import automail.*;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.random.RandomGenerator;
 
 /**
- * Smart mail pool that returns efficient combination to put into the tube
+ * Smart mail pool that returns efficient combination to put into the tube.
+ * Safe to share between robots: searches run concurrently under a read lock and the chosen mails are claimed
+ * under the write lock, so no mail is ever handed to two robots.
  */
-public class AdvancedMailPool implements IMailPool {
-    // Would love to use the one defined in StorageTube but its not static in StorageTube!
-    private static final int MAX_CAPACITY = (new StorageTube()).MAXIMUM_CAPACITY;
-    private static final int MAX_DEPTH = 4;     // Maximum depth of the tree
-    private static final int MAX_BRANCHES = 17; // Maximum branching factor of the tree
-    private static final int OVERSHOT = 1000;   // Used for overestimating the estimated score
+public class AdvancedMailPool implements IRandomizedPool, IDrainablePool, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int FORK_DEPTH = 2;    // Levels of the tree split into fork-join tasks in parallel mode
+    private static final int INITIAL_POOL_CAPACITY = 64;
+    private static final int DEFAULT_CACHE_CAPACITY = 4096;
+    private static final int MAX_OPTIMISTIC_CLAIMS = 3; // searches before giving up on claiming without blocking
+    private static final ScoreKernel SCORE_KERNEL = ScoreKernel.create(); // scores the children of a node
 
-    // Redefined here because in MailItem, they are defined under an array therefore not a strict constant.
-    // Must be a constant to be used in switch/case statement
-    private static final String LOW_PRIO_TAG = "LOW";
-    private static final String MED_PRIO_TAG = "MEDIUM";
-    private static final String HIGH_PRIO_TAG = "HIGH";
+    private final Scenario scenario;
+    private final int capacity;         // of the tubes the combinations are for
+    private final int mailroom;
 
-    List<MailItem> mailPool;
+    // The pool is kept as parallel columns so the search reads primitives instead of walking MailItems
+    private MailItem[] mailItems;
+    private int[] destFloors;
+    private int[] sizes;
+    private int[] arrivalTimes;
+    private double[] priorities;
+    private int[] keys;        // unique per mail for as long as it stays in this pool
+    private int poolSize;
+    private int nextKey;
+    private int modCount;      // changes whenever mails enter or leave, guarded by the lock
+    private MailBucketIndex bucketIndex;
+    private UrgencyIndex urgencyIndex; // null unless the parameters limit the search to the most urgent mails
+
+    private SearchMode searchMode;
+    private SearchBudget budget;
+    private transient ThreadLocal<SearchContext> serialContexts = new ThreadLocal<>();
+    private volatile SearchParameters parameters = SearchParameters.DEFAULT;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean lastSearchComplete = true;
+    private volatile int lastSearchNodes;
+    private transient EfficiencyCache efficiencyCache;
+    private transient volatile SearchMetrics metrics;
+    private volatile RandomStreams randomStreams;
+    // bumped before taking the write lock, so searches made ahead of time give way to the writer at once
+    private final AtomicInteger writeRequests = new AtomicInteger();
+    private transient List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
 
     public AdvancedMailPool() {
-        mailPool = new ArrayList<>();
+        this(SearchMode.SERIAL);
+    }
+
+    public AdvancedMailPool(SearchMode searchMode) {
+        this(searchMode, Scenario.DEFAULT);
+    }
+
+    public AdvancedMailPool(Scenario scenario) {
+        this(SearchMode.SERIAL, scenario);
+    }
+
+    public AdvancedMailPool(SearchMode searchMode, Scenario scenario) {
+        this.scenario = scenario;
+        this.capacity = scenario.getTubeCapacity();
+        this.mailroom = scenario.getMailroomLocation();
+        mailItems = new MailItem[INITIAL_POOL_CAPACITY];
+        destFloors = new int[INITIAL_POOL_CAPACITY];
+        sizes = new int[INITIAL_POOL_CAPACITY];
+        arrivalTimes = new int[INITIAL_POOL_CAPACITY];
+        priorities = new double[INITIAL_POOL_CAPACITY];
+        keys = new int[INITIAL_POOL_CAPACITY];
+        bucketIndex = new MailBucketIndex(INITIAL_POOL_CAPACITY, mailroom);
+        poolSize = 0;
+        nextKey = 0;
+        this.searchMode = searchMode;
+        setCacheCapacity(DEFAULT_CACHE_CAPACITY);
     }
 
     /***
@@ -32,199 +93,773 @@ public class AdvancedMailPool implements IMailPool {
      * @return priority in double
      */
     public static double getMailPriorityDouble(MailItem mailItem) {
-        // copied from existing code
-        switch (mailItem.getPriorityLevel()) {
-            case LOW_PRIO_TAG:
-                return 1;
-            case MED_PRIO_TAG:
-                return 1.5;
-            case HIGH_PRIO_TAG:
-                return 2;
-        }
-        return 0;
+        return mailItem.getPriority().weight();
     }
 
     /***
-     * Get a efficient combination of mails to deliver using tree and utilizing MonteCarlo-style Search
-     * @return list of mails
+     * Position of the mail's priority level in MailItem.PRIORITY_LEVELS
+     * @param mailItem
+     * @return priority index
+     */
+    private static int getMailPriorityIndex(MailItem mailItem) {
+        return mailItem.getPriority().ordinal();
+    }
+
+    /***
+     * Get a efficient combination of mails to deliver using tree and utilizing MonteCarlo-style Search.
+     * The search only holds the read lock, so several robots may search at once. The combination is then
+     * claimed under the write lock if all of its mails are still where the search saw them, otherwise
+     * another robot got there first and the search is repeated.
+     * The call is measured only when metrics are attached or a flight recording has SearchEvent enabled.
+     * @return list of mails, empty if the pool ran dry
      */
     public List<MailItem> getMails() {
-        List<List<MailItem>> combinations = new ArrayList<>(); // final leaves
-        Stack<List<MailItem>> stack = new Stack<>();
-        int branchCount = Math.min(MAX_BRANCHES, mailPool.size());
-        int depth = Math.min(MAX_DEPTH, MAX_CAPACITY);
+        return getMails(null);
+    }
+
+    /***
+     * Get a efficient combination of mails to deliver, taking the given plan when it is still valid: made for
+     * the current time and nothing entered or left the pool since. It is then the very combination getMails()
+     * would search for now.
+     * @param plan combination searched for ahead of time, may be null
+     * @return list of mails, empty if the pool ran dry
+     */
+    List<MailItem> getMails(Plan plan) {
+        SearchMetrics metrics = this.metrics;
+        SearchEvent event = new SearchEvent();
+        if (metrics == null && !event.isEnabled())
+            return claimMails(null, plan);
+
+        Tally tally = new Tally();
+        long cpuStart = metrics != null ? SearchMetrics.threadCpuTime() : 0;
+        long start = System.nanoTime();
+        event.begin();
+        List<MailItem> mails = claimMails(tally, plan);
+        event.end();
+        long latency = System.nanoTime() - start;
 
-        // select random branches to travers down to and add to stack
-        Collections.shuffle(mailPool, new Random(mailPool.size()));
-        for (int m = 0; m < branchCount; m++) {
-            List<MailItem> currList = new ArrayList<>();
-            currList.add(mailPool.get(m));
-            stack.add(currList);
+        if (metrics != null)
+            metrics.record(tally.poolSize, tally.nodes, tally.leaves, tally.pruned, tally.efficiency, latency,
+                    SearchMetrics.threadCpuTime() - cpuStart + tally.plannedCpuNanos, tally.planned);
+        if (event.shouldCommit()) {
+            event.pool = getClass().getSimpleName();
+            event.poolSize = tally.poolSize;
+            event.nodes = tally.nodes;
+            event.leaves = tally.leaves;
+            event.pruned = tally.pruned;
+            event.efficiency = tally.efficiency;
+            event.planned = tally.planned;
+            event.mails = mails.size();
+            event.commit();
         }
+        return mails;
+    }
 
-        while (stack.size() > 0) {
-            // get node. at this point, the combination is sorted by destination
-            List<MailItem> currCombination = stack.pop();
+    /***
+     * Claim the plan if it is still valid, otherwise search for a combination and claim it, repeating the
+     * search while other robots claim first. The searches share one budget, so repeating them does not restart
+     * it; once it runs out, what is left in the pool of the last combination found is claimed instead.
+     * @param tally counts of the searches made, null when not measured
+     * @param plan combination searched for ahead of time, may be null
+     * @return list of mails, empty if the pool ran dry
+     */
+    private List<MailItem> claimMails(Tally tally, Plan plan) {
+        if (plan != null) {
+            List<MailItem> planned = null;
+            lockForWrite();
+            try {
+                if (plan.modCount == modCount && plan.time == Clock.Time()) {
+                    lastSearchComplete = plan.complete;
+                    lastSearchNodes = plan.budgetNodes;
+                    if (tally != null) {
+                        tally.add(plan.poolSize, plan.nodes, plan.leaves, plan.pruned, plan.efficiency);
+                        tally.planned = true;
+                        tally.plannedCpuNanos = plan.cpuNanos;
+                    }
+                    planned = removeFromPool(plan.positions);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (planned != null) {
+                firePoolChanged();
+                return planned;
+            }
+        }
 
-            double currScore = getEfficiency(currCombination);
-            boolean modified = false;
+        SearchLimit limit = new SearchLimit(budget);
+        int[] claimedKeys = null;
+        for (int attempt = 0; attempt < MAX_OPTIMISTIC_CLAIMS; attempt++) {
+            int[] positions;
+            lock.readLock().lock();
+            try {
+                if (poolSize == 0)
+                    return new ArrayList<>();
+                positions = limit.cutShort && claimedKeys != null ? positionsOf(claimedKeys) : null;
+                if (positions == null)
+                    positions = searchNow(tally, limit);
+                claimedKeys = new int[positions.length];
+                for (int i = 0; i < positions.length; i++) {
+                    claimedKeys[i] = keys[positions[i]];
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
 
-            // depth limit reached, do not traverse more
-            if (currCombination.size() >= depth) {
-                combinations.add(currCombination);
-                continue;
+            List<MailItem> claimed = null;
+            lockForWrite();
+            try {
+                if (isStillPooled(positions, claimedKeys))
+                    claimed = removeFromPool(positions);
+            } finally {
+                lock.writeLock().unlock();
             }
+            if (claimed != null) {
+                firePoolChanged();
+                return claimed;
+            }
+        }
 
-            // randomize and choose a mail to add to the combination
-            Collections.shuffle(mailPool, new Random(stack.size()));
-            for (int i = 0; i < branchCount; i++) {
-                MailItem toAdd = mailPool.get(i);
-
-                // logic: if destination you are going to go is above and below mail room, you might aswell re-pick up
-                // the mails since you are guaranteed to enter the mailroom again
-                // The following statement prevents such combination
-                if (!(toAdd.getDestFloor() > Building.MAILROOM_LOCATION &&
-                        currCombination.get(0).getDestFloor() > Building.MAILROOM_LOCATION) &&
-                        !(toAdd.getDestFloor() < Building.MAILROOM_LOCATION &&
-                                currCombination.get(0).getDestFloor() < Building.MAILROOM_LOCATION))
-                    continue;
+        // heavily contended, search and claim without letting anyone in between
+        List<MailItem> claimed;
+        lockForWrite();
+        try {
+            if (poolSize == 0)
+                return new ArrayList<>();
+            int[] positions = limit.cutShort ? positionsOf(claimedKeys) : null;
+            claimed = removeFromPool(positions != null ? positions : searchNow(tally, limit));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        firePoolChanged();
+        return claimed;
+    }
 
-                // not found in current combination
-                if (currCombination.indexOf(toAdd) < 0) {
-                    List<MailItem> newCombination = new ArrayList<>(currCombination);
-                    newCombination.add(toAdd);
-                    newCombination.sort(new MailItemComparator());
-
-                    // only traverse down the graph if the score is increasing and is below maximum capacity
-                    double newScore = getEfficiency(newCombination);
-                    if (newScore >= currScore && totalSize(newCombination) <= MAX_CAPACITY) {
-                        stack.add(newCombination);
-                        modified = true;
-                    }
+    /***
+     * Find the mails of a combination that are still in the pool, wherever removals moved them. Scans the
+     * whole pool, so it is only used once the budget has run out. The caller must hold the lock.
+     * @param claimedKeys keys of the combination, sorted by destination
+     * @return pool positions of the mails still pooled, in the same order, or null if none is
+     */
+    private int[] positionsOf(int[] claimedKeys) {
+        int[] positions = new int[claimedKeys.length];
+        int found = 0;
+        for (int k = 0; k < claimedKeys.length; k++) {
+            for (int position = 0; position < poolSize; position++) {
+                if (keys[position] == claimedKeys[k]) {
+                    positions[found++] = position;
+                    break;
                 }
             }
+        }
+        return found == 0 ? null : Arrays.copyOf(positions, found);
+    }
+
+    /***
+     * Search for the combination to hand out now. The caller must hold the lock.
+     * @param tally counts to add this search to, null when not measured
+     * @param limit budget of the call to getMails, shared with the searches it made before
+     * @return pool positions of the combination
+     */
+    private int[] searchNow(Tally tally, SearchLimit limit) {
+        limit.resetCounts();
+        Leaf best = search(limit, Clock.Time());
+        lastSearchComplete = !limit.cutShort;
+        lastSearchNodes = limit.nodes.get();
+        if (tally != null)
+            tally.add(poolSize, limit.expanded, limit.leaves, limit.pruned, best.efficiency);
+        return best.positions;
+    }
+
+    /***
+     * Search ahead of time for the combination getMails would hand out at the given time if the pool stays as
+     * it is. Gives up as soon as anyone asks for the write lock, since the pool is about to change.
+     * Safe to call from any thread. Its CPU time is only measured while metrics are attached.
+     * @param time clock time the combination is for
+     * @return the plan, or null if the pool is empty or was about to change
+     */
+    Plan plan(int time) {
+        lock.readLock().lock();
+        try {
+            if (poolSize == 0)
+                return null;
+            boolean measured = metrics != null;
+            long cpuStart = measured ? SearchMetrics.threadCpuTime() : 0;
+            SearchLimit limit = new SearchLimit(budget, writeRequests);
+            Leaf best = search(limit, time);
+            if (limit.isCancelled())
+                return null;
+            long cpuNanos = measured ? SearchMetrics.threadCpuTime() - cpuStart : 0;
+            return new Plan(time, modCount, poolSize, best, limit, cpuNanos);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /***
+     * Search the tree for the most efficient combination. The caller must hold the lock.
+     * @param limit budget of the search, receiving what it counted
+     * @param time clock time the combination is scored at
+     * @return the combination
+     */
+    private Leaf search(SearchLimit limit, int time) {
+        // parameters only change under the write lock, so they hold for the whole search
+        SearchParameters params = parameters;
+        limit.parameters = params;
+        int depth = Math.min(params.getMaxDepth(), capacity);
+        limit.reserved = capacity - depth;
+
+        // with a candidate limit the tree only sees the most urgent mails, so its cost does not grow with the pool
+        UrgencyIndex.Selection candidates = params.getCandidateLimit() > 0 ?
+                urgencyIndex.select(time, params.getOvershot(), params.getCandidateLimit()) : null;
+        limit.candidates = candidates;
+        int searchable = candidates == null ? poolSize : candidates.size();
+        int branchCount = Math.min(params.getMaxBranches(), searchable);
+
+        // select random branches to travers down to. Every node derives its own seed from its parent so the
+        // tree is identical no matter in which order (or on which thread) the nodes are expanded
+        RandomStreams streams = randomStreams;
+        limit.counterBased = streams != null;
+        long rootSeed = streams == null ? poolSize :
+                streams.seedOf(RandomStreams.Purpose.SEARCH, ((long) time << 32) | poolSize);
+        SearchContext context = getSerialContext(depth, params.getMaxBranches());
+        context.time = time;
+        context.overshot = params.getOvershot();
+        context.limit = limit;
+        context.resetCounts();
+        int[] branches = context.branches[0];
+        sampleIndices(context.reseed(rootSeed), searchable, branchCount, branches);
+        if (candidates != null) {
+            for (int m = 0; m < branchCount; m++) {
+                branches[m] = candidates.positionAt(branches[m]);
+            }
+        }
+
+        Leaf best;
+        if (searchMode == SearchMode.PARALLEL) {
+            List<SubtreeTask> roots = new ArrayList<>(branchCount);
+            for (int m = 0; m < branchCount; m++) {
+                roots.add(new SubtreeTask(new int[]{branches[m]}, childSeed(rootSeed, m), limit, time, branchCount,
+                        0));
+            }
+            best = ForkJoinPool.commonPool().invoke(new SubtreeTask(roots));
+        } else {
+            context.resetBest();
+            for (int m = 0; m < branchCount && !limit.cutShort; m++) {
+                context.combinations[0][0] = branches[m];
+                loadNode(context, 0, childSeed(rootSeed, m));
+                searchSubtree(context, 0, depth, branchCount);
+            }
+            best = context.toLeaf();
+            limit.collect(context);
+        }
+
+        // out of budget before reaching any leaf, still deliver something
+        if (best == null)
+            best = new Leaf(new int[]{branches[0]}, 0);
+        // tubes holding more than the tree is deep are filled greedily instead of by a deeper tree
+        if (depth < capacity)
+            best = topUp(best, context, childSeed(rootSeed, -1), branchCount);
+        return best;
+    }
+
+    /***
+     * Keep adding to a combination the sampled mail that makes it most efficient, as long as the tube has room
+     * and the addition does not lower its efficiency. Costs O(room * branchCount * room) where a tree one
+     * level deeper would multiply its cost by branchCount. Each round counts as a node against the budget of
+     * the search, drawing on the nodes the tree left for it, and the rounds stop once it is exhausted.
+     * The caller must hold the lock.
+     * @param best combination the tree chose, sorted by destination
+     * @param context scratch space of the search, giving its time, overshot, limit and generator
+     * @param seed seed of the first round of sampling
+     * @param branchCount number of mails sampled in each round
+     * @return the combination topped up, sorted by destination
+     */
+    private Leaf topUp(Leaf best, SearchContext context, long seed, int branchCount) {
+        int side = bucketIndex.sideOf(destFloors[best.positions[0]]);
+        if (side == MailBucketIndex.AT)
+            return best;
+
+        // every mail has at least size 1, so a tube never holds more than capacity of them
+        int[] combination = Arrays.copyOf(best.positions, capacity);
+        int[] trial = new int[capacity];
+        int[] branches = new int[branchCount];
+        int length = best.positions.length;
+        int minFloor = Integer.MAX_VALUE;
+        int maxFloor = Integer.MIN_VALUE;
+        int totalSize = 0;
+        for (int k = 0; k < length; k++) {
+            minFloor = Math.min(minFloor, destFloors[combination[k]]);
+            maxFloor = Math.max(maxFloor, destFloors[combination[k]]);
+            totalSize += sizes[combination[k]];
+        }
+        double efficiency = best.efficiency;
+        UrgencyIndex.Selection candidates = context.limit.candidates;
+        int deliveryTime = context.time + context.overshot;
+
+        for (int round = 0; totalSize < capacity && !context.limit.roundExhausted(); round++) {
+            RandomGenerator random = context.reseed(childSeed(seed, round));
+            int room = capacity - totalSize;
+            int drawn = candidates != null ? candidates.sample(random, side, room, branchCount, branches) :
+                    bucketIndex.sample(random, side, room, branchCount, branches);
+            int chosen = -1;
+            double chosenEfficiency = efficiency;
+            for (int i = 0; i < drawn; i++) {
+                int mail = branches[i];
+                if (insertSorted(combination, length, mail, trial) < 0)
+                    continue;
+                int floor = destFloors[mail];
+                double trialEfficiency = deliveryScore(trial, length + 1, deliveryTime)
+                        / getSteps(length + 1, Math.min(minFloor, floor), Math.max(maxFloor, floor));
+                if (trialEfficiency >= chosenEfficiency && (chosen < 0 || trialEfficiency > chosenEfficiency)) {
+                    chosen = mail;
+                    chosenEfficiency = trialEfficiency;
+                }
+            }
+            if (chosen < 0)
+                break;
+            insertSorted(combination, length, chosen, trial);
+            System.arraycopy(trial, 0, combination, 0, ++length);
+            minFloor = Math.min(minFloor, destFloors[chosen]);
+            maxFloor = Math.max(maxFloor, destFloors[chosen]);
+            totalSize += sizes[chosen];
+            efficiency = chosenEfficiency;
+        }
+        if (length == best.positions.length)
+            return best;
+        return new Leaf(Arrays.copyOf(combination, length), efficiency);
+    }
+
+    /***
+     * Write a combination with one more mail into another array, keeping it sorted by destination with ties
+     * broken by key as in tryExpand
+     * @param combination pool positions sorted by destination
+     * @param length number of mails in the combination
+     * @param toAdd pool position of the mail to add
+     * @param into array receiving length + 1 positions
+     * @return where the mail went, or -1 if it is in the combination already
+     */
+    private int insertSorted(int[] combination, int length, int toAdd, int[] into) {
+        int floor = destFloors[toAdd];
+        int insertAt = length;
+        for (int k = length - 1; k >= 0; k--) {
+            if (combination[k] == toAdd)
+                return -1;
+            int kFloor = destFloors[combination[k]];
+            if (kFloor > floor || (kFloor == floor && keys[combination[k]] > keys[toAdd]))
+                insertAt = k;
+        }
+        System.arraycopy(combination, 0, into, 0, insertAt);
+        into[insertAt] = toAdd;
+        System.arraycopy(combination, insertAt, into, insertAt + 1, length - insertAt);
+        return insertAt;
+    }
+
+    /***
+     * Check that a combination found under the read lock can still be claimed. Arrivals only append to the
+     * pool, so the mails are still there exactly when their keys have not moved. The caller must hold the
+     * write lock.
+     * @param positions pool positions the search chose
+     * @param claimedKeys keys the search saw at those positions
+     * @return true if every mail is still at its position
+     */
+    private boolean isStillPooled(int[] positions, int[] claimedKeys) {
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] >= poolSize || keys[positions[i]] != claimedKeys[i])
+                return false;
+        }
+        return true;
+    }
+
+    /***
+     * Depth first search below the node held at the given level of the context. Allocates nothing.
+     * @param context scratch space holding the node
+     * @param level number of mails in the node minus one
+     * @param depth maximum number of mails in a combination
+     * @param branchCount number of mails sampled at each node
+     */
+    private void searchSubtree(SearchContext context, int level, int depth, int branchCount) {
+        if (context.limit.exhausted())
+            return;
+        context.expanded++;
 
-            // when anything below current leaf is most likely to be lower, just add current leaf
-            if (!modified) {
-                combinations.add(currCombination);
+        // depth limit reached, do not traverse more
+        if (level + 1 >= depth) {
+            context.offerLeaf(level);
+            return;
+        }
+
+        // randomize and choose a mail to add to the combination
+        int[] branches = context.branches[level + 1];
+        int candidates = sampleChildren(context, level, branchCount, branches);
+        double[] childEfficiencies = context.childEfficiencies[level + 1];
+        scoreChildren(context, level, branches, candidates, childEfficiencies);
+
+        boolean modified = false;
+        for (int i = 0; i < candidates; i++) {
+            if (tryExpand(context, level, branches[i], childSeed(context.seeds[level], i), childEfficiencies[i])) {
+                searchSubtree(context, level + 1, depth, branchCount);
+                modified = true;
+            } else {
+                context.pruned++;
             }
+            // out of budget, keep the best leaf found so far
+            if (context.limit.cutShort)
+                return;
         }
 
-        // get most efficient combination
-        double maxScore = 0;
-        List<MailItem> curr = combinations.get(0);
+        // when anything below current leaf is most likely to be lower, just add current leaf
+        if (!modified) {
+            context.offerLeaf(level);
+        }
+    }
 
-        for (List<MailItem> combination : combinations) {
-            combination.sort(new MailItemComparator());
-            double score = getEfficiency(combination);
+    /***
+     * Draw random mails that could be added to the node at the given level: on the same side of the mailroom
+     * and small enough to fit, and among the most urgent mails when the search has a candidate limit. Costs
+     * O(branchCount) whatever the size of the pool.
+     * @param context scratch space holding the node
+     * @param level number of mails in the node minus one
+     * @param branchCount maximum number of mails to draw
+     * @param branches array receiving the pool positions of the drawn mails
+     * @return number of mails drawn
+     */
+    private int sampleChildren(SearchContext context, int level, int branchCount, int[] branches) {
+        int side = bucketIndex.sideOf(context.minFloors[level]);
+        if (side == MailBucketIndex.AT)
+            return 0;
+
+        RandomGenerator random = context.reseed(context.seeds[level]);
+        int room = capacity - context.totalSizes[level];
+        UrgencyIndex.Selection candidates = context.limit.candidates;
+        if (candidates != null)
+            return candidates.sample(random, side, room, branchCount, branches);
+        return bucketIndex.sample(random, side, room, branchCount, branches);
+    }
+
+    /***
+     * Fill in the running floors, size and efficiency of the combination written at the given level
+     * @param context scratch space holding the combination
+     * @param level number of mails in the combination minus one
+     * @param seed seed of the node
+     */
+    private void loadNode(SearchContext context, int level, long seed) {
+        int[] combination = context.combinations[level];
+        int minFloor = destFloors[combination[0]];
+        int maxFloor = minFloor;
+        int totalSize = 0;
+        for (int k = 0; k <= level; k++) {
+            minFloor = Math.min(minFloor, destFloors[combination[k]]);
+            maxFloor = Math.max(maxFloor, destFloors[combination[k]]);
+            totalSize += sizes[combination[k]];
+        }
+        context.minFloors[level] = minFloor;
+        context.maxFloors[level] = maxFloor;
+        context.totalSizes[level] = totalSize;
+        context.seeds[level] = seed;
+        context.efficiencies[level] = getEfficiency(context, level);
+    }
 
-            if (score > maxScore) {
-                curr = combination;
-                maxScore = score;
+    /***
+     * Build the child of the node at the given level by adding a mail to it, writing it into the next level
+     * @param context scratch space holding the node
+     * @param level number of mails in the node minus one
+     * @param toAdd pool position of the mail to add
+     * @param seed seed of the child node
+     * @param efficiency efficiency of the child, as scored by scoreChildren
+     * @return whether the child is worth traversing
+     */
+    private boolean tryExpand(SearchContext context, int level, int toAdd, long seed, double efficiency) {
+        // NaN when the child is not a valid combination
+        if (Double.isNaN(efficiency) || !buildChild(context, level, toAdd))
+            return false;
+        int child = level + 1;
+        context.seeds[child] = seed;
+
+        // only traverse down the graph if the score is increasing
+        context.efficiencies[child] = efficiency;
+        return efficiency >= context.efficiencies[level];
+    }
+
+    /***
+     * Score the children of the node at the given level, looking each up in the efficiency cache and
+     * scoring the rest together with one call of the score kernel, so that on the Vector API kernel they are
+     * scored several at a time. Children that are not valid combinations score NaN.
+     * @param context scratch space holding the node
+     * @param level number of mails in the node minus one
+     * @param branches pool positions of the mails to add
+     * @param candidates number of children
+     * @param childEfficiencies array receiving the efficiency of each child
+     */
+    private void scoreChildren(SearchContext context, int level, int[] branches, int candidates,
+                               double[] childEfficiencies) {
+        EfficiencyCache cache = efficiencyCache;
+        int child = level + 1;
+        int length = child + 1;
+        int[] next = context.combinations[child];
+        int[] cacheKeys = context.cacheKeys;
+        int stride = context.frontierChildren.length;
+        int count = 0;
+        for (int i = 0; i < candidates; i++) {
+            childEfficiencies[i] = Double.NaN;
+            if (!buildChild(context, level, branches[i]))
+                continue;
+            for (int k = 0; k < length; k++) {
+                cacheKeys[k] = keys[next[k]];
+            }
+            if (cache != null) {
+                double cached = cache.get(cacheKeys, length, context.time);
+                if (!Double.isNaN(cached)) {
+                    childEfficiencies[i] = cached;
+                    continue;
+                }
+            }
+            // mail k of the child goes in column k of the frontier
+            for (int k = 0, f = count; k < length; k++, f += stride) {
+                int position = next[k];
+                context.frontierFloors[f] = destFloors[position];
+                context.frontierArrivals[f] = arrivalTimes[position];
+                context.frontierWeights[f] = priorities[position];
+                context.frontierKeys[f] = cacheKeys[k];
             }
+            context.frontierSteps[count] = getSteps(length, context.minFloors[child], context.maxFloors[child]);
+            context.frontierChildren[count++] = i;
         }
+        if (count == 0)
+            return;
 
-        mailPool.removeAll(curr);
-        return curr;
+        double[] scores = context.frontierScores;
+        SCORE_KERNEL.score(count, length, context.frontierFloors, context.frontierArrivals, context.frontierWeights,
+                stride, mailroom, context.time + context.overshot, scores);
+        for (int c = 0; c < count; c++) {
+            double efficiency = 1.0 * (scores[c] / context.frontierSteps[c]);
+            childEfficiencies[context.frontierChildren[c]] = efficiency;
+            if (cache != null) {
+                for (int k = 0, f = c; k < length; k++, f += stride) {
+                    cacheKeys[k] = context.frontierKeys[f];
+                }
+                cache.put(cacheKeys, length, context.time, efficiency);
+            }
+        }
     }
 
     /***
-     * Minium destination floor for the given mail list
-     * @param mailList list of mails to deliver
-     * @return minimum floor level
+     * Write the child of the node at the given level into the next level, with its running floors and size
+     * @param context scratch space holding the node
+     * @param level number of mails in the node minus one
+     * @param toAdd pool position of the mail to add
+     * @return false, leaving the next level unwritten, if the child is not a valid combination
      */
-    private int minFloor(List<MailItem> mailList) {
-        int min = mailList.get(0).getDestFloor();
-        for (MailItem mailItem : mailList) {
-            if (min > mailItem.getDestFloor())
-                min = mailItem.getDestFloor();
+    private boolean buildChild(SearchContext context, int level, int toAdd) {
+        int[] curr = context.combinations[level];
+        int toAddFloor = destFloors[toAdd];
+
+        // logic: if destination you are going to go is above and below mail room, you might aswell re-pick up
+        // the mails since you are guaranteed to enter the mailroom again
+        // The following statement prevents such combination
+        int firstFloor = destFloors[curr[0]];
+        if (!(toAddFloor > mailroom && firstFloor > mailroom) && !(toAddFloor < mailroom && firstFloor < mailroom))
+            return false;
+
+        // below maximum capacity
+        int newSize = context.totalSizes[level] + sizes[toAdd];
+        if (newSize > capacity)
+            return false;
+
+        // not found in current combination, and where it goes to keep the combination sorted by destination.
+        // Ties are broken by key so a set of mails always comes out in the same order (and scores the same)
+        // whichever order it was built in
+        int insertAt = level + 1;
+        for (int k = level; k >= 0; k--) {
+            if (curr[k] == toAdd)
+                return false;
+            int floor = destFloors[curr[k]];
+            if (floor > toAddFloor || (floor == toAddFloor && keys[curr[k]] > keys[toAdd]))
+                insertAt = k;
         }
 
-        return min;
+        int child = level + 1;
+        int[] next = context.combinations[child];
+        System.arraycopy(curr, 0, next, 0, insertAt);
+        next[insertAt] = toAdd;
+        System.arraycopy(curr, insertAt, next, insertAt + 1, level + 1 - insertAt);
+        context.minFloors[child] = Math.min(context.minFloors[level], toAddFloor);
+        context.maxFloors[child] = Math.max(context.maxFloors[level], toAddFloor);
+        context.totalSizes[child] = newSize;
+        return true;
+    }
+
+    /***
+     * Pick the more efficient of two leaves, keeping the earlier one on ties
+     * @param best best leaf so far, may be null
+     * @param candidate leaf to compare against, may be null
+     * @return more efficient leaf
+     */
+    private static Leaf better(Leaf best, Leaf candidate) {
+        if (candidate == null)
+            return best;
+        if (best == null || candidate.efficiency > best.efficiency)
+            return candidate;
+        return best;
+    }
+
+    /***
+     * Derive the seed of a child node from its parent seed and branch position
+     * @param seed seed of the parent node
+     * @param branch position of the child among its siblings
+     * @return seed for the child node
+     */
+    private static long childSeed(long seed, int branch) {
+        return RandomStreams.mix(seed + (branch + 1) * 0x9E3779B97F4A7C15L);
     }
 
     /***
-     * Maximum destination floor for the given mail list
-     * @param mailList list of mails to deliver
-     * @return maximum floor level
+     * Choose distinct random positions in the pool without shuffling it (Floyd's algorithm)
+     * @param random source of randomness
+     * @param poolSize number of mails in the pool
+     * @param count number of positions to choose, at most poolSize
+     * @param chosen array receiving the chosen positions
      */
-    private int maxFloor(List<MailItem> mailList) {
-        int max = mailList.get(0).getDestFloor();
-        for (MailItem mailItem : mailList) {
-            if (max < mailItem.getDestFloor())
-                max = mailItem.getDestFloor();
+    private static void sampleIndices(RandomGenerator random, int poolSize, int count, int[] chosen) {
+        int chosenCount = 0;
+        for (int j = poolSize - count; j < poolSize; j++) {
+            int t = random.nextInt(j + 1);
+            for (int k = 0; k < chosenCount; k++) {
+                if (chosen[k] == t) {
+                    t = j;
+                    break;
+                }
+            }
+            chosen[chosenCount++] = t;
         }
-        return max;
     }
 
     /***
-     * Calculate expected delivery score upon deliverying the list of mails
-     * @param deliveryItems list of mails to deliver
+     * Calculate expected delivery score upon deliverying the combination held at the given level
+     * @param context scratch space holding the combination, sorted by destination
+     * @param level number of mails in the combination minus one
+     * @return expected score gain with overhead
+     */
+    private double simulateDeliveryScore(SearchContext context, int level) {
+        // The score depends on delivery order so it is recomputed over the (at most maxDepth) sorted mails
+        return deliveryScore(context.combinations[level], level + 1, context.time + context.overshot);
+    }
+
+    /***
+     * Calculate expected delivery score upon deliverying a combination
+     * @param combination pool positions sorted by destination
+     * @param length number of mails in the combination
+     * @param startTime time the robot leaves the mailroom, with the overhead estimation added
      * @return expected score gain with overhead
      */
-    private double simulateDeliveryScore(List<MailItem> deliveryItems) {
-        final double penalty = 1.1;
-        int currTime = Clock.Time() + OVERSHOT; // overhead estimation
-        int currFloor = Building.MAILROOM_LOCATION;
+    private double deliveryScore(int[] combination, int length, int startTime) {
+        int currTime = startTime;
+        int currFloor = mailroom;
         double score = 0;
 
-        // Determine the priority_weight
-        for (MailItem deliveryItem : deliveryItems) {
+        for (int k = 0; k < length; k++) {
+            int position = combination[k];
             // Travel time
-            currTime += Math.abs(currFloor - deliveryItem.getDestFloor());
+            currTime += Math.abs(currFloor - destFloors[position]);
 
             // deliver and add time
-            double priority_weight = getMailPriorityDouble(deliveryItem);
-            score += Math.pow(currTime - deliveryItem.getArrivalTime(), penalty) * priority_weight;
+            score += ScoreKernel.penalty(currTime - arrivalTimes[position]) * priorities[position];
             currTime += 1;
-            currFloor = deliveryItem.getDestFloor();
+            currFloor = destFloors[position];
         }
 
         return score;
     }
 
     /**
-     * Calculate efficiency for the given list of mails to deliver
+     * Calculate efficiency for the combination held at the given level
      * efficiency = estimatedScore / steps = score per steps
      *
-     * @param mailItemList
+     * @param context scratch space holding the combination
+     * @param level number of mails in the combination minus one
      * @return efficiency score
      */
-    private double getEfficiency(List<MailItem> mailItemList) {
-        int steps = getSteps(mailItemList);
-        double score = simulateDeliveryScore(mailItemList);
+    private double getEfficiency(SearchContext context, int level) {
+        EfficiencyCache cache = efficiencyCache;
+        int[] cacheKeys = context.cacheKeys;
+        if (cache != null) {
+            int[] combination = context.combinations[level];
+            for (int k = 0; k <= level; k++) {
+                cacheKeys[k] = keys[combination[k]];
+            }
+            double cached = cache.get(cacheKeys, level + 1, context.time);
+            if (!Double.isNaN(cached))
+                return cached;
+        }
+
+        int steps = getSteps(level + 1, context.minFloors[level], context.maxFloors[level]);
+        double score = simulateDeliveryScore(context, level);
+        double efficiency = 1.0 * (score / steps);
 
-        return 1.0 * (score / steps);
+        if (cache != null)
+            cache.put(cacheKeys, level + 1, context.time, efficiency);
+        return efficiency;
     }
 
     /***
      * Calculate time units required to deliver the mails
-     * @param mailList list of mails to deliver
+     * @param count number of mails to deliver
+     * @param minFloor minimum destination floor of the mails
+     * @param maxFloor maximum destination floor of the mails
      * @return steps
      */
-    private int getSteps(List<MailItem> mailList) {
+    private int getSteps(int count, int minFloor, int maxFloor) {
         // time units required to finish delivering
-        int steps = mailList.size();
+        int steps = count;
 
-        if (maxFloor(mailList) > Building.MAILROOM_LOCATION)
-            steps += Math.abs(maxFloor(mailList) - Building.MAILROOM_LOCATION) * 2;
-        if (minFloor(mailList) < Building.MAILROOM_LOCATION)
-            steps += Math.abs(minFloor(mailList) - Building.MAILROOM_LOCATION) * 2;
+        if (maxFloor > mailroom)
+            steps += Math.abs(maxFloor - mailroom) * 2;
+        if (minFloor < mailroom)
+            steps += Math.abs(minFloor - mailroom) * 2;
 
         return steps;
     }
 
     /***
-     * Get total size of the current list of mails
-     * @param mailList list of mails to consider
-     * @return sum of sizes
+     * Take the mails at the given positions out of the pool. Each removal moves the last mail of the pool
+     * into the freed position, so it costs O(1) whatever the size of the pool.
+     * @param positions pool positions of the mails to remove
+     * @return removed mails, in the given order
      */
-    private int totalSize(List<MailItem> mailList) {
-        int total = 0;
-        for (MailItem mailItem : mailList) {
-            total += mailItem.getSize();
+    private List<MailItem> removeFromPool(int[] positions) {
+        List<MailItem> removed = new ArrayList<>(positions.length);
+        int[] removedKeys = new int[positions.length];
+        modCount++;
+        for (int i = 0; i < positions.length; i++) {
+            removed.add(mailItems[positions[i]]);
+            removedKeys[i] = keys[positions[i]];
         }
-        return total;
+        if (efficiencyCache != null)
+            efficiencyCache.invalidate(removedKeys);
+
+        // highest position first so the mail moved into a freed position is never one still to be removed
+        int[] descending = positions.clone();
+        Arrays.sort(descending);
+        for (int i = descending.length - 1; i >= 0; i--) {
+            int position = descending[i];
+            int last = --poolSize;
+            bucketIndex.remove(position);
+            if (urgencyIndex != null)
+                urgencyIndex.remove(position);
+            if (position != last) {
+                mailItems[position] = mailItems[last];
+                destFloors[position] = destFloors[last];
+                sizes[position] = sizes[last];
+                arrivalTimes[position] = arrivalTimes[last];
+                priorities[position] = priorities[last];
+                keys[position] = keys[last];
+                bucketIndex.move(last, position);
+                if (urgencyIndex != null)
+                    urgencyIndex.move(last, position);
+            }
+            mailItems[last] = null;
+        }
+        return removed;
     }
 
     /***
@@ -233,7 +868,150 @@ public class AdvancedMailPool implements IMailPool {
      */
     @Override
     public void addToPool(MailItem mailItem) {
-        mailPool.add(mailItem);
+        lockForWrite();
+        try {
+            append(mailItem);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        firePoolChanged();
+    }
+
+    /***
+     * Take every mail out of the pool
+     * @return the mails, in no particular order
+     */
+    @Override
+    public List<MailItem> drainPool() {
+        List<MailItem> drained;
+        lockForWrite();
+        try {
+            int[] positions = new int[poolSize];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = i;
+            }
+            drained = removeFromPool(positions);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        firePoolChanged();
+        return drained;
+    }
+
+    /***
+     * Take the write lock, first telling searches made ahead of time to stop
+     */
+    private void lockForWrite() {
+        writeRequests.incrementAndGet();
+        lock.writeLock().lock();
+    }
+
+    /***
+     * Run the listeners after mails entered or left the pool, outside the lock
+     */
+    private void firePoolChanged() {
+        for (Runnable listener : changeListeners) {
+            listener.run();
+        }
+    }
+
+    /***
+     * Be told whenever mails enter or leave the pool. Listeners run on the thread that changed the pool,
+     * after it let go of the lock.
+     * @param listener code to run
+     */
+    void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    /***
+     * Stop telling a listener about changes
+     * @param listener listener added before
+     */
+    void removeChangeListener(Runnable listener) {
+        changeListeners.remove(listener);
+    }
+
+    /***
+     * Write a mail into the columns after the last one. The caller must hold the write lock.
+     * @param mailItem the mail item being added
+     */
+    private void append(MailItem mailItem) {
+        if (poolSize == mailItems.length) {
+            int capacity = poolSize * 2;
+            mailItems = Arrays.copyOf(mailItems, capacity);
+            destFloors = Arrays.copyOf(destFloors, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        modCount++;
+        mailItems[poolSize] = mailItem;
+        destFloors[poolSize] = mailItem.getDestFloor();
+        sizes[poolSize] = mailItem.getSize();
+        arrivalTimes[poolSize] = mailItem.getArrivalTime();
+        priorities[poolSize] = getMailPriorityDouble(mailItem);
+        keys[poolSize] = nextKey++;
+        bucketIndex.add(poolSize, destFloors[poolSize], sizes[poolSize], getMailPriorityIndex(mailItem));
+        if (urgencyIndex != null)
+            addToUrgencyIndex(poolSize);
+        poolSize++;
+    }
+
+    /***
+     * Keep an urgency index exactly while the parameters limit the search to the most urgent mails, building
+     * it over the whole pool when a limit is set. The caller must hold the write lock.
+     */
+    private void indexUrgency() {
+        if (parameters.getCandidateLimit() == 0) {
+            urgencyIndex = null;
+            return;
+        }
+        if (urgencyIndex != null)
+            return;
+        urgencyIndex = new UrgencyIndex(Math.max(poolSize, INITIAL_POOL_CAPACITY), scenario);
+        for (int position = 0; position < poolSize; position++) {
+            addToUrgencyIndex(position);
+        }
+    }
+
+    private void addToUrgencyIndex(int position) {
+        urgencyIndex.add(position, destFloors[position], MailBucketIndex.sizeIndex(sizes[position]),
+                getMailPriorityIndex(mailItems[position]), arrivalTimes[position], keys[position]);
+    }
+
+    /***
+     * Take the seeds of the searches from the simulation's streams: the root of a search is seeded from the
+     * SEARCH stream indexed by the time and the pool size, and nodes draw from a SplitMix64 counter instead of
+     * java.util.Random. Without streams the root is seeded with the pool size as before.
+     * @param streams streams of the simulation, null for the pool's own seeding
+     */
+    @Override
+    public void setRandomStreams(RandomStreams streams) {
+        this.randomStreams = streams;
+    }
+
+    /***
+     * @return the building and tubes the pool chooses combinations for
+     */
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    /***
+     * Attach metrics that every later call to getMails is recorded in
+     * @param metrics metrics to record into, possibly shared with other pools, null to stop measuring
+     */
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /***
+     * @return metrics calls to getMails are recorded in, null when not measured
+     */
+    public SearchMetrics getMetrics() {
+        return metrics;
     }
 
     /***
@@ -241,9 +1019,86 @@ public class AdvancedMailPool implements IMailPool {
      * @return true/false
      */
     public boolean isEmptyPool() {
-        if (mailPool.size() > 0)
-            return false;
-        return true;
+        return size() == 0;
+    }
+
+    /***
+     * Choose whether getMails explores the tree on the calling thread or across the fork-join pool.
+     * Both modes return the same combination.
+     * @param searchMode mode to use from the next search onwards
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+    }
+
+    /***
+     * Replace the efficiency cache with an empty one of the given size
+     * @param capacity maximum number of cached combinations, 0 to disable caching
+     */
+    public void setCacheCapacity(int capacity) {
+        efficiencyCache = capacity > 0 ? new EfficiencyCache(capacity,
+                Math.min(parameters.getMaxDepth(), this.capacity)) : null;
+    }
+
+    /***
+     * Change the depth, branching factor and overshot of the tree search. Waits for searches in progress,
+     * empties the efficiency cache since it was filled under the old overshot and makes plans made ahead of
+     * time stale.
+     * @param parameters parameters to use from the next search onwards
+     */
+    public void setParameters(SearchParameters parameters) {
+        if (parameters == null)
+            throw new IllegalArgumentException("Search parameters are required");
+        lockForWrite();
+        try {
+            this.parameters = parameters;
+            modCount++;
+            indexUrgency();
+            EfficiencyCache cache = efficiencyCache;
+            if (cache != null)
+                setCacheCapacity(cache.getCapacity());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        firePoolChanged();
+    }
+
+    /***
+     * @return parameters of the tree search
+     */
+    public SearchParameters getParameters() {
+        return parameters;
+    }
+
+    /***
+     * Cache of combination efficiencies, exposing hit and miss counters for tuning its size
+     * @return the cache, or null when caching is disabled
+     */
+    public EfficiencyCache getEfficiencyCache() {
+        return efficiencyCache;
+    }
+
+    /***
+     * Limit the work of each search. When the budget runs out the search stops and returns the most efficient
+     * combination found so far, making getMails an anytime search.
+     * @param budget node count or wall-clock budget per call, null for an exhaustive search
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /***
+     * @return whether the last call to getMails explored the whole tree, false if its budget cut it short
+     */
+    public boolean isLastSearchComplete() {
+        return lastSearchComplete;
+    }
+
+    /***
+     * @return number of nodes the last call to getMails counted against its budget, 0 without a budget
+     */
+    public int getLastSearchNodes() {
+        return lastSearchNodes;
     }
 
     /***
@@ -251,20 +1106,370 @@ public class AdvancedMailPool implements IMailPool {
      * @return size of the mail pool
      */
     public int size() {
-        return mailPool.size();
+        lock.readLock().lock();
+        try {
+            return poolSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /***
+     * The efficiency cache is saved as just its size, and metrics and listeners are left for the restored
+     * simulation to attach again. A cache only ever returns what the search would compute, so a restored pool
+     * chooses the same mails.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        EfficiencyCache cache = efficiencyCache;
+        out.writeInt(cache == null ? 0 : cache.getCapacity());
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        serialContexts = new ThreadLocal<>();
+        changeListeners = new CopyOnWriteArrayList<>();
+        setCacheCapacity(in.readInt());
+    }
+
+    /***
+     * Scratch space reused across searches on the calling thread, replaced when the parameters changed its size
+     * @param depth maximum number of mails in a combination
+     * @param maxBranches maximum number of mails sampled at each node
+     * @return context for serial searches
+     */
+    private SearchContext getSerialContext(int depth, int maxBranches) {
+        SearchContext context = serialContexts.get();
+        if (context == null || context.seeds.length != depth || context.branches[0].length != maxBranches) {
+            context = new SearchContext(depth, maxBranches);
+            serialContexts.set(context);
+        }
+        return context;
     }
 
     /***
-     * For sorting mails by destination floor
+     * Preallocated scratch space for one thread of the search. Level k holds a combination of k + 1 mails as
+     * pool positions sorted by destination, together with its running floors, size, efficiency and seed,
+     * so a node is expanded by writing into the next level instead of copying lists.
      */
-    class MailItemComparator implements Comparator<MailItem> {
+    private static final class SearchContext {
+        final int[][] combinations;
+        final int[] minFloors;
+        final int[] maxFloors;
+        final int[] totalSizes;
+        final double[] efficiencies;
+        final long[] seeds;
+        final int[][] branches;
+        final int[] cacheKeys;
+        /** Efficiencies of the children of the node at the level before, as scored by scoreChildren */
+        final double[][] childEfficiencies;
+        /** Children of one node in the column layout of ScoreKernel, with a stride of maxBranches */
+        final int[] frontierFloors;
+        final int[] frontierArrivals;
+        final double[] frontierWeights;
+        final int[] frontierKeys;
+        final int[] frontierSteps;
+        final int[] frontierChildren;
+        final double[] frontierScores;
+        final Random random = new Random();
+        final SplitMix64 counterRandom = new SplitMix64(0);
+        int time;
+        int overshot;
+        SearchLimit limit;
+        int expanded;
+        int leaves;
+        int pruned;
+
+        final int[] best;
+        int bestLength;
+        double bestEfficiency;
+
+        SearchContext(int depth, int maxBranches) {
+            combinations = new int[depth][depth];
+            minFloors = new int[depth];
+            maxFloors = new int[depth];
+            totalSizes = new int[depth];
+            efficiencies = new double[depth];
+            seeds = new long[depth];
+            branches = new int[depth][maxBranches];
+            best = new int[depth];
+            cacheKeys = new int[depth];
+            childEfficiencies = new double[depth][maxBranches];
+            frontierFloors = new int[depth * maxBranches];
+            frontierArrivals = new int[depth * maxBranches];
+            frontierWeights = new double[depth * maxBranches];
+            frontierKeys = new int[depth * maxBranches];
+            frontierSteps = new int[maxBranches];
+            frontierChildren = new int[maxBranches];
+            frontierScores = new double[maxBranches];
+        }
+
+        void resetBest() {
+            bestLength = 0;
+        }
+
+        /** Move the generator the search draws from to the stream of the given seed */
+        RandomGenerator reseed(long seed) {
+            if (limit.counterBased) {
+                counterRandom.reseed(seed);
+                return counterRandom;
+            }
+            random.setSeed(seed);
+            return random;
+        }
+
+        void resetCounts() {
+            expanded = 0;
+            leaves = 0;
+            pruned = 0;
+        }
+
+        /** Offer the node at the given level as a leaf, keeping the earliest one on ties */
+        void offerLeaf(int level) {
+            leaves++;
+            if (bestLength == 0 || efficiencies[level] > bestEfficiency) {
+                bestLength = level + 1;
+                bestEfficiency = efficiencies[level];
+                System.arraycopy(combinations[level], 0, best, 0, bestLength);
+            }
+        }
+
+        Leaf toLeaf() {
+            if (bestLength == 0)
+                return null;
+            return new Leaf(Arrays.copyOf(best, bestLength), bestEfficiency);
+        }
+    }
+
+    /***
+     * Budget of one call to getMails, shared by every thread searching for it and by the searches repeated
+     * after a lost claim
+     */
+    private static final class SearchLimit {
+        final SearchBudget budget;
+        final long start = System.nanoTime();
+        final AtomicInteger nodes = new AtomicInteger();
+        final AtomicInteger writeRequests;  // null unless the search gives way to writers
+        final int writeRequestsAtStart;
+        boolean counterBased;               // whether nodes draw from SplitMix64, set before any task forks
+        SearchParameters parameters;        // set before any task forks
+        int reserved;                       // nodes the tree leaves for topping up, set before any task forks
+        UrgencyIndex.Selection candidates;  // mails the search chooses from, null for the whole pool
+        volatile boolean cutShort;
+        // what the contexts of the search counted, added up once each is done
+        int expanded;
+        int leaves;
+        int pruned;
+
+        SearchLimit(SearchBudget budget) {
+            this(budget, null);
+        }
+
+        SearchLimit(SearchBudget budget, AtomicInteger writeRequests) {
+            this.budget = budget;
+            this.writeRequests = writeRequests;
+            this.writeRequestsAtStart = writeRequests == null ? 0 : writeRequests.get();
+        }
+
+        /** Whether the search stopped because a writer came */
+        boolean isCancelled() {
+            return writeRequests != null && writeRequests.get() != writeRequestsAtStart;
+        }
+
+        /** Start counting the nodes of another search made for the same call */
+        void resetCounts() {
+            expanded = 0;
+            leaves = 0;
+            pruned = 0;
+        }
+
+        synchronized void collect(SearchContext context) {
+            expanded += context.expanded;
+            leaves += context.leaves;
+            pruned += context.pruned;
+        }
+
+        /** Count a node against the budget, true once the search has to stop */
+        boolean exhausted() {
+            if (writeRequests != null && !cutShort && isCancelled())
+                cutShort = true;
+            if (budget == null)
+                return cutShort;
+            if (cutShort)
+                return true;
+            if (budget.isExhausted(nodes.incrementAndGet() + reserved, start))
+                cutShort = true;
+            return cutShort;
+        }
+
+        /** Count a round of topping up against the budget, true once it has to stop. Runs after the tree */
+        boolean roundExhausted() {
+            if (isCancelled() || (budget != null && budget.isExhausted(nodes.incrementAndGet(), start))) {
+                cutShort = true;
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /***
+     * What the searches of one call to getMails did, summed over the searches repeated after a lost claim
+     */
+    private static final class Tally {
+        int searches;
+        int poolSize;
+        int nodes;
+        int leaves;
+        int pruned;
+        double efficiency;
+        boolean planned;
+        long plannedCpuNanos;
+
+        /** Add a finished search, keeping the pool size of the first and the efficiency of the last */
+        void add(int searchedPoolSize, int expanded, int leafCount, int prunedCount, double chosenEfficiency) {
+            if (searches++ == 0)
+                poolSize = searchedPoolSize;
+            nodes += expanded;
+            leaves += leafCount;
+            pruned += prunedCount;
+            efficiency = chosenEfficiency;
+        }
+    }
+
+    /***
+     * Combination searched for ahead of time, valid while the pool is unchanged and only at the time it was
+     * made for
+     */
+    static final class Plan {
+        final int time;
+        final int modCount;
+        final int poolSize;
+        final int[] positions;
+        final double efficiency;
+        final boolean complete;
+        final int budgetNodes;
+        final int nodes;
+        final int leaves;
+        final int pruned;
+        final long cpuNanos;
+
+        private Plan(int time, int modCount, int poolSize, Leaf best, SearchLimit limit, long cpuNanos) {
+            this.time = time;
+            this.modCount = modCount;
+            this.poolSize = poolSize;
+            this.positions = best.positions;
+            this.efficiency = best.efficiency;
+            this.complete = !limit.cutShort;
+            this.budgetNodes = limit.nodes.get();
+            this.nodes = limit.expanded;
+            this.leaves = limit.leaves;
+            this.pruned = limit.pruned;
+            this.cpuNanos = cpuNanos;
+        }
+    }
+
+    /***
+     * Best combination found in a subtree, as pool positions
+     */
+    private static final class Leaf {
+        final int[] positions;
+        final double efficiency;
+
+        Leaf(int[] positions, double efficiency) {
+            this.positions = positions;
+            this.efficiency = efficiency;
+        }
+    }
+
+    /***
+     * Searches sibling subtrees as fork-join tasks, splitting until FORK_DEPTH then continuing serially
+     * on a context owned by the task. Results are reduced in sibling order so ties resolve exactly as in the
+     * serial search.
+     */
+    private class SubtreeTask extends RecursiveTask<Leaf> {
+        private static final long serialVersionUID = 1L;
+        private final List<SubtreeTask> siblings;
+        private final int[] combination;
+        private final long seed;
+        private final SearchLimit limit;
+        private final int time;
+        private final int branchCount;
+        private final int level;
+
+        SubtreeTask(List<SubtreeTask> siblings) {
+            this(siblings, null, 0, null, 0, 0, 0);
+        }
+
+        SubtreeTask(int[] combination, long seed, SearchLimit limit, int time, int branchCount, int level) {
+            this(null, combination, seed, limit, time, branchCount, level);
+        }
+
+        private SubtreeTask(List<SubtreeTask> siblings, int[] combination, long seed, SearchLimit limit, int time,
+                            int branchCount, int level) {
+            this.siblings = siblings;
+            this.combination = combination;
+            this.seed = seed;
+            this.limit = limit;
+            this.time = time;
+            this.branchCount = branchCount;
+            this.level = level;
+        }
+
         @Override
-        public int compare(MailItem a, MailItem b) {
-            if (a.getDestFloor() < b.getDestFloor())
-                return -1;
-            else if (a.getDestFloor() > b.getDestFloor())
-                return 1;
-            return 0;
+        protected Leaf compute() {
+            if (siblings != null) {
+                invokeAll(siblings);
+                Leaf best = null;
+                for (SubtreeTask task : siblings) {
+                    best = better(best, task.join());
+                }
+                return best;
+            }
+
+            int depth = Math.min(limit.parameters.getMaxDepth(), capacity);
+            int nodeLevel = combination.length - 1;
+            SearchContext context = new SearchContext(depth, limit.parameters.getMaxBranches());
+            context.time = time;
+            context.overshot = limit.parameters.getOvershot();
+            context.limit = limit;
+            System.arraycopy(combination, 0, context.combinations[nodeLevel], 0, combination.length);
+            loadNode(context, nodeLevel, seed);
+
+            if (level >= FORK_DEPTH || nodeLevel + 1 >= depth) {
+                // the serial search below counts this node against the budget itself
+                context.resetBest();
+                searchSubtree(context, nodeLevel, depth, branchCount);
+                limit.collect(context);
+                return context.toLeaf();
+            }
+
+            if (limit.exhausted())
+                return null;
+            context.expanded++;
+
+            int[] branches = context.branches[nodeLevel + 1];
+            int candidates = sampleChildren(context, nodeLevel, branchCount, branches);
+            double[] childEfficiencies = context.childEfficiencies[nodeLevel + 1];
+            scoreChildren(context, nodeLevel, branches, candidates, childEfficiencies);
+
+            List<SubtreeTask> children = new ArrayList<>();
+            for (int i = 0; i < candidates; i++) {
+                long childSeed = childSeed(seed, i);
+                if (tryExpand(context, nodeLevel, branches[i], childSeed, childEfficiencies[i])) {
+                    int[] child = Arrays.copyOf(context.combinations[nodeLevel + 1], nodeLevel + 2);
+                    children.add(new SubtreeTask(child, childSeed, limit, time, branchCount, level + 1));
+                } else {
+                    context.pruned++;
+                }
+            }
+
+            // when anything below current leaf is most likely to be lower, current node is the leaf
+            if (children.isEmpty())
+                context.leaves++;
+            limit.collect(context);
+            if (children.isEmpty())
+                return new Leaf(combination, context.efficiencies[nodeLevel]);
+            return new SubtreeTask(children).compute();
         }
     }
 }
@@ -1,22 +1,54 @@
 package strategies;
 
+import automail.Clock;
 import automail.IMailSorter;
 import automail.MailItem;
 import automail.StorageTube;
 import exceptions.TubeFullException;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Recieves mails from AdvancedMailPool and puts them into the tube for the robot
  */
-public class AdvancedMailSorter implements IMailSorter {
+public class AdvancedMailSorter implements IMailSorter, Serializable {
+    private static final long serialVersionUID = 1L;
     private AdvancedMailPool advancedMailPool;
+    private transient volatile Executor planningExecutor;
+    private transient Map<StorageTube, SpeculativePlanner> planners = new ConcurrentHashMap<>();
 
     public AdvancedMailSorter(AdvancedMailPool advancedMailPool) {
         this.advancedMailPool = advancedMailPool;
     }
 
+    /***
+     * Plan each robot's next load in the background while it is out delivering, see SpeculativePlanner.
+     * Robots get the same loads either way, only sooner.
+     * @param speculativePlanning true to plan on the common fork-join pool, false to search on demand
+     */
+    public void setSpeculativePlanning(boolean speculativePlanning) {
+        setPlanningExecutor(speculativePlanning ? ForkJoinPool.commonPool() : null);
+    }
+
+    /***
+     * Plan each robot's next load in the background on the given executor while it is out delivering
+     * @param executor executor running the searches, null to search on demand
+     */
+    public void setPlanningExecutor(Executor executor) {
+        planningExecutor = executor;
+        for (SpeculativePlanner planner : planners.values()) {
+            planner.close();
+        }
+        planners.clear();
+    }
+
     /***
      * Fill the tube with effective combination of mails to deliver
      * @param tube tube to fill
@@ -25,16 +57,19 @@ public class AdvancedMailSorter implements IMailSorter {
     @Override
     public boolean fillStorageTube(StorageTube tube) {
         // System.out.println("Mail Items Left: "+ advancedMailPool.size());
+        SpeculativePlanner planner = getPlanner(tube);
         try {
             if (!advancedMailPool.isEmptyPool()) {
                 // get bunch of mails to deliver and add them all to the tube
-                List<MailItem> mailItems = advancedMailPool.getMails();
+                List<MailItem> mailItems = planner == null ? advancedMailPool.getMails() : planner.takeMails();
                 for (MailItem mailItem : mailItems) {
                     tube.addItem(mailItem);
                 }
 
                 // if stuff were actually added, send the robot!
                 if (mailItems.size() > 0) {
+                    if (planner != null)
+                        planner.planFor(getReturnTime(mailItems));
                     return true;
                 } else {
                     return false;
@@ -45,6 +80,59 @@ public class AdvancedMailSorter implements IMailSorter {
             return true;
         }
 
+        // the robot stays in the mailroom, nothing to plan for
+        if (planner != null)
+            planner.cancel();
         return false;
     }
+
+    /***
+     * Planner of the robot carrying the tube
+     * @param tube tube of the robot
+     * @return its planner, or null without speculative planning
+     */
+    private SpeculativePlanner getPlanner(StorageTube tube) {
+        Executor executor = planningExecutor;
+        if (executor == null)
+            return null;
+        return planners.computeIfAbsent(tube, t -> new SpeculativePlanner(advancedMailPool, executor));
+    }
+
+    /***
+     * Time step on which a robot leaving now with the given mails will be back in the mailroom asking for more.
+     * The robot pops the tube, so it delivers the last mail added first; each floor travelled and each
+     * delivery takes a step, and it asks on the step it reaches the mailroom.
+     * @param mailItems mails in the order they were added to the tube
+     * @return return time
+     */
+    private int getReturnTime(List<MailItem> mailItems) {
+        int mailroom = advancedMailPool.getScenario().getMailroomLocation();
+        int time = Clock.Time();
+        int floor = mailroom;
+        for (int i = mailItems.size() - 1; i >= 0; i--) {
+            int destination = mailItems.get(i).getDestFloor();
+            time += Math.abs(destination - floor) + 1;
+            floor = destination;
+        }
+        return time + Math.abs(floor - mailroom) + 1;
+    }
+
+    /***
+     * The robot waits exactly as long as the pool is empty
+     * @param tube tube of the waiting robot
+     * @return the current time, or Integer.MAX_VALUE when the pool is empty
+     */
+    @Override
+    public int idleUntil(StorageTube tube) {
+        return advancedMailPool.isEmptyPool() ? Integer.MAX_VALUE : Clock.Time();
+    }
+
+    /***
+     * Planners are not saved in a checkpoint, a restored sorter searches on demand until planning is turned
+     * on again
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        planners = new ConcurrentHashMap<>();
+    }
 }
@@ -0,0 +1,224 @@
+package strategies;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of combination efficiencies, keyed by the canonical (sorted) pool keys of the combination and
+ * the clock time it was scored at. Two-way set associative: each key hashes to a set of two entries and a miss
+ * evicts the least recently used one. Entries live in primitive arrays so lookups allocate nothing.
+ * Removing mails does not visit the entries: each key hashes to a stamp holding the generation it was last
+ * invalidated in, and an entry stored in an earlier generation than the stamp of any of its keys is dead.
+ * Keys sharing a stamp only cost a spurious miss. Safe to share between search threads.
+ */
+public class EfficiencyCache {
+    private static final int WAYS = 2;
+    private static final int LOCK_STRIPES = 64;
+
+    private final int maxLength;
+    private final int setMask;
+    private final int[] entryKeys;     // maxLength keys per entry
+    private final int[] lengths;       // 0 marks an empty entry
+    private final int[] times;
+    private final int[] generations;   // generation each entry was stored in
+    private final double[] values;
+    private final int stampMask;
+    private final int[] keyStamps;     // generation each stamp was last invalidated in
+    private volatile int generation;
+    private final int[] recentWays;    // most recently used way of each set
+    private final Object[] locks;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /***
+     * Create an empty cache
+     * @param capacity maximum number of entries, rounded up to a power of two
+     * @param maxLength maximum number of mails in a cached combination
+     */
+    public EfficiencyCache(int capacity, int maxLength) {
+        int sets = 1;
+        while (sets * WAYS < capacity) {
+            sets <<= 1;
+        }
+        this.maxLength = maxLength;
+        this.setMask = sets - 1;
+        int entries = sets * WAYS;
+        entryKeys = new int[entries * maxLength];
+        lengths = new int[entries];
+        times = new int[entries];
+        generations = new int[entries];
+        keyStamps = new int[Integer.highestOneBit(Math.max(1, entries * maxLength - 1)) << 1];
+        stampMask = keyStamps.length - 1;
+        values = new double[entries];
+        recentWays = new int[sets];
+        locks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /***
+     * Look up the efficiency of a combination
+     * @param keys pool keys of the combination in canonical order
+     * @param length number of keys used
+     * @param time clock time the combination is scored at
+     * @return cached efficiency, or NaN when not cached
+     */
+    public double get(int[] keys, int length, int time) {
+        int set = hash(keys, length, time) & setMask;
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            for (int way = 0; way < WAYS; way++) {
+                int entry = set * WAYS + way;
+                if (matches(entry, keys, length, time) && isLive(entry)) {
+                    recentWays[set] = way;
+                    hits.increment();
+                    return values[entry];
+                }
+            }
+        }
+        misses.increment();
+        return Double.NaN;
+    }
+
+    /***
+     * Store the efficiency of a combination, evicting the least recently used entry of its set
+     * @param keys pool keys of the combination in canonical order
+     * @param length number of keys used
+     * @param time clock time the combination is scored at
+     * @param value efficiency of the combination
+     */
+    public void put(int[] keys, int length, int time, double value) {
+        int set = hash(keys, length, time) & setMask;
+        synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+            int victimWay = (recentWays[set] + 1) % WAYS;
+            for (int way = 0; way < WAYS; way++) {
+                int entry = set * WAYS + way;
+                if (!isLive(entry) || matches(entry, keys, length, time)) {
+                    victimWay = way;
+                    break;
+                }
+            }
+            int victim = set * WAYS + victimWay;
+            if (isLive(victim) && !matches(victim, keys, length, time))
+                evictions.increment();
+
+            System.arraycopy(keys, 0, entryKeys, victim * maxLength, length);
+            lengths[victim] = length;
+            times[victim] = time;
+            generations[victim] = generation;
+            values[victim] = value;
+            recentWays[set] = victimWay;
+        }
+    }
+
+    /***
+     * Drop every entry containing one of the given keys, e.g. when those mails leave the pool. Costs
+     * O(removedKeys) whatever the size of the cache. Must not run alongside lookups of the same keys.
+     * @param removedKeys pool keys of the removed mails
+     */
+    public void invalidate(int[] removedKeys) {
+        synchronized (keyStamps) {
+            int next = generation + 1;
+            for (int removed : removedKeys) {
+                keyStamps[stampOf(removed)] = next;
+            }
+            generation = next;
+        }
+    }
+
+    /***
+     * Drop every entry
+     */
+    public void clear() {
+        for (int set = 0; set <= setMask; set++) {
+            synchronized (locks[set & (LOCK_STRIPES - 1)]) {
+                Arrays.fill(lengths, set * WAYS, (set + 1) * WAYS, 0);
+            }
+        }
+    }
+
+    /***
+     * @return number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /***
+     * @return number of lookups that had to be computed
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /***
+     * @return number of live entries replaced by newer ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /***
+     * @return fraction of lookups answered from the cache, 0 before any lookup
+     */
+    public double getHitRate() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    /***
+     * @return maximum number of entries
+     */
+    public int getCapacity() {
+        return lengths.length;
+    }
+
+    /***
+     * Reset the hit, miss and eviction counters
+     */
+    public void resetCounters() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    private boolean matches(int entry, int[] keys, int length, int time) {
+        if (lengths[entry] != length || times[entry] != time)
+            return false;
+        int offset = entry * maxLength;
+        for (int k = 0; k < length; k++) {
+            if (entryKeys[offset + k] != keys[k])
+                return false;
+        }
+        return true;
+    }
+
+    /** Whether an entry holds a combination none of whose keys was invalidated since it was stored */
+    private boolean isLive(int entry) {
+        if (lengths[entry] == 0)
+            return false;
+        int offset = entry * maxLength;
+        for (int k = 0; k < lengths[entry]; k++) {
+            if (keyStamps[stampOf(entryKeys[offset + k])] > generations[entry])
+                return false;
+        }
+        return true;
+    }
+
+    /** Pool keys are handed out in sequence, so the keys of mails pooled together rarely share a stamp */
+    private int stampOf(int key) {
+        return key & stampMask;
+    }
+
+    private static int hash(int[] keys, int length, int time) {
+        int h = time * 0x9E3779B9;
+        for (int k = 0; k < length; k++) {
+            h = (h ^ keys[k]) * 0x85EBCA6B;
+            h ^= h >>> 13;
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,642 @@
+package strategies;
+
+import automail.*;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Mail pool returning the most efficient load there is, using the same efficiency as AdvancedMailPool
+ * (estimated score per step). Instead of sampling the tree it runs a branch and bound over groups of
+ * interchangeable mails: mails with the same floor, size, priority and arrival time score the same
+ * wherever they go in a load, so each group is a single branch taken once or several times.
+ * Loads are enumerated per farthest floor, which fixes the travel part of the steps. Candidates are visited
+ * in order of an upper bound on what they can add to the score, so as soon as the best the remaining
+ * candidates could reach is no better than the best load found, the whole rest of that level is cut.
+ * Interchangeable mails leave the pool oldest first, and mails for the same floor are delivered in the
+ * order they entered the pool, as in AdvancedMailPool.
+ * The search is exponential in the capacity of the tubes, so it stops after NODE_BUDGET candidates per load.
+ * The budget is shared out over the farthest floors, a floor passing on what it left unused. A search cut
+ * short tops its best load up greedily, as AdvancedMailPool tops up its tree, so large tubes still leave
+ * full. Below the budget the load is the most efficient there is.
+ */
+public class ExactMailPool implements IDrainablePool, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int OVERSHOT = SearchParameters.DEFAULT.getOvershot();
+    private static final double PENALTY = 1.1;
+    private static final int SIZE_COUNT = MailItem.POSSIBLE_SIZES.length;
+    private static final int PRIORITY_COUNT = MailItem.PRIORITY_LEVELS.length;
+    private static final int NODE_BUDGET = 100000;   // candidates looked at per load, all floors together
+    private static final int INITIAL_CANDIDATES = 64;
+
+    // groups of each (floor, size, priority) class by arrival time
+    private final Scenario scenario;
+    private final int capacity;
+    private final int maxLoadItems;   // the smallest mail has size 1
+    private final int mailroom;
+    private final int lowestFloor;
+    private final int highestFloor;
+    private final List<TreeMap<Integer, Group>> classes;
+    private int poolSize;
+    private int nextKey;
+    private long lastSearchNodes;
+
+    // scratch space of the current search
+    private transient PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+    private transient Group[] candidates = new Group[INITIAL_CANDIDATES];
+    private transient double[] upperBounds = new double[INITIAL_CANDIDATES];
+    private transient int candidateCount;
+    private final Group[] chosen;
+    private final int[] multiplicities;
+    private int chosenCount;
+    private final Group[] bestChosen;
+    private final int[] bestMultiplicities;
+    private int bestChosenCount;
+    private double bestEfficiency;
+    private final int[] loadFloors;
+    private final int[] loadKeys;
+    private final int[] loadArrivals;
+    private final double[] loadWeights;
+    private int time;
+    private int farthest;
+    private int maxItems;
+    private double rankSlope;   // most a mail's score can grow per delivery made before it
+    private long floorBudget;   // node count at which the search of the current farthest floor stops
+    private boolean cutShort;
+    private final double[][] knapsack;
+    private long nodes;
+
+    public ExactMailPool() {
+        this(Scenario.DEFAULT);
+    }
+
+    /***
+     * @param scenario the building and tubes the pool chooses loads for
+     */
+    public ExactMailPool(Scenario scenario) {
+        this.scenario = scenario;
+        this.capacity = scenario.getTubeCapacity();
+        this.maxLoadItems = capacity;
+        this.mailroom = scenario.getMailroomLocation();
+        this.lowestFloor = scenario.getLowestFloor();
+        this.highestFloor = scenario.getHighestFloor();
+        chosen = new Group[maxLoadItems];
+        multiplicities = new int[maxLoadItems];
+        bestChosen = new Group[maxLoadItems];
+        bestMultiplicities = new int[maxLoadItems];
+        loadFloors = new int[maxLoadItems];
+        loadKeys = new int[maxLoadItems];
+        loadArrivals = new int[maxLoadItems];
+        loadWeights = new double[maxLoadItems];
+        knapsack = new double[capacity + 1][maxLoadItems + 1];
+        classes = new ArrayList<>(scenario.getFloors() * SIZE_COUNT * PRIORITY_COUNT);
+        for (int i = 0; i < scenario.getFloors() * SIZE_COUNT * PRIORITY_COUNT; i++) {
+            classes.add(new TreeMap<>());
+        }
+    }
+
+    /***
+     * Find and take out the most efficient load
+     * @return mails of the load sorted by destination, empty if the pool is empty
+     */
+    public synchronized List<MailItem> getMails() {
+        if (poolSize == 0)
+            return new ArrayList<>();
+
+        time = Clock.Time();
+        nodes = 0;
+        bestEfficiency = Double.NEGATIVE_INFINITY;
+        bestChosenCount = 0;
+        cutShort = false;
+
+        // mail for the mailroom floor goes on its own, then the floors on either side nearest first
+        int floorsLeft = highestFloor - lowestFloor + 1;
+        searchFarthest(mailroom, floorsLeft--);
+        for (int d = 1; d <= Math.max(highestFloor - mailroom, mailroom - lowestFloor); d++) {
+            if (mailroom + d <= highestFloor)
+                searchFarthest(mailroom + d, floorsLeft--);
+            if (mailroom - d >= lowestFloor)
+                searchFarthest(mailroom - d, floorsLeft--);
+        }
+        if (cutShort)
+            topUp();
+        lastSearchNodes = nodes;
+        return takeBest();
+    }
+
+    /***
+     * Branch and bound over the loads whose farthest destination is the given floor
+     * @param floor farthest floor of the loads
+     * @param floorsLeft floors still to search, this one included, sharing what is left of the budget
+     */
+    private void searchFarthest(int floor, int floorsLeft) {
+        floorBudget = nodes + (NODE_BUDGET - nodes) / floorsLeft;
+        farthest = floor;
+        maxItems = floor == mailroom ? 1 : maxLoadItems;
+        // the score is convex in the delivery time, so its slope is largest at the latest time a mail can have
+        int latest = time + OVERSHOT + 2 * Math.abs(farthest - mailroom) + maxItems;
+        rankSlope = PENALTY * Math.pow(latest, PENALTY - 1) * maxWeight();
+        loadCandidates();
+        chosenCount = 0;
+        search(0, 0, 0, 0, false);
+    }
+
+    /***
+     * Depth first search adding candidates from the given position on to the current load
+     * @param position first candidate that may still be added
+     * @param count number of mails in the load
+     * @param totalSize total size of the load
+     * @param upper sum of the bounds of the mails in the load
+     * @param reachesFarthest whether the load has a mail for the farthest floor
+     */
+    private void search(int position, int count, int totalSize, double upper, boolean reachesFarthest) {
+        for (int p = position; candidate(p) != null; p++) {
+            if (nodes >= floorBudget) {
+                cutShort = true;
+                return;
+            }
+            nodes++;
+            // candidates come in order of their bounds, so none after this one can do better either
+            if (bound(p, count, totalSize, upper) <= bestEfficiency)
+                return;
+
+            Group group = candidates[p];
+            int fit = Math.min(group.count, Math.min((capacity - totalSize) / group.size, maxItems - count));
+            for (int m = 1; m <= fit; m++) {
+                chosen[chosenCount] = group;
+                multiplicities[chosenCount] = m;
+                chosenCount++;
+                boolean reaches = reachesFarthest || group.floor == farthest;
+                if (reaches)
+                    offerLoad();
+                if (count + m < maxItems)
+                    search(p + 1, count + m, totalSize + m * group.size, upper + m * upperBounds[p], reaches);
+                chosenCount--;
+            }
+        }
+    }
+
+    /***
+     * Upper bound on the efficiency of any load made by adding candidates from the given position on to the
+     * current load. Each mail is bounded by its score if delivered first, and the k-th delivery can add at most
+     * k times rankSlope on top. Ignores the order of delivery and which floor is reached, so it is never below
+     * the real value, but keeps the size limit with a small knapsack over the remaining room.
+     * Once as many size 1 mails as there are free places have been seen, any later mail in a load could be
+     * swapped for one of them, so the scan stops there.
+     * @param position first candidate that may be added
+     * @param count number of mails in the load
+     * @param totalSize total size of the load
+     * @param upper sum of the bounds of the mails in the load
+     * @return bound on the efficiency
+     */
+    private double bound(int position, int count, int totalSize, double upper) {
+        int room = capacity - totalSize;
+        int places = maxItems - count;
+        for (double[] row : knapsack) {
+            Arrays.fill(row, Double.NEGATIVE_INFINITY);
+        }
+        knapsack[0][0] = 0;
+        int smallest = 0;
+        for (int p = position; smallest < places && candidate(p) != null; p++) {
+            Group group = candidates[p];
+            int copies = Math.min(group.count, Math.min(room / group.size, places));
+            for (int m = 0; m < copies; m++) {
+                // 0/1 knapsack step for one mail, largest room and places first
+                for (int r = room; r >= group.size; r--) {
+                    for (int k = places; k >= 1; k--) {
+                        knapsack[r][k] = Math.max(knapsack[r][k], knapsack[r - group.size][k - 1] + upperBounds[p]);
+                    }
+                }
+            }
+            if (group.size == MailItem.POSSIBLE_SIZES[0])
+                smallest += copies;
+        }
+
+        double best = Double.NEGATIVE_INFINITY;
+        for (int k = 1; k <= places; k++) {
+            double sum = Double.NEGATIVE_INFINITY;
+            for (int r = 0; r <= room; r++) {
+                sum = Math.max(sum, knapsack[r][k]);
+            }
+            int total = count + k;
+            best = Math.max(best, (upper + sum + rankSlope * total * (total - 1) / 2) / getSteps(total, farthest));
+        }
+        return best;
+    }
+
+    /***
+     * Keep the current load if it is the best so far
+     */
+    private void offerLoad() {
+        double efficiency = efficiencyOf(chosen, multiplicities, chosenCount, farthest);
+        if (efficiency > bestEfficiency) {
+            bestEfficiency = efficiency;
+            bestChosenCount = chosenCount;
+            System.arraycopy(chosen, 0, bestChosen, 0, chosenCount);
+            System.arraycopy(multiplicities, 0, bestMultiplicities, 0, chosenCount);
+        }
+    }
+
+    /***
+     * Score a load exactly as AdvancedMailPool does
+     * @param groups groups of the load
+     * @param counts number of mails taken from each group, oldest first
+     * @param groupCount number of groups
+     * @param farthest farthest floor of the load
+     * @return efficiency of the load
+     */
+    private double efficiencyOf(Group[] groups, int[] counts, int groupCount, int farthest) {
+        int count = 0;
+        for (int c = 0; c < groupCount; c++) {
+            Group group = groups[c];
+            for (int m = 0; m < counts[c]; m++) {
+                // keep the load sorted by destination, then by key
+                int key = group.keyAt(m);
+                int at = count;
+                while (at > 0 && (loadFloors[at - 1] > group.floor ||
+                        (loadFloors[at - 1] == group.floor && loadKeys[at - 1] > key))) {
+                    loadFloors[at] = loadFloors[at - 1];
+                    loadKeys[at] = loadKeys[at - 1];
+                    loadArrivals[at] = loadArrivals[at - 1];
+                    loadWeights[at] = loadWeights[at - 1];
+                    at--;
+                }
+                loadFloors[at] = group.floor;
+                loadKeys[at] = key;
+                loadArrivals[at] = group.arrival;
+                loadWeights[at] = group.weight;
+                count++;
+            }
+        }
+
+        int currTime = time + OVERSHOT;
+        int currFloor = mailroom;
+        double score = 0;
+        for (int k = 0; k < count; k++) {
+            currTime += Math.abs(currFloor - loadFloors[k]);
+            score += Math.pow(currTime - loadArrivals[k], PENALTY) * loadWeights[k];
+            currTime += 1;
+            currFloor = loadFloors[k];
+        }
+        return score / getSteps(count, farthest);
+    }
+
+    /***
+     * Add mails to the best load one at a time, each round the one raising its efficiency the most, for as
+     * long as the load has room and the addition does not lower its efficiency. Every group on the side of
+     * the load is tried, so a round costs O(groups * capacity). Loads for the mailroom floor stay single.
+     */
+    private void topUp() {
+        if (bestChosenCount == 0 || bestChosen[0].floor == mailroom)
+            return;
+        boolean up = bestChosen[0].floor > mailroom;
+        int totalSize = 0;
+        int reach = mailroom;
+        for (int c = 0; c < bestChosenCount; c++) {
+            totalSize += bestMultiplicities[c] * bestChosen[c].size;
+            reach = up ? Math.max(reach, bestChosen[c].floor) : Math.min(reach, bestChosen[c].floor);
+        }
+
+        while (totalSize < capacity) {
+            Group pick = null;
+            double pickEfficiency = bestEfficiency;
+            int low = up ? mailroom + 1 : lowestFloor;
+            int high = up ? highestFloor : mailroom - 1;
+            for (int floor = low; floor <= high; floor++) {
+                int trialReach = up ? Math.max(reach, floor) : Math.min(reach, floor);
+                for (int s = 0; s < SIZE_COUNT && totalSize + MailItem.POSSIBLE_SIZES[s] <= capacity; s++) {
+                    for (int p = 0; p < PRIORITY_COUNT; p++) {
+                        for (Group group : classes.get(classIndex(floor, s, p)).values()) {
+                            double efficiency = trialEfficiency(group, trialReach);
+                            if (efficiency >= pickEfficiency && (pick == null || efficiency > pickEfficiency)) {
+                                pick = group;
+                                pickEfficiency = efficiency;
+                            }
+                        }
+                    }
+                }
+            }
+            if (pick == null)
+                return;
+            int c = indexOfBest(pick);
+            if (c == bestChosenCount) {
+                bestChosen[bestChosenCount++] = pick;
+                bestMultiplicities[c] = 0;
+            }
+            bestMultiplicities[c]++;
+            bestEfficiency = pickEfficiency;
+            totalSize += pick.size;
+            reach = up ? Math.max(reach, pick.floor) : Math.min(reach, pick.floor);
+        }
+    }
+
+    /***
+     * Efficiency of the best load with one more mail of the given group
+     * @param group group to take the mail from
+     * @param trialReach farthest floor of the load with the mail
+     * @return efficiency, or NaN if the group has no mail left to take
+     */
+    private double trialEfficiency(Group group, int trialReach) {
+        int c = indexOfBest(group);
+        int taken = c < bestChosenCount ? bestMultiplicities[c] : 0;
+        if (taken == group.count)
+            return Double.NaN;
+        bestChosen[c] = group;
+        bestMultiplicities[c] = taken + 1;
+        double efficiency = efficiencyOf(bestChosen, bestMultiplicities, Math.max(c + 1, bestChosenCount),
+                trialReach);
+        bestMultiplicities[c] = taken;
+        return efficiency;
+    }
+
+    /***
+     * @param group group of the pool
+     * @return its index in the best load, or bestChosenCount if the load takes none of it
+     */
+    private int indexOfBest(Group group) {
+        for (int c = 0; c < bestChosenCount; c++) {
+            if (bestChosen[c] == group)
+                return c;
+        }
+        return bestChosenCount;
+    }
+
+    /***
+     * Start listing the groups a load with the current farthest floor may use, best bound first
+     */
+    private void loadCandidates() {
+        candidateCount = 0;
+        cursors.clear();
+        int low = Math.min(farthest, mailroom + 1);
+        int high = Math.max(farthest, mailroom - 1);
+        if (farthest == mailroom) {
+            low = high = farthest;
+        }
+        for (int floor = low; floor <= high; floor++) {
+            for (int s = 0; s < SIZE_COUNT; s++) {
+                for (int p = 0; p < PRIORITY_COUNT; p++) {
+                    TreeMap<Integer, Group> groups = classes.get(classIndex(floor, s, p));
+                    if (!groups.isEmpty())
+                        cursors.add(new Cursor(groups.values().iterator()));
+                }
+            }
+        }
+    }
+
+    /***
+     * The candidate at the given position in order of bounds, merging the classes as far as needed
+     * @param position position of the candidate
+     * @return the group, or null if there are fewer candidates
+     */
+    private Group candidate(int position) {
+        while (candidateCount <= position && !cursors.isEmpty()) {
+            Cursor cursor = cursors.poll();
+            if (candidateCount == candidates.length) {
+                candidates = Arrays.copyOf(candidates, candidateCount * 2);
+                upperBounds = Arrays.copyOf(upperBounds, candidateCount * 2);
+            }
+            candidates[candidateCount] = cursor.group;
+            upperBounds[candidateCount] = cursor.upperBound;
+            candidateCount++;
+            if (cursor.advance())
+                cursors.add(cursor);
+        }
+        return position < candidateCount ? candidates[position] : null;
+    }
+
+    /***
+     * Score of a mail of the group delivered first in a load with the current farthest floor. Travel to its
+     * floor is the same wherever it goes in the load.
+     * @param group group of the mail
+     * @return its score before any other delivery
+     */
+    private double upperBound(Group group) {
+        int travel;
+        if (group.floor >= mailroom)
+            travel = group.floor - mailroom;
+        else
+            travel = (mailroom - farthest) + (group.floor - farthest);
+        return Math.pow(time + OVERSHOT + travel - group.arrival, PENALTY) * group.weight;
+    }
+
+    private static double maxWeight() {
+        double weight = 0;
+        for (Priority priority : Priority.values()) {
+            weight = Math.max(weight, priority.weight());
+        }
+        return weight;
+    }
+
+    /***
+     * Take the mails of the best load out of the pool
+     * @return mails of the load sorted by destination
+     */
+    private List<MailItem> takeBest() {
+        List<MailItem> load = new ArrayList<>(maxLoadItems);
+        List<Integer> loadOrder = new ArrayList<>(maxLoadItems);
+        for (int c = 0; c < bestChosenCount; c++) {
+            Group group = bestChosen[c];
+            for (int m = 0; m < bestMultiplicities[c]; m++) {
+                int key = group.keyAt(0);
+                MailItem mailItem = group.poll();
+                int at = load.size();
+                while (at > 0 && (load.get(at - 1).getDestFloor() > group.floor ||
+                        (load.get(at - 1).getDestFloor() == group.floor && loadOrder.get(at - 1) > key))) {
+                    at--;
+                }
+                load.add(at, mailItem);
+                loadOrder.add(at, key);
+            }
+            if (group.count == 0)
+                classes.get(group.classIndex).remove(group.arrival);
+        }
+        poolSize -= load.size();
+        return load;
+    }
+
+    /***
+     * Calculate time units required to deliver the mails, as in AdvancedMailPool
+     * @param count number of mails to deliver
+     * @param farthest farthest destination floor of the mails
+     * @return steps
+     */
+    private int getSteps(int count, int farthest) {
+        return count + Math.abs(farthest - mailroom) * 2;
+    }
+
+    private int classIndex(int floor, int sizeIndex, int priority) {
+        return ((floor - lowestFloor) * SIZE_COUNT + sizeIndex) * PRIORITY_COUNT + priority;
+    }
+
+    private static int sizeIndex(int size) {
+        for (int s = 0; s < SIZE_COUNT; s++) {
+            if (MailItem.POSSIBLE_SIZES[s] == size)
+                return s;
+        }
+        throw new IllegalArgumentException("Unknown mail size " + size);
+    }
+
+    /***
+     * Add mail to the pool
+     * @param mailItem the mail item being added.
+     */
+    @Override
+    public synchronized void addToPool(MailItem mailItem) {
+        int classIndex = classIndex(mailItem.getDestFloor(), sizeIndex(mailItem.getSize()),
+                mailItem.getPriority().ordinal());
+        TreeMap<Integer, Group> groups = classes.get(classIndex);
+        Group group = groups.get(mailItem.getArrivalTime());
+        if (group == null) {
+            group = new Group(mailItem, classIndex);
+            groups.put(mailItem.getArrivalTime(), group);
+        }
+        group.add(mailItem, nextKey++);
+        poolSize++;
+    }
+
+    /***
+     * Take every mail out of the pool
+     * @return the mails, in no particular order
+     */
+    @Override
+    public synchronized List<MailItem> drainPool() {
+        List<MailItem> drained = new ArrayList<>(poolSize);
+        for (TreeMap<Integer, Group> groups : classes) {
+            for (Group group : groups.values()) {
+                for (int i = 0; i < group.count; i++) {
+                    drained.add(group.mails[(group.head + i) % group.mails.length]);
+                }
+            }
+            groups.clear();
+        }
+        poolSize = 0;
+        return drained;
+    }
+
+    /***
+     * Check if the pool is empty or not
+     * @return true/false
+     */
+    public synchronized boolean isEmptyPool() {
+        return poolSize == 0;
+    }
+
+    /***
+     * Get size of the mail pool
+     * @return size of the mail pool
+     */
+    public synchronized int size() {
+        return poolSize;
+    }
+
+    /***
+     * @return number of candidates the last call to getMails looked at
+     */
+    public synchronized long getLastSearchNodes() {
+        return lastSearchNodes;
+    }
+
+    /***
+     * @return the building and tubes the pool chooses loads for
+     */
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    /***
+     * Cursors and candidates only live during a search, a restored pool starts with none
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        cursors = new PriorityQueue<>();
+        candidates = new Group[INITIAL_CANDIDATES];
+        upperBounds = new double[INITIAL_CANDIDATES];
+    }
+
+    /***
+     * Interchangeable mails, oldest first
+     */
+    private static final class Group implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int floor;
+        final int size;
+        final double weight;
+        final int arrival;
+        final int classIndex;
+        MailItem[] mails = new MailItem[4];
+        int[] keys = new int[4];
+        int head;
+        int count;
+
+        Group(MailItem mailItem, int classIndex) {
+            this.floor = mailItem.getDestFloor();
+            this.size = mailItem.getSize();
+            this.weight = mailItem.getPriority().weight();
+            this.arrival = mailItem.getArrivalTime();
+            this.classIndex = classIndex;
+        }
+
+        void add(MailItem mailItem, int key) {
+            if (count == mails.length) {
+                MailItem[] grownMails = new MailItem[count * 2];
+                int[] grownKeys = new int[count * 2];
+                for (int i = 0; i < count; i++) {
+                    grownMails[i] = mails[(head + i) % mails.length];
+                    grownKeys[i] = keys[(head + i) % keys.length];
+                }
+                mails = grownMails;
+                keys = grownKeys;
+                head = 0;
+            }
+            int tail = (head + count) % mails.length;
+            mails[tail] = mailItem;
+            keys[tail] = key;
+            count++;
+        }
+
+        int keyAt(int index) {
+            return keys[(head + index) % keys.length];
+        }
+
+        MailItem poll() {
+            MailItem mailItem = mails[head];
+            mails[head] = null;
+            head = (head + 1) % mails.length;
+            count--;
+            return mailItem;
+        }
+    }
+
+    /***
+     * Position in the groups of one class, ordered by the bound of its current group, highest first
+     */
+    private final class Cursor implements Comparable<Cursor> {
+        final Iterator<Group> groups;
+        Group group;
+        double upperBound;
+
+        Cursor(Iterator<Group> groups) {
+            this.groups = groups;
+            advance();
+        }
+
+        boolean advance() {
+            if (!groups.hasNext())
+                return false;
+            group = groups.next();
+            upperBound = upperBound(group);
+            return true;
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int byBound = Double.compare(other.upperBound, upperBound);
+            if (byBound != 0)
+                return byBound;
+            int byClass = Integer.compare(group.classIndex, other.group.classIndex);
+            return byClass != 0 ? byClass : Integer.compare(group.arrival, other.group.arrival);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package strategies;
+
+import automail.Clock;
+import automail.IMailSorter;
+import automail.MailItem;
+import automail.StorageTube;
+import exceptions.TubeFullException;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Recieves the optimal load from ExactMailPool and puts it into the tube for the robot
+ */
+public class ExactMailSorter implements IMailSorter, Serializable {
+    private static final long serialVersionUID = 1L;
+    private ExactMailPool exactMailPool;
+
+    public ExactMailSorter(ExactMailPool exactMailPool) {
+        this.exactMailPool = exactMailPool;
+    }
+
+    /***
+     * Fill the tube with the most efficient load in the pool
+     * @param tube tube to fill
+     * @return true/false - whether the robot is ready to leave
+     */
+    @Override
+    public boolean fillStorageTube(StorageTube tube) {
+        try {
+            if (!exactMailPool.isEmptyPool()) {
+                List<MailItem> mailItems = exactMailPool.getMails();
+                for (MailItem mailItem : mailItems) {
+                    tube.addItem(mailItem);
+                }
+                return mailItems.size() > 0;
+            }
+        } catch (TubeFullException e) {
+            // This won't happen as the pool never builds a load larger than the tube
+            return true;
+        }
+
+        return false;
+    }
+
+    /***
+     * The robot waits exactly as long as the pool is empty
+     * @param tube tube of the waiting robot
+     * @return the current time, or Integer.MAX_VALUE when the pool is empty
+     */
+    @Override
+    public int idleUntil(StorageTube tube) {
+        return exactMailPool.isEmptyPool() ? Integer.MAX_VALUE : Clock.Time();
+    }
+}
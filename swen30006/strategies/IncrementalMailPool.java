@@ -0,0 +1,526 @@
+package strategies;
+
+import automail.*;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * Mail pool that keeps the combinations it found across calls instead of rebuilding its tree every time.
+ * It scores combinations exactly as AdvancedMailPool does and grows the same kind of trees, but only from
+ * the mails that arrived since the last call and a few random mails standing in for those that left.
+ * Combinations touching a mail that left are dropped, the others are rescored for the current time, and the
+ * best MAX_CANDIDATES are kept for the next call. The work per call is proportional to how much the pool
+ * changed rather than to its size, up to MAX_NEW_ROOTS trees when more mail arrived than that, which is the
+ * most a call to AdvancedMailPool.getMails grows. Tubes holding more mails than the trees are deep are topped
+ * up greedily, as AdvancedMailPool tops up its combinations.
+ */
+public class IncrementalMailPool implements IRandomizedPool, IDrainablePool, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int MAX_DEPTH = SearchParameters.DEFAULT.getMaxDepth();
+    private static final int MAX_BRANCHES = SearchParameters.DEFAULT.getMaxBranches();
+    private static final int OVERSHOT = SearchParameters.DEFAULT.getOvershot();
+    private static final int MAX_CANDIDATES = 256;  // combinations kept between calls
+    private static final int FRESH_ROOTS = 4;       // random trees per call, so the search keeps exploring
+    private static final int MAX_NEW_ROOTS = MAX_BRANCHES;  // most trees grown from new arrivals per call
+    private static final int INITIAL_POOL_CAPACITY = 64;
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final Scenario scenario;
+    private final int capacity;     // of the tubes the combinations are for
+    private final int mailroom;
+
+    // The pool is kept as parallel columns, as in AdvancedMailPool
+    private MailItem[] mailItems;
+    private int[] destFloors;
+    private int[] sizes;
+    private int[] arrivalTimes;
+    private double[] priorities;
+    private int[] keys;
+    private int poolSize;
+    private int nextKey;
+    private final MailBucketIndex bucketIndex;
+    // pool position of key firstKey + i at i, -1 once it left. Keys only grow, so the window slides forward
+    private int[] positionOfKey = new int[INITIAL_POOL_CAPACITY];
+    private int firstKey;
+
+    // what carries over from one call to the next
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final Set<Candidate> known = new HashSet<>();
+    private int[] arrivedKeys = new int[INITIAL_POOL_CAPACITY];
+    private int arrivedCount;
+    private RandomGenerator random = new Random(SEED);
+    private long lastSearchNodes;
+
+    // scratch space of the current search
+    private final int[][] combinations = new int[MAX_DEPTH][MAX_DEPTH];
+    private final int[] totalSizes = new int[MAX_DEPTH];
+    private final double[] efficiencies = new double[MAX_DEPTH];
+    private final int[][] branches = new int[MAX_DEPTH][MAX_BRANCHES]; // mails drawn below each level
+    private final int[] order = new int[MAX_DEPTH];
+    private int time;
+    private long nodes;
+
+    public IncrementalMailPool() {
+        this(Scenario.DEFAULT);
+    }
+
+    /***
+     * @param scenario the building and tubes the pool chooses combinations for
+     */
+    public IncrementalMailPool(Scenario scenario) {
+        this.scenario = scenario;
+        this.capacity = scenario.getTubeCapacity();
+        this.mailroom = scenario.getMailroomLocation();
+        mailItems = new MailItem[INITIAL_POOL_CAPACITY];
+        destFloors = new int[INITIAL_POOL_CAPACITY];
+        sizes = new int[INITIAL_POOL_CAPACITY];
+        arrivalTimes = new int[INITIAL_POOL_CAPACITY];
+        priorities = new double[INITIAL_POOL_CAPACITY];
+        keys = new int[INITIAL_POOL_CAPACITY];
+        bucketIndex = new MailBucketIndex(INITIAL_POOL_CAPACITY, mailroom);
+    }
+
+    /***
+     * Take out the most efficient combination known, after bringing the known combinations up to date
+     * @return mails of the combination in delivery order, empty if the pool is empty
+     */
+    public synchronized List<MailItem> getMails() {
+        if (poolSize == 0)
+            return new ArrayList<>();
+
+        time = Clock.Time();
+        nodes = 0;
+        rescoreCandidates();
+
+        // grow trees from the mails that arrived since the last call and from a few random ones. When more
+        // arrived than MAX_NEW_ROOTS a random few are chosen, the others can still join trees as branches
+        int roots = Math.min(arrivedCount, MAX_NEW_ROOTS);
+        for (int i = 0; i < roots; i++) {
+            int chosen = i + random.nextInt(arrivedCount - i);
+            int key = arrivedKeys[chosen];
+            arrivedKeys[chosen] = arrivedKeys[i];
+            int position = positionOf(key);
+            if (position >= 0)
+                growTree(position);
+        }
+        arrivedCount = 0;
+        for (int i = 0; i < Math.min(FRESH_ROOTS, poolSize); i++) {
+            growTree(random.nextInt(poolSize));
+        }
+
+        // best first, ties to the combination found first
+        candidates.sort((a, b) -> Double.compare(b.efficiency, a.efficiency));
+        while (candidates.size() > MAX_CANDIDATES) {
+            known.remove(candidates.remove(candidates.size() - 1));
+        }
+
+        Candidate best = candidates.get(0);
+        int count = loadOrder(best);
+        int[] positions = Arrays.copyOf(order, count);
+        // tubes holding more than the trees are deep are filled greedily instead of by deeper trees
+        if (MAX_DEPTH < capacity)
+            positions = topUp(positions, best.efficiency);
+        lastSearchNodes = nodes;
+        return removeFromPool(positions);
+    }
+
+    /***
+     * Keep adding to a combination the sampled mail that makes it most efficient, as long as the tube has room
+     * and the addition does not lower its efficiency, as AdvancedMailPool tops up the combination its tree
+     * chose. Each round counts as a node.
+     * @param combination pool positions sorted as delivered
+     * @param efficiency efficiency of the combination
+     * @return the combination topped up, sorted as delivered
+     */
+    private int[] topUp(int[] combination, double efficiency) {
+        int side = bucketIndex.sideOf(destFloors[combination[0]]);
+        if (side == MailBucketIndex.AT)
+            return combination;
+
+        // every mail has at least size 1, so a tube never holds more than capacity of them
+        int[] load = Arrays.copyOf(combination, capacity);
+        int[] trial = new int[capacity];
+        int[] drawn = new int[MAX_BRANCHES];
+        int count = combination.length;
+        int totalSize = 0;
+        for (int k = 0; k < count; k++) {
+            totalSize += sizes[load[k]];
+        }
+        while (totalSize < capacity) {
+            nodes++;
+            int drawnCount = bucketIndex.sample(random, side, capacity - totalSize, MAX_BRANCHES, drawn);
+            int chosen = -1;
+            double chosenEfficiency = efficiency;
+            for (int i = 0; i < drawnCount; i++) {
+                if (!insertSorted(load, count, drawn[i], trial))
+                    continue;
+                double trialEfficiency = getEfficiency(trial, count + 1);
+                if (trialEfficiency >= chosenEfficiency && (chosen < 0 || trialEfficiency > chosenEfficiency)) {
+                    chosen = drawn[i];
+                    chosenEfficiency = trialEfficiency;
+                }
+            }
+            if (chosen < 0)
+                break;
+            insertSorted(load, count, chosen, trial);
+            System.arraycopy(trial, 0, load, 0, ++count);
+            totalSize += sizes[chosen];
+            efficiency = chosenEfficiency;
+        }
+        return count == combination.length ? combination : Arrays.copyOf(load, count);
+    }
+
+    /***
+     * Drop the combinations touching a mail that left and score the rest for the current time
+     */
+    private void rescoreCandidates() {
+        Iterator<Candidate> iterator = candidates.iterator();
+        while (iterator.hasNext()) {
+            Candidate candidate = iterator.next();
+            int count = loadOrder(candidate);
+            if (count < 0) {
+                known.remove(candidate);
+                iterator.remove();
+                continue;
+            }
+            candidate.efficiency = getEfficiency(order, count);
+        }
+    }
+
+    /***
+     * Write the pool positions of a combination into order, sorted as it is delivered
+     * @param candidate the combination
+     * @return number of mails, or -1 if any of them left the pool
+     */
+    private int loadOrder(Candidate candidate) {
+        int count = candidate.keys.length;
+        for (int k = 0; k < count; k++) {
+            int position = positionOf(candidate.keys[k]);
+            if (position < 0)
+                return -1;
+            // insertion sort by destination then key, the order AdvancedMailPool keeps its combinations in
+            int j = k;
+            while (j > 0 && comesAfter(order[j - 1], position)) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = position;
+        }
+        return count;
+    }
+
+    /***
+     * Grow a tree from one mail the way AdvancedMailPool does, keeping its leaves as candidates
+     * @param root pool position of the root mail
+     */
+    private void growTree(int root) {
+        combinations[0][0] = root;
+        totalSizes[0] = sizes[root];
+        efficiencies[0] = getEfficiency(combinations[0], 1);
+        growSubtree(0);
+    }
+
+    /***
+     * Depth first search below the combination held at the given level
+     * @param level number of mails in the combination minus one
+     */
+    private void growSubtree(int level) {
+        nodes++;
+        if (level + 1 >= Math.min(MAX_DEPTH, capacity)) {
+            offer(level);
+            return;
+        }
+
+        int[] curr = combinations[level];
+        int side = bucketIndex.sideOf(destFloors[curr[0]]);
+        // each level draws into its own row, so the subtrees below do not overwrite the mails left to try
+        int[] children = branches[level + 1];
+        int drawn = side == MailBucketIndex.AT ? 0 :
+                bucketIndex.sample(random, side, capacity - totalSizes[level], MAX_BRANCHES, children);
+
+        // only traverse down where the efficiency is increasing
+        boolean modified = false;
+        for (int i = 0; i < drawn; i++) {
+            if (tryExpand(level, children[i])) {
+                growSubtree(level + 1);
+                modified = true;
+            }
+        }
+        if (!modified)
+            offer(level);
+    }
+
+    /***
+     * Write the combination at the given level with one more mail into the next level
+     * @param level number of mails in the combination minus one
+     * @param toAdd pool position of the mail to add
+     * @return whether the new combination is at least as efficient
+     */
+    private boolean tryExpand(int level, int toAdd) {
+        int child = level + 1;
+        int[] next = combinations[child];
+        if (!insertSorted(combinations[level], level + 1, toAdd, next))
+            return false;
+        totalSizes[child] = totalSizes[level] + sizes[toAdd];
+        efficiencies[child] = getEfficiency(next, child + 1);
+        return efficiencies[child] >= efficiencies[level];
+    }
+
+    /***
+     * Write a combination with one more mail into another array, keeping it sorted as it is delivered
+     * @param combination pool positions sorted as delivered
+     * @param count number of mails in the combination
+     * @param toAdd pool position of the mail to add
+     * @param into array receiving count + 1 positions
+     * @return false, leaving into unwritten, if the mail is in the combination already
+     */
+    private boolean insertSorted(int[] combination, int count, int toAdd, int[] into) {
+        int insertAt = count;
+        for (int k = count - 1; k >= 0; k--) {
+            if (combination[k] == toAdd)
+                return false;
+            if (comesAfter(combination[k], toAdd))
+                insertAt = k;
+        }
+        System.arraycopy(combination, 0, into, 0, insertAt);
+        into[insertAt] = toAdd;
+        System.arraycopy(combination, insertAt, into, insertAt + 1, count - insertAt);
+        return true;
+    }
+
+    /***
+     * Keep the combination at the given level as a candidate unless it is known already
+     * @param level number of mails in the combination minus one
+     */
+    private void offer(int level) {
+        int[] candidateKeys = new int[level + 1];
+        for (int k = 0; k <= level; k++) {
+            candidateKeys[k] = keys[combinations[level][k]];
+        }
+        Arrays.sort(candidateKeys);
+        Candidate candidate = new Candidate(candidateKeys, efficiencies[level]);
+        if (known.add(candidate))
+            candidates.add(candidate);
+    }
+
+    /***
+     * Whether the mail at one position is delivered after the mail at the other in the same combination
+     */
+    private boolean comesAfter(int position, int other) {
+        return destFloors[position] > destFloors[other] ||
+                (destFloors[position] == destFloors[other] && keys[position] > keys[other]);
+    }
+
+    /***
+     * Efficiency of a combination exactly as AdvancedMailPool scores it: estimated score per step
+     * @param combination pool positions sorted as delivered
+     * @param count number of mails
+     * @return efficiency
+     */
+    private double getEfficiency(int[] combination, int count) {
+        final double penalty = 1.1;
+        int currTime = time + OVERSHOT;
+        int currFloor = mailroom;
+        int minFloor = destFloors[combination[0]];
+        int maxFloor = minFloor;
+        double score = 0;
+        for (int k = 0; k < count; k++) {
+            int position = combination[k];
+            currTime += Math.abs(currFloor - destFloors[position]);
+            score += Math.pow(currTime - arrivalTimes[position], penalty) * priorities[position];
+            currTime += 1;
+            currFloor = destFloors[position];
+            minFloor = Math.min(minFloor, currFloor);
+            maxFloor = Math.max(maxFloor, currFloor);
+        }
+
+        int steps = count;
+        if (maxFloor > mailroom)
+            steps += (maxFloor - mailroom) * 2;
+        if (minFloor < mailroom)
+            steps += (mailroom - minFloor) * 2;
+        return score / steps;
+    }
+
+    /***
+     * Take the mails at the given positions out of the pool, moving the last mail into each freed position
+     * @param positions pool positions of the mails to remove
+     * @return removed mails, in the given order
+     */
+    private List<MailItem> removeFromPool(int[] positions) {
+        List<MailItem> removed = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            removed.add(mailItems[position]);
+        }
+
+        // highest position first so the mail moved into a freed position is never one still to be removed
+        int[] descending = positions.clone();
+        Arrays.sort(descending);
+        for (int i = descending.length - 1; i >= 0; i--) {
+            int position = descending[i];
+            int last = --poolSize;
+            positionOfKey[keys[position] - firstKey] = -1;
+            bucketIndex.remove(position);
+            if (position != last) {
+                mailItems[position] = mailItems[last];
+                destFloors[position] = destFloors[last];
+                sizes[position] = sizes[last];
+                arrivalTimes[position] = arrivalTimes[last];
+                priorities[position] = priorities[last];
+                keys[position] = keys[last];
+                positionOfKey[keys[position] - firstKey] = position;
+                bucketIndex.move(last, position);
+            }
+            mailItems[last] = null;
+        }
+        return removed;
+    }
+
+    /***
+     * Add mail to the pool. It becomes the root of a tree on the next call to getMails, or may when more mail
+     * arrives before it.
+     * @param mailItem the mail item being added.
+     */
+    @Override
+    public synchronized void addToPool(MailItem mailItem) {
+        if (poolSize == mailItems.length) {
+            int capacity = poolSize * 2;
+            mailItems = Arrays.copyOf(mailItems, capacity);
+            destFloors = Arrays.copyOf(destFloors, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            arrivalTimes = Arrays.copyOf(arrivalTimes, capacity);
+            priorities = Arrays.copyOf(priorities, capacity);
+            keys = Arrays.copyOf(keys, capacity);
+        }
+        if (nextKey - firstKey == positionOfKey.length)
+            slideKeyWindow();
+        int key = nextKey++;
+        mailItems[poolSize] = mailItem;
+        destFloors[poolSize] = mailItem.getDestFloor();
+        sizes[poolSize] = mailItem.getSize();
+        arrivalTimes[poolSize] = mailItem.getArrivalTime();
+        priorities[poolSize] = mailItem.getPriority().weight();
+        keys[poolSize] = key;
+        bucketIndex.add(poolSize, destFloors[poolSize], sizes[poolSize], mailItem.getPriority().ordinal());
+        positionOfKey[key - firstKey] = poolSize;
+        poolSize++;
+
+        if (arrivedCount == arrivedKeys.length)
+            arrivedKeys = Arrays.copyOf(arrivedKeys, arrivedCount * 2);
+        arrivedKeys[arrivedCount++] = key;
+    }
+
+    /***
+     * Pool position of the mail with the given key
+     * @param key key the mail was given when it arrived
+     * @return position, or -1 if the mail left the pool
+     */
+    private int positionOf(int key) {
+        int i = key - firstKey;
+        return i < 0 || i >= nextKey - firstKey ? -1 : positionOfKey[i];
+    }
+
+    /***
+     * Make room for the key of the next arrival by dropping the keys before the oldest mail still pooled,
+     * doubling the window only when more than half of it is still in use
+     */
+    private void slideKeyWindow() {
+        int span = nextKey - firstKey;
+        int oldest = 0;
+        while (oldest < span && positionOfKey[oldest] < 0) {
+            oldest++;
+        }
+        int live = span - oldest;
+        int[] window = live * 2 > positionOfKey.length ? new int[positionOfKey.length * 2] : positionOfKey;
+        System.arraycopy(positionOfKey, oldest, window, 0, live);
+        positionOfKey = window;
+        firstKey += oldest;
+    }
+
+    /***
+     * Take every mail out of the pool, forgetting the combinations known
+     * @return the mails, in no particular order
+     */
+    @Override
+    public synchronized List<MailItem> drainPool() {
+        List<MailItem> drained = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            drained.add(mailItems[i]);
+            mailItems[i] = null;
+            bucketIndex.remove(i);
+        }
+        poolSize = 0;
+        firstKey = nextKey;
+        candidates.clear();
+        known.clear();
+        arrivedCount = 0;
+        return drained;
+    }
+
+    /***
+     * Draw from the simulation's SEARCH stream, through a SplitMix64 counter, instead of a fixed seed
+     * @param streams streams of the simulation, null for the pool's own seeding
+     */
+    @Override
+    public synchronized void setRandomStreams(RandomStreams streams) {
+        random = streams == null ? new Random(SEED) : new SplitMix64(streams.seedOf(RandomStreams.Purpose.SEARCH, 0));
+    }
+
+    /***
+     * Check if the pool is empty or not
+     * @return true/false
+     */
+    public synchronized boolean isEmptyPool() {
+        return poolSize == 0;
+    }
+
+    /***
+     * Get size of the mail pool
+     * @return size of the mail pool
+     */
+    public synchronized int size() {
+        return poolSize;
+    }
+
+    /***
+     * @return number of nodes the last call to getMails expanded
+     */
+    public synchronized long getLastSearchNodes() {
+        return lastSearchNodes;
+    }
+
+    /***
+     * @return number of combinations carried over to the next call
+     */
+    public synchronized int getCandidateCount() {
+        return candidates.size();
+    }
+
+    /***
+     * Combination found by an earlier search, as the sorted pool keys of its mails
+     */
+    private static final class Candidate implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int[] keys;
+        final int hash;
+        double efficiency;
+
+        Candidate(int[] keys, double efficiency) {
+            this.keys = keys;
+            this.hash = Arrays.hashCode(keys);
+            this.efficiency = efficiency;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Candidate && Arrays.equals(keys, ((Candidate) other).keys);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package strategies;
+
+import automail.MailItem;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Index over the positions of a pool, bucketing mails by side of the mailroom (below, at, above), size and
+ * priority. Adding, removing and moving a position are O(1), and a node of the search can draw random
+ * candidates from just the buckets it could accept without shuffling or scanning the pool.
+ */
+class MailBucketIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    static final int BELOW = 0;
+    static final int AT = 1;
+    static final int ABOVE = 2;
+
+    private static final int SIDES = 3;
+    private static final int INITIAL_BUCKET_CAPACITY = 16;
+
+    private final int sizeCount = MailItem.POSSIBLE_SIZES.length;
+    private final int priorityCount = MailItem.PRIORITY_LEVELS.length;
+    private final int mailroom;
+    private final int[][] buckets;      // pool positions in each bucket
+    private final int[] bucketCounts;
+    private int[] bucketOf;             // bucket of each pool position
+    private int[] slotOf;               // index of each pool position within its bucket
+
+    MailBucketIndex(int initialCapacity, int mailroom) {
+        this.mailroom = mailroom;
+        int bucketTotal = SIDES * sizeCount * priorityCount;
+        buckets = new int[bucketTotal][INITIAL_BUCKET_CAPACITY];
+        bucketCounts = new int[bucketTotal];
+        bucketOf = new int[initialCapacity];
+        slotOf = new int[initialCapacity];
+    }
+
+    /***
+     * Side of the mailroom of the pool a floor is on
+     * @param floor destination floor
+     * @return BELOW, AT or ABOVE
+     */
+    int sideOf(int floor) {
+        return sideOf(floor, mailroom);
+    }
+
+    /***
+     * Side of a mailroom a floor is on
+     * @param floor destination floor
+     * @param mailroom floor of the mailroom
+     * @return BELOW, AT or ABOVE
+     */
+    static int sideOf(int floor, int mailroom) {
+        if (floor < mailroom)
+            return BELOW;
+        if (floor > mailroom)
+            return ABOVE;
+        return AT;
+    }
+
+    /***
+     * Index a new pool position
+     * @param position pool position of the mail
+     * @param floor destination floor of the mail
+     * @param size size of the mail
+     * @param priority index of the mail's priority level in MailItem.PRIORITY_LEVELS
+     */
+    void add(int position, int floor, int size, int priority) {
+        if (position >= bucketOf.length) {
+            int capacity = Math.max(position + 1, bucketOf.length * 2);
+            bucketOf = Arrays.copyOf(bucketOf, capacity);
+            slotOf = Arrays.copyOf(slotOf, capacity);
+        }
+        int bucket = (sideOf(floor) * sizeCount + sizeIndex(size)) * priorityCount + priority;
+        if (bucketCounts[bucket] == buckets[bucket].length)
+            buckets[bucket] = Arrays.copyOf(buckets[bucket], bucketCounts[bucket] * 2);
+        buckets[bucket][bucketCounts[bucket]] = position;
+        bucketOf[position] = bucket;
+        slotOf[position] = bucketCounts[bucket]++;
+    }
+
+    /***
+     * Forget a pool position
+     * @param position pool position of the mail
+     */
+    void remove(int position) {
+        int bucket = bucketOf[position];
+        int slot = slotOf[position];
+        int last = buckets[bucket][--bucketCounts[bucket]];
+        buckets[bucket][slot] = last;
+        slotOf[last] = slot;
+    }
+
+    /***
+     * Record that the mail at one pool position now lives at another
+     * @param from old pool position
+     * @param to new pool position, not currently indexed
+     */
+    void move(int from, int to) {
+        int bucket = bucketOf[from];
+        int slot = slotOf[from];
+        buckets[bucket][slot] = to;
+        bucketOf[to] = bucket;
+        slotOf[to] = slot;
+    }
+
+    /***
+     * Choose distinct random positions among the mails on one side with at most the given size
+     * (Floyd's algorithm over the buckets laid end to end)
+     * @param random source of randomness
+     * @param side side of the mailroom
+     * @param maxSize largest size that still fits
+     * @param count maximum number of positions to choose
+     * @param chosen array receiving the chosen positions
+     * @return number of positions chosen, the smaller of count and the number of matching mails
+     */
+    int sample(RandomGenerator random, int side, int maxSize, int count, int[] chosen) {
+        int firstBucket = side * sizeCount * priorityCount;
+        int lastBucket = firstBucket;
+        int eligible = 0;
+        for (int s = 0; s < sizeCount && MailItem.POSSIBLE_SIZES[s] <= maxSize; s++) {
+            for (int p = 0; p < priorityCount; p++) {
+                eligible += bucketCounts[lastBucket++];
+            }
+        }
+
+        count = Math.min(count, eligible);
+        int chosenCount = 0;
+        for (int j = eligible - count; j < eligible; j++) {
+            int t = random.nextInt(j + 1);
+            int position = positionAt(firstBucket, lastBucket, t);
+            for (int k = 0; k < chosenCount; k++) {
+                if (chosen[k] == position) {
+                    position = positionAt(firstBucket, lastBucket, j);
+                    break;
+                }
+            }
+            chosen[chosenCount++] = position;
+        }
+        return chosenCount;
+    }
+
+    /***
+     * Number of mails in the pool with the given side, size index and priority
+     * @param side side of the mailroom
+     * @param sizeIndex index of the size in MailItem.POSSIBLE_SIZES
+     * @param priority index of the priority level in MailItem.PRIORITY_LEVELS
+     * @return number of mails
+     */
+    int count(int side, int sizeIndex, int priority) {
+        return bucketCounts[(side * sizeCount + sizeIndex) * priorityCount + priority];
+    }
+
+    private int positionAt(int firstBucket, int lastBucket, int index) {
+        for (int bucket = firstBucket; bucket < lastBucket; bucket++) {
+            if (index < bucketCounts[bucket])
+                return buckets[bucket][index];
+            index -= bucketCounts[bucket];
+        }
+        throw new IndexOutOfBoundsException("No mail at " + index);
+    }
+
+    static int sizeIndex(int size) {
+        for (int s = 0; s < MailItem.POSSIBLE_SIZES.length; s++) {
+            if (MailItem.POSSIBLE_SIZES[s] == size)
+                return s;
+        }
+        throw new IllegalArgumentException("Unknown mail size " + size);
+    }
+}
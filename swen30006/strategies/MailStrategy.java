@@ -0,0 +1,17 @@
+package strategies;
+
+/**
+ * The pool and sorter pairs Automail can be built with
+ */
+public enum MailStrategy {
+    /** SimpleMailPool and SimpleMailSorter */
+    SIMPLE,
+    /** AdvancedMailPool and AdvancedMailSorter */
+    ADVANCED,
+    /** MonteCarloMailPool and MonteCarloMailSorter */
+    MONTE_CARLO,
+    /** ExactMailPool and ExactMailSorter */
+    EXACT,
+    /** IncrementalMailPool and IncrementalMailSorter */
+    INCREMENTAL
+}
@@ -0,0 +1,522 @@
+package strategies;
+
+import automail.*;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.random.RandomGenerator;
+
+/**
+ * Mail pool choosing each load with Monte Carlo Tree Search (UCT).
+ * A path from the root adds one mail at a time to the load and ends with a dispatch action. Each iteration
+ * selects a path by UCT, expands one untried action, plays out the rest of the load and a few future robot
+ * trips at random, and backs the resulting delivery penalty up the path. The search only looks at a bounded
+ * random sample of the pool, so the cost of an iteration does not grow with the pool.
+ * Safe to share between robots; the search reuses scratch arrays, so robots take turns searching.
+ */
+public class MonteCarloMailPool implements IRandomizedPool, IDrainablePool, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_ITERATIONS = 2000;
+    private static final int DEFAULT_CANDIDATES = 48;    // mails of the pool the tree may choose from
+    private static final int DEFAULT_ROLLOUT_TRIPS = 12; // future trips played out after the load
+    private static final int MAX_NODES = 100000;         // cap on tree size for wall-clock budgets
+    private static final int DISPATCH = -1;              // action sending the robot with the current load
+    private static final double PENALTY = 1.1;
+
+    private final List<MailItem> mailPool;
+    private final Scenario scenario;
+    private final int capacity;
+    private final int mailroom;
+    private final Random random = new Random();
+    private final SplitMix64 counterRandom = new SplitMix64(0);
+    private RandomStreams randomStreams;
+    private SearchBudget budget;
+    private int maxCandidates;
+    private int rolloutTrips;
+    private double exploration;
+    private int lastIterations;
+
+    // candidates of the current search, as columns
+    private MailItem[] candidates;
+    private int[] positions;
+    private int[] floors;
+    private int[] sizes;
+    private int[] arrivals;
+    private double[] weights;
+    private boolean[] rolloutUsed;
+    private int[] rolloutActions;
+    private int candidateCount;
+    private int time;
+
+    public MonteCarloMailPool() {
+        this(SearchBudget.iterations(DEFAULT_ITERATIONS));
+    }
+
+    public MonteCarloMailPool(SearchBudget budget) {
+        this(budget, Scenario.DEFAULT);
+    }
+
+    public MonteCarloMailPool(Scenario scenario) {
+        this(SearchBudget.iterations(DEFAULT_ITERATIONS), scenario);
+    }
+
+    public MonteCarloMailPool(SearchBudget budget, Scenario scenario) {
+        this.mailPool = new ArrayList<>();
+        this.scenario = scenario;
+        this.capacity = scenario.getTubeCapacity();
+        this.mailroom = scenario.getMailroomLocation();
+        this.budget = budget;
+        this.maxCandidates = DEFAULT_CANDIDATES;
+        this.rolloutTrips = DEFAULT_ROLLOUT_TRIPS;
+        this.exploration = Math.sqrt(2);
+    }
+
+    /***
+     * Choose the next load by running MCTS within the budget
+     * @return mails to load, farthest from the mailroom first so the robot delivers the nearest first
+     */
+    public synchronized List<MailItem> getMails() {
+        if (mailPool.isEmpty())
+            return new ArrayList<>();
+        long start = System.nanoTime();
+        RandomGenerator random = reseed();
+        loadCandidates(random);
+
+        Node root = new Node(null, DISPATCH, feasibleActions(new Load(capacity)));
+        Load load = new Load(capacity);
+        Load playout = new Load(capacity);
+        double minPenalty = Double.MAX_VALUE;
+        double maxPenalty = -Double.MAX_VALUE;
+        int nodes = 1;
+        int iterations = 0;
+
+        while (!budget.isExhausted(iterations, start)) {
+            load.clear();
+            Node node = root;
+
+            // selection
+            while (node.untriedCount == 0 && !node.children.isEmpty()) {
+                node = selectChild(node, minPenalty, maxPenalty);
+                load.apply(node.action, this);
+            }
+
+            // expansion
+            if (node.untriedCount > 0 && nodes < MAX_NODES) {
+                int pick = random.nextInt(node.untriedCount);
+                int action = node.untried[pick];
+                node.untried[pick] = node.untried[--node.untriedCount];
+                load.apply(action, this);
+                Node child = new Node(node, action, feasibleActions(load));
+                node.children.add(child);
+                node = child;
+                nodes++;
+            }
+
+            // simulation
+            playout.copyFrom(load);
+            double penalty = rollout(playout, random);
+            minPenalty = Math.min(minPenalty, penalty);
+            maxPenalty = Math.max(maxPenalty, penalty);
+
+            // backpropagation
+            for (Node n = node; n != null; n = n.parent) {
+                n.visits++;
+                n.penaltySum += penalty;
+            }
+            iterations++;
+        }
+        lastIterations = iterations;
+
+        // follow the most visited path until it dispatches
+        load.clear();
+        Node node = root;
+        while (!node.children.isEmpty()) {
+            Node best = node.children.get(0);
+            for (Node child : node.children) {
+                if (child.visits > best.visits)
+                    best = child;
+            }
+            if (best.action == DISPATCH)
+                break;
+            load.apply(best.action, this);
+            node = best;
+        }
+        // budget too small to visit anything, still make progress
+        if (load.count == 0)
+            load.apply(0, this);
+
+        return takeLoad(load);
+    }
+
+    /***
+     * Pick the child with the best upper confidence bound. Penalties are normalised to [0, 1] over the range
+     * seen so far, lower penalty being better.
+     */
+    private Node selectChild(Node node, double minPenalty, double maxPenalty) {
+        double range = maxPenalty > minPenalty ? maxPenalty - minPenalty : 1;
+        double logVisits = Math.log(node.visits);
+        Node best = node.children.get(0);
+        double bestValue = -Double.MAX_VALUE;
+        for (Node child : node.children) {
+            double reward = (maxPenalty - child.penaltySum / child.visits) / range;
+            double value = reward + exploration * Math.sqrt(logVisits / child.visits);
+            if (value > bestValue) {
+                best = child;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    /***
+     * Fill up the load at random, then play out further random trips over the remaining candidates
+     * @param load load to finish, modified
+     * @param random source of randomness
+     * @return total delivery penalty of the delivered mails plus the penalty accrued so far by the rest
+     */
+    private double rollout(Load load, RandomGenerator random) {
+        boolean[] used = rolloutUsed;
+        int[] actions = rolloutActions;
+        Arrays.fill(used, false);
+        double penalty = 0;
+        int now = time;
+
+        for (int trip = 0; trip <= rolloutTrips; trip++) {
+            if (trip > 0) {
+                load.clear();
+            }
+            for (int k = 0; k < load.count; k++) {
+                used[load.items[k]] = true;
+            }
+
+            // the playout keeps adding random mails while any fits, a real robot has no reason to leave early
+            while (!load.dispatched) {
+                int actionCount = feasibleActions(load, used, actions);
+                if (load.count > 0)
+                    actionCount--; // dispatch is always the last action
+                if (actionCount <= 0)
+                    break;
+                int action = actions[random.nextInt(actionCount)];
+                load.apply(action, this);
+                used[action] = true;
+            }
+            if (load.count == 0)
+                break;
+
+            penalty += deliver(load, now);
+            now = load.returnTime;
+        }
+
+        // mails left over are charged as if delivered at the horizon, the same for every rollout, so a rollout
+        // is not rewarded for ending early
+        int horizon = Math.max(now, time + (rolloutTrips + 1) * 2 * (scenario.getFloors() + capacity));
+        for (int c = 0; c < candidateCount; c++) {
+            if (!used[c])
+                penalty += weights[c] * Math.pow(horizon - arrivals[c], PENALTY);
+        }
+        return penalty;
+    }
+
+    /***
+     * Deliver a load the way the robot does, nearest floor first, one floor or one delivery per tick
+     * @param load load to deliver, its return time is filled in
+     * @param departure time the robot leaves the mailroom
+     * @return delivery penalty of the load
+     */
+    private double deliver(Load load, int departure) {
+        load.sortNearestFirst(this);
+        int now = departure;
+        int floor = mailroom;
+        double penalty = 0;
+        for (int k = 0; k < load.count; k++) {
+            int c = load.items[k];
+            now += Math.abs(floors[c] - floor) + 1;
+            floor = floors[c];
+            penalty += weights[c] * Math.pow(now - arrivals[c], PENALTY);
+        }
+        load.returnTime = now + Math.abs(floor - mailroom) + 1;
+        return penalty;
+    }
+
+    /***
+     * Actions available from a load in the tree, where every candidate is still available
+     */
+    private int[] feasibleActions(Load load) {
+        int[] actions = new int[candidateCount + 1];
+        int count = feasibleActions(load, null, actions);
+        return Arrays.copyOf(actions, count);
+    }
+
+    /***
+     * Actions available from a load: any unused candidate that fits and keeps the load on one side of the
+     * mailroom, or dispatching a non-empty load
+     * @param load current load
+     * @param used candidates already delivered in the playout, may be null
+     * @param actions array receiving the actions
+     * @return number of actions
+     */
+    private int feasibleActions(Load load, boolean[] used, int[] actions) {
+        if (load.dispatched)
+            return 0;
+
+        int count = 0;
+        int side = load.count == 0 ? -1 : MailBucketIndex.sideOf(floors[load.items[0]], mailroom);
+        if (side != MailBucketIndex.AT) {
+            for (int c = 0; c < candidateCount; c++) {
+                if ((used != null && used[c]) || load.contains(c) || load.totalSize + sizes[c] > capacity)
+                    continue;
+                if (side != -1 && MailBucketIndex.sideOf(floors[c], mailroom) != side)
+                    continue;
+                actions[count++] = c;
+            }
+        }
+        if (load.count > 0)
+            actions[count++] = DISPATCH;
+        return count;
+    }
+
+    /***
+     * Copy a bounded random sample of the pool into the candidate columns
+     */
+    private void loadCandidates(RandomGenerator random) {
+        int poolSize = mailPool.size();
+        candidateCount = Math.min(maxCandidates, poolSize);
+        candidates = new MailItem[candidateCount];
+        floors = new int[candidateCount];
+        sizes = new int[candidateCount];
+        arrivals = new int[candidateCount];
+        weights = new double[candidateCount];
+        rolloutUsed = new boolean[candidateCount];
+        rolloutActions = new int[candidateCount + 1];
+        time = Clock.Time();
+
+        // Floyd's algorithm, positions come out distinct without touching the rest of the pool
+        positions = new int[candidateCount];
+        int chosen = 0;
+        for (int j = poolSize - candidateCount; j < poolSize; j++) {
+            int t = random.nextInt(j + 1);
+            for (int k = 0; k < chosen; k++) {
+                if (positions[k] == t) {
+                    t = j;
+                    break;
+                }
+            }
+            positions[chosen++] = t;
+        }
+        Arrays.sort(positions);
+
+        for (int c = 0; c < candidateCount; c++) {
+            MailItem mailItem = mailPool.get(positions[c]);
+            candidates[c] = mailItem;
+            floors[c] = mailItem.getDestFloor();
+            sizes[c] = mailItem.getSize();
+            arrivals[c] = mailItem.getArrivalTime();
+            weights[c] = AdvancedMailPool.getMailPriorityDouble(mailItem);
+        }
+    }
+
+    /***
+     * Remove the load from the pool
+     * @return mails of the load, farthest from the mailroom first
+     */
+    private List<MailItem> takeLoad(Load load) {
+        load.sortNearestFirst(this);
+        List<MailItem> mails = new ArrayList<>(load.count);
+        int[] taken = new int[load.count];
+        for (int k = load.count - 1; k >= 0; k--) {
+            mails.add(candidates[load.items[k]]);
+            taken[k] = positions[load.items[k]];
+        }
+
+        // swap each taken mail with the last one so removal does not shift the pool. Highest position first
+        // so the mail moved into a freed position is never one still to be taken
+        Arrays.sort(taken);
+        for (int k = taken.length - 1; k >= 0; k--) {
+            int last = mailPool.size() - 1;
+            mailPool.set(taken[k], mailPool.get(last));
+            mailPool.remove(last);
+        }
+        return mails;
+    }
+
+    /***
+     * Add mail to the pool
+     * @param mailItem the mail item being added.
+     */
+    @Override
+    public synchronized void addToPool(MailItem mailItem) {
+        mailPool.add(mailItem);
+    }
+
+    /***
+     * Take every mail out of the pool
+     * @return the mails, in no particular order
+     */
+    @Override
+    public synchronized List<MailItem> drainPool() {
+        List<MailItem> drained = new ArrayList<>(mailPool);
+        mailPool.clear();
+        return drained;
+    }
+
+    /***
+     * Check if the pool is empty or not
+     * @return true/false
+     */
+    public synchronized boolean isEmptyPool() {
+        return mailPool.isEmpty();
+    }
+
+    /***
+     * Get size of the mail pool
+     * @return size of the mail pool
+     */
+    public synchronized int size() {
+        return mailPool.size();
+    }
+
+    /***
+     * Seed every search from the SEARCH stream indexed by the time and the pool size, drawing through a
+     * SplitMix64 counter, instead of seeding java.util.Random with the pool size
+     * @param streams streams of the simulation, null for the pool's own seeding
+     */
+    @Override
+    public synchronized void setRandomStreams(RandomStreams streams) {
+        this.randomStreams = streams;
+    }
+
+    /** Move the generator to the stream of the search about to run */
+    private RandomGenerator reseed() {
+        int size = mailPool.size();
+        if (randomStreams == null) {
+            random.setSeed(size);
+            return random;
+        }
+        counterRandom.reseed(randomStreams.seedOf(RandomStreams.Purpose.SEARCH, ((long) Clock.Time() << 32) | size));
+        return counterRandom;
+    }
+
+    /***
+     * Set how much work each call to getMails may do
+     * @param budget iteration or wall-clock budget
+     */
+    public void setBudget(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    /***
+     * Set how many mails of the pool the tree may choose from. Bounds the cost of an iteration.
+     * @param maxCandidates maximum number of candidates
+     */
+    public void setMaxCandidates(int maxCandidates) {
+        this.maxCandidates = maxCandidates;
+    }
+
+    /***
+     * Set how many trips after the chosen load a rollout plays out
+     * @param rolloutTrips number of future trips
+     */
+    public void setRolloutTrips(int rolloutTrips) {
+        this.rolloutTrips = rolloutTrips;
+    }
+
+    /***
+     * Set the UCT exploration constant
+     * @param exploration weight of the exploration term, sqrt(2) by default
+     */
+    public void setExploration(double exploration) {
+        this.exploration = exploration;
+    }
+
+    /***
+     * @return number of iterations the last call to getMails ran
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /***
+     * @return the building and tubes the pool chooses loads for
+     */
+    public Scenario getScenario() {
+        return scenario;
+    }
+
+    /***
+     * A node of the tree: the load reached by applying the actions from the root to it
+     */
+    private static final class Node {
+        final Node parent;
+        final int action;
+        final List<Node> children = new ArrayList<>();
+        final int[] untried;
+        int untriedCount;
+        int visits;
+        double penaltySum;
+
+        Node(Node parent, int action, int[] untried) {
+            this.parent = parent;
+            this.action = action;
+            this.untried = untried;
+            this.untriedCount = untried.length;
+        }
+    }
+
+    /***
+     * Candidates making up a load, with its running size
+     */
+    private static final class Load {
+        final int[] items;
+        int count;
+        int totalSize;
+        boolean dispatched;
+        int returnTime;
+
+        Load(int capacity) {
+            items = new int[capacity];
+        }
+
+        void clear() {
+            count = 0;
+            totalSize = 0;
+            dispatched = false;
+        }
+
+        void copyFrom(Load other) {
+            System.arraycopy(other.items, 0, items, 0, other.count);
+            count = other.count;
+            totalSize = other.totalSize;
+            dispatched = other.dispatched;
+        }
+
+        void apply(int action, MonteCarloMailPool pool) {
+            if (action == DISPATCH) {
+                dispatched = true;
+            } else {
+                items[count++] = action;
+                totalSize += pool.sizes[action];
+            }
+        }
+
+        boolean contains(int candidate) {
+            for (int k = 0; k < count; k++) {
+                if (items[k] == candidate)
+                    return true;
+            }
+            return false;
+        }
+
+        void sortNearestFirst(MonteCarloMailPool pool) {
+            for (int i = 1; i < count; i++) {
+                int item = items[i];
+                int distance = Math.abs(pool.floors[item] - pool.mailroom);
+                int j = i - 1;
+                while (j >= 0 && Math.abs(pool.floors[items[j]] - pool.mailroom) > distance) {
+                    items[j + 1] = items[j];
+                    j--;
+                }
+                items[j + 1] = item;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package strategies;
+
+/**
+ * Scores a frontier of candidate loads of the same length in one call, such as the children of a node of the
+ * tree search. Each candidate is delivered in the order given, from the mailroom, one step per floor travelled
+ * and one per delivery, and scores as DeliveryLedger.deliveryScore would score its mails: waiting time to the
+ * power 1.1 times the priority weight.
+ * The mails are laid out column by column over primitive arrays, mail k of candidate c at k * stride + c, so
+ * the same mail of neighbouring candidates sits side by side and can be scored in the lanes of one vector.
+ * The power is looked up in a table of Math.pow over waiting times below TABLE_SIZE and computed beyond it,
+ * so the scores are bit-identical to DeliveryLedger.deliveryScore, a tolerance of 0. create() gives the
+ * Vector API kernel when it was compiled (ant compile-vector) and jdk.incubator.vector is added to the run,
+ * and this scalar kernel otherwise.
+ */
+public class ScoreKernel {
+    private static final double PENALTY = 1.1;
+
+    /** Waiting times below this are looked up rather than computed */
+    public static final int TABLE_SIZE = 1 << 14;
+    static final double[] PENALTIES = new double[TABLE_SIZE];
+
+    static {
+        for (int wait = 0; wait < TABLE_SIZE; wait++) {
+            PENALTIES[wait] = Math.pow(wait, PENALTY);
+        }
+    }
+
+    private static final String VECTOR_KERNEL = "strategies.VectorScoreKernel";
+
+    protected ScoreKernel() {
+    }
+
+    /***
+     * The fastest kernel this run can use. Setting the system property automail.scalarScoring forces the
+     * scalar kernel.
+     * @return kernel
+     */
+    public static ScoreKernel create() {
+        if (!Boolean.getBoolean("automail.scalarScoring")) {
+            try {
+                return (ScoreKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                // not compiled, or jdk.incubator.vector not added to the run
+            }
+        }
+        return new ScoreKernel();
+    }
+
+    /***
+     * Waiting time to the power 1.1, exactly as Math.pow gives it
+     * @param wait steps between arrival and delivery
+     * @return penalty
+     */
+    public static double penalty(int wait) {
+        return wait >= 0 && wait < TABLE_SIZE ? PENALTIES[wait] : Math.pow(wait, PENALTY);
+    }
+
+    /***
+     * Score every candidate of a frontier
+     * @param count number of candidates
+     * @param length number of mails of every candidate
+     * @param floors destination floor of mail k of candidate c at k * stride + c
+     * @param arrivals arrival time of mail k of candidate c at k * stride + c
+     * @param weights priority weight of mail k of candidate c at k * stride + c
+     * @param stride distance between the mails of a candidate, at least count
+     * @param mailroom floor the robot leaves from
+     * @param startTime time the robot leaves the mailroom, with any overhead estimation added
+     * @param scores array receiving the score of each candidate
+     */
+    public void score(int count, int length, int[] floors, int[] arrivals, double[] weights, int stride,
+                      int mailroom, int startTime, double[] scores) {
+        for (int c = 0; c < count; c++) {
+            scores[c] = scoreOne(c, length, floors, arrivals, weights, stride, mailroom, startTime);
+        }
+    }
+
+    /***
+     * Score one candidate of a frontier, as score does
+     * @return score of candidate c
+     */
+    static double scoreOne(int c, int length, int[] floors, int[] arrivals, double[] weights, int stride,
+                           int mailroom, int startTime) {
+        int currTime = startTime;
+        int currFloor = mailroom;
+        double score = 0;
+        for (int k = 0, i = c; k < length; k++, i += stride) {
+            currTime += Math.abs(currFloor - floors[i]);
+            score += penalty(currTime - arrivals[i]) * weights[i];
+            currTime += 1;
+            currFloor = floors[i];
+        }
+        return score;
+    }
+
+    /***
+     * @return name of the kernel, as reported by benchmarks
+     */
+    public String getName() {
+        return "scalar";
+    }
+}
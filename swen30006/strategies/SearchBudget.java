@@ -0,0 +1,64 @@
+package strategies;
+
+import java.io.Serializable;
+
+/**
+ * Limit on how much work a search may do per call, either as a number of iterations or as wall-clock time.
+ * Searches check it before every iteration, so a wall-clock budget is overrun by at most one iteration.
+ */
+public final class SearchBudget implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int maxIterations;
+    private final long maxNanos;
+
+    private SearchBudget(int maxIterations, long maxNanos) {
+        this.maxIterations = maxIterations;
+        this.maxNanos = maxNanos;
+    }
+
+    /***
+     * Budget allowing a fixed number of iterations. Searches under it are deterministic.
+     * @param iterations iterations per call
+     * @return budget
+     */
+    public static SearchBudget iterations(int iterations) {
+        if (iterations < 0)
+            throw new IllegalArgumentException("Negative iteration budget: " + iterations);
+        return new SearchBudget(iterations, Long.MAX_VALUE);
+    }
+
+    /***
+     * Budget allowing a fixed amount of wall-clock time
+     * @param nanos nanoseconds per call
+     * @return budget
+     */
+    public static SearchBudget wallClock(long nanos) {
+        if (nanos < 0)
+            throw new IllegalArgumentException("Negative time budget: " + nanos);
+        return new SearchBudget(Integer.MAX_VALUE, nanos);
+    }
+
+    /***
+     * Whether another iteration may start
+     * @param iterations iterations done so far in this call
+     * @param startNanos System.nanoTime() when the call started
+     * @return true once the budget is used up
+     */
+    public boolean isExhausted(int iterations, long startNanos) {
+        if (iterations >= maxIterations)
+            return true;
+        return maxNanos != Long.MAX_VALUE && System.nanoTime() - startNanos >= maxNanos;
+    }
+
+    /***
+     * @return whether the budget is measured in time rather than iterations
+     */
+    public boolean isWallClock() {
+        return maxNanos != Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return isWallClock() ? maxNanos + "ns" : maxIterations + " iterations";
+    }
+}
@@ -0,0 +1,42 @@
+package strategies;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight recorder event for one search of a pool filling a storage tube. Its duration is the wall-clock
+ * latency of the call. Only committed while a recording has it enabled.
+ */
+@Name("strategies.MailSearch")
+@Label("Mail Search")
+@Category({"Automail", "Mail Pool"})
+@Description("Search of a mail pool for the combination to load into a storage tube")
+@StackTrace(false)
+class SearchEvent extends jdk.jfr.Event {
+    @Label("Pool")
+    String pool;
+
+    @Label("Pool Size")
+    int poolSize;
+
+    @Label("Nodes Expanded")
+    int nodes;
+
+    @Label("Leaves Collected")
+    int leaves;
+
+    @Label("Branches Pruned")
+    int pruned;
+
+    @Label("Chosen Efficiency")
+    double efficiency;
+
+    @Label("Planned Ahead")
+    boolean planned;
+
+    @Label("Mails Chosen")
+    int mails;
+}
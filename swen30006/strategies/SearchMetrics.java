@@ -0,0 +1,202 @@
+package strategies;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals over the searches a pool made to fill storage tubes: nodes expanded, leaves collected,
+ * branches pruned, pool size, efficiency of the chosen combination, CPU time and wall-clock latency, the
+ * latter and the node counts also as histograms. A combination planned ahead of time counts the search that planned it, while
+ * the latency is only that of handing it out. A pool only measures its searches while it has metrics
+ * attached, so leaving them off costs nothing. Safe to share between pools and threads.
+ */
+public class SearchMetrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME_SUPPORTED = THREADS.isCurrentThreadCpuTimeSupported()
+            && THREADS.isThreadCpuTimeEnabled();
+
+    private final LongAdder dispatches = new LongAdder();
+    private final LongAdder planned = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder leaves = new LongAdder();
+    private final LongAdder pruned = new LongAdder();
+    private final LongAdder poolSizes = new LongAdder();
+    private final LongAccumulator maxPoolSize = new LongAccumulator(Math::max, 0);
+    private final DoubleAdder efficiencies = new DoubleAdder();
+    private final LongAdder cpuTimes = new LongAdder();
+    private final Histogram latencies = new Histogram();
+    private final Histogram nodeCounts = new Histogram();
+
+    /***
+     * Count one search
+     * @param poolSize number of mails in the pool when the search started
+     * @param nodeCount nodes expanded
+     * @param leafCount leaves collected
+     * @param prunedCount branches not followed
+     * @param efficiency efficiency of the combination handed out
+     * @param latencyNanos wall-clock time of the whole call, including repeated searches after a lost claim
+     */
+    public void record(int poolSize, int nodeCount, int leafCount, int prunedCount, double efficiency,
+                       long latencyNanos) {
+        record(poolSize, nodeCount, leafCount, prunedCount, efficiency, latencyNanos, false);
+    }
+
+    /***
+     * Count one search
+     * @param poolSize number of mails in the pool when the search started
+     * @param nodeCount nodes expanded
+     * @param leafCount leaves collected
+     * @param prunedCount branches not followed
+     * @param efficiency efficiency of the combination handed out
+     * @param latencyNanos wall-clock time of the whole call, including repeated searches after a lost claim
+     * @param fromPlan whether the combination was searched for ahead of time
+     */
+    public void record(int poolSize, int nodeCount, int leafCount, int prunedCount, double efficiency,
+                       long latencyNanos, boolean fromPlan) {
+        record(poolSize, nodeCount, leafCount, prunedCount, efficiency, latencyNanos, 0, fromPlan);
+    }
+
+    /***
+     * Count one search
+     * @param poolSize number of mails in the pool when the search started
+     * @param nodeCount nodes expanded
+     * @param leafCount leaves collected
+     * @param prunedCount branches not followed
+     * @param efficiency efficiency of the combination handed out
+     * @param latencyNanos wall-clock time of the whole call, including repeated searches after a lost claim
+     * @param cpuNanos CPU time of the call plus that of planning the combination ahead of time, see
+     *                 threadCpuTime
+     * @param fromPlan whether the combination was searched for ahead of time
+     */
+    public void record(int poolSize, int nodeCount, int leafCount, int prunedCount, double efficiency,
+                       long latencyNanos, long cpuNanos, boolean fromPlan) {
+        dispatches.increment();
+        if (fromPlan)
+            planned.increment();
+        nodes.add(nodeCount);
+        leaves.add(leafCount);
+        pruned.add(prunedCount);
+        poolSizes.add(poolSize);
+        maxPoolSize.accumulate(poolSize);
+        efficiencies.add(efficiency);
+        cpuTimes.add(cpuNanos);
+        latencies.record(latencyNanos);
+        nodeCounts.record(nodeCount);
+    }
+
+    /***
+     * @return number of searches recorded
+     */
+    public long getDispatches() {
+        return dispatches.sum();
+    }
+
+    /***
+     * @return number of searches whose combination was planned ahead of time
+     */
+    public long getPlanned() {
+        return planned.sum();
+    }
+
+    /***
+     * @return total nodes expanded
+     */
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    /***
+     * @return total leaves collected
+     */
+    public long getLeaves() {
+        return leaves.sum();
+    }
+
+    /***
+     * @return total branches pruned
+     */
+    public long getPruned() {
+        return pruned.sum();
+    }
+
+    /***
+     * @return mean number of mails in the pool when a search started, 0 before any search
+     */
+    public double getMeanPoolSize() {
+        long n = getDispatches();
+        return n == 0 ? 0 : (double) poolSizes.sum() / n;
+    }
+
+    /***
+     * @return largest number of mails in the pool when a search started
+     */
+    public long getMaxPoolSize() {
+        return maxPoolSize.get();
+    }
+
+    /***
+     * @return mean efficiency of the combinations handed out, 0 before any search
+     */
+    public double getMeanEfficiency() {
+        long n = getDispatches();
+        return n == 0 ? 0 : efficiencies.sum() / n;
+    }
+
+    /***
+     * @return total CPU time of the searches in nanoseconds
+     */
+    public long getCpuNanos() {
+        return cpuTimes.sum();
+    }
+
+    /***
+     * @return wall-clock latency of each call in nanoseconds
+     */
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    /***
+     * @return nodes expanded by each call
+     */
+    public Histogram getNodeCounts() {
+        return nodeCounts;
+    }
+
+    /***
+     * Forget every recorded search
+     */
+    public void reset() {
+        dispatches.reset();
+        planned.reset();
+        nodes.reset();
+        leaves.reset();
+        pruned.reset();
+        poolSizes.reset();
+        maxPoolSize.reset();
+        efficiencies.reset();
+        cpuTimes.reset();
+        latencies.reset();
+        nodeCounts.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("searches=%d planned=%d nodes=%d leaves=%d pruned=%d pool(mean=%.1f max=%d)"
+                        + " efficiency=%.3f cpu=%dms latency(ns)[%s] nodes[%s]", getDispatches(), getPlanned(),
+                getNodes(), getLeaves(), getPruned(), getMeanPoolSize(), getMaxPoolSize(), getMeanEfficiency(),
+                getCpuNanos() / 1000000, latencies, nodeCounts);
+    }
+
+    /***
+     * CPU time of the calling thread, falling back to wall-clock time where the JVM cannot measure it. Work a
+     * PARALLEL search hands to the fork-join pool runs on other threads and is not included.
+     * @return nanoseconds, only meaningful as a difference
+     */
+    public static long threadCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+}
@@ -0,0 +1,11 @@
+package strategies;
+
+/**
+ * How AdvancedMailPool explores its search tree
+ */
+public enum SearchMode {
+    /** Explore every branch on the calling thread */
+    SERIAL,
+    /** Explore branches as fork-join tasks on the common pool */
+    PARALLEL
+}
@@ -0,0 +1,102 @@
+package strategies;
+
+import java.io.Serializable;
+
+/**
+ * Tuning constants of the tree search of AdvancedMailPool: how deep the tree goes, how many mails are sampled
+ * at each node, how far ahead of the current time combinations are scored and how many of the most urgent
+ * mails the search may choose from. Immutable.
+ */
+public final class SearchParameters implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** The constants the search was tuned with by hand */
+    public static final SearchParameters DEFAULT = new SearchParameters(4, 17, 1000);
+
+    private final int maxDepth;
+    private final int maxBranches;
+    private final int overshot;
+    private final int candidateLimit;
+
+    /***
+     * Parameters letting the search choose from the whole pool
+     * @param maxDepth maximum number of mails the tree chooses, capped by the capacity of a storage tube. A
+     *                 tube with room for more is topped up greedily.
+     * @param maxBranches maximum number of mails sampled at each node of the tree
+     * @param overshot time added to the current time when scoring a combination, overestimating its score
+     */
+    public SearchParameters(int maxDepth, int maxBranches, int overshot) {
+        this(maxDepth, maxBranches, overshot, 0);
+    }
+
+    /***
+     * @param maxDepth maximum number of mails the tree chooses, capped by the capacity of a storage tube. A
+     *                 tube with room for more is topped up greedily.
+     * @param maxBranches maximum number of mails sampled at each node of the tree
+     * @param overshot time added to the current time when scoring a combination, overestimating its score
+     * @param candidateLimit number of the most urgent mails on each side of the mailroom the search may
+     *                       choose from, 0 for the whole pool
+     */
+    public SearchParameters(int maxDepth, int maxBranches, int overshot, int candidateLimit) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Search depth must be at least 1, got " + maxDepth);
+        if (maxBranches < 1)
+            throw new IllegalArgumentException("Branching factor must be at least 1, got " + maxBranches);
+        if (overshot < 0)
+            throw new IllegalArgumentException("Negative overshot: " + overshot);
+        if (candidateLimit < 0)
+            throw new IllegalArgumentException("Negative candidate limit: " + candidateLimit);
+        this.maxDepth = maxDepth;
+        this.maxBranches = maxBranches;
+        this.overshot = overshot;
+        this.candidateLimit = candidateLimit;
+    }
+
+    /***
+     * @return maximum number of mails the tree chooses
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /***
+     * @return maximum number of mails sampled at each node
+     */
+    public int getMaxBranches() {
+        return maxBranches;
+    }
+
+    /***
+     * @return time added to the current time when scoring a combination
+     */
+    public int getOvershot() {
+        return overshot;
+    }
+
+    /***
+     * @return number of the most urgent mails per side of the mailroom the search chooses from, 0 for all
+     */
+    public int getCandidateLimit() {
+        return candidateLimit;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof SearchParameters))
+            return false;
+        SearchParameters that = (SearchParameters) other;
+        return maxDepth == that.maxDepth && maxBranches == that.maxBranches && overshot == that.overshot
+                && candidateLimit == that.candidateLimit;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((maxDepth * 31 + maxBranches) * 31 + overshot) * 31 + candidateLimit;
+    }
+
+    @Override
+    public String toString() {
+        return "depth=" + maxDepth + " branches=" + maxBranches + " overshot=" + overshot
+                + (candidateLimit == 0 ? "" : " candidates=" + candidateLimit);
+    }
+}
@@ -1,37 +1,59 @@
 package strategies;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Stack;
 
 import automail.MailItem;
-import automail.IMailPool;
+import automail.IDrainablePool;
+import automail.Scenario;
 
 /**
  * Sample of what a MailPool could look like.
  * This one tosses the incoming mail on a pile and takes the outgoing mail from the top.
  */
-public class SimpleMailPool implements IMailPool {
+public class SimpleMailPool implements IDrainablePool, Serializable {
+    private static final long serialVersionUID = 1L;
 
     /** Stack of mailItems pending delivery*/
     private Stack<MailItem> mailItems;
+    private final Scenario scenario;
 
     public SimpleMailPool(){
+        this(Scenario.DEFAULT);
+    }
+
+    public SimpleMailPool(Scenario scenario){
         mailItems = new Stack<MailItem>();
+        this.scenario = scenario;
     }
 
     @Override
-    public void addToPool(MailItem mailItem){
+    public synchronized void addToPool(MailItem mailItem){
         mailItems.push(mailItem);
     }
     
-    public boolean isEmptyPool(){
+    public synchronized boolean isEmptyPool(){
         return mailItems.isEmpty();
     }
     
-    public MailItem get(){
+    @Override
+    public synchronized List<MailItem> drainPool(){
+        List<MailItem> drained = new ArrayList<MailItem>(mailItems);
+        mailItems.clear();
+        return drained;
+    }
+    
+    public synchronized MailItem get(){
     	return mailItems.peek();
     }
     
-    public void remove(){
+    public synchronized void remove(){
         mailItems.pop();
     }
 
+    public Scenario getScenario(){
+        return scenario;
+    }
+
 }
@@ -2,6 +2,8 @@ package strategies;
 
 import exceptions.TubeFullException;
 
+import java.io.Serializable;
+
 import automail.MailItem;
 import automail.IMailSorter;
 import automail.Clock;
@@ -12,7 +14,8 @@ import automail.StorageTube;
  * from the MailPool (if there is one) and attempts to add it to the Robot's storageTube.
  * If the MailItem doesn't fit, it will tell the robot to start delivering (return true).
  */
-public class SimpleMailSorter implements IMailSorter{
+public class SimpleMailSorter implements IMailSorter, Serializable {
+	private static final long serialVersionUID = 1L;
 
 	SimpleMailPool simpleMailPool;
 	
@@ -27,13 +30,16 @@ public class SimpleMailSorter implements IMailSorter{
 
     	// System.out.println("SimpleMailPool.mailItems.count: "+SimpleMailPool.mailItems.size());
         try{
-            if (!simpleMailPool.isEmptyPool()) {
-	            /** Gets the first item from the ArrayList */
-	            MailItem mailItem = simpleMailPool.get();
-	            /** Add the item to the tube */
-	            tube.addItem(mailItem);
-	            /** Remove the item from the ArrayList */
-	            simpleMailPool.remove();
+            /** Hold the pool so no other robot takes the same item between get and remove */
+            synchronized (simpleMailPool) {
+	            if (!simpleMailPool.isEmptyPool()) {
+		            /** Gets the first item from the ArrayList */
+		            MailItem mailItem = simpleMailPool.get();
+		            /** Add the item to the tube */
+		            tube.addItem(mailItem);
+		            /** Remove the item from the ArrayList */
+		            simpleMailPool.remove();
+	            }
             }
         }
         /** Refer to TubeFullException.java --
@@ -47,10 +53,25 @@ public class SimpleMailSorter implements IMailSorter{
          * Handles the case where the last delivery time has elapsed and there are no more
          * items to deliver.
          */
-        if(Clock.Time() > Clock.LAST_DELIVERY_TIME && simpleMailPool.isEmptyPool() && !tube.isEmpty()){
+        if(Clock.Time() > simpleMailPool.getScenario().getLastDeliveryTime() && simpleMailPool.isEmptyPool() && !tube.isEmpty()){
             return true;
         }
         return false;
 
     }
+
+    /**
+     * With an empty pool nothing happens until the last delivery time has passed, and then only if
+     * the tube holds something to deliver
+     */
+    @Override
+    public int idleUntil(StorageTube tube) {
+        if (!simpleMailPool.isEmptyPool()) {
+            return Clock.Time();
+        }
+        if (tube.isEmpty()) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(Clock.Time(), simpleMailPool.getScenario().getLastDeliveryTime() + 1);
+    }
 }
@@ -0,0 +1,104 @@
+package strategies;
+
+import automail.MailItem;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Plans the next load of one robot on a background thread while the robot is out delivering, so the search
+ * is done by the time it is back in the mailroom. Planning starts when the robot leaves and is for the time
+ * step it will be back on. Whenever mails enter or leave the pool the plan is searched for again, and a
+ * search still running gives way to the change at once. A plan is only used when nothing changed since it
+ * was made, so the robot gets exactly the load it would have searched for itself.
+ */
+class SpeculativePlanner {
+    private final AdvancedMailPool pool;
+    private final Executor executor;
+    private final Runnable listener = this::poolChanged;
+
+    // guarded by this
+    private boolean active;
+    private boolean scheduled;
+    private int generation;     // changes every time the robot leaves or comes back
+    private int time;
+    private AdvancedMailPool.Plan plan;
+
+    SpeculativePlanner(AdvancedMailPool pool, Executor executor) {
+        this.pool = pool;
+        this.executor = executor;
+        pool.addChangeListener(listener);
+    }
+
+    /***
+     * Start planning for the robot that just left
+     * @param returnTime time step on which the robot will be back asking for mail
+     */
+    synchronized void planFor(int returnTime) {
+        active = true;
+        generation++;
+        time = returnTime;
+        plan = null;
+        schedule();
+    }
+
+    /***
+     * Hand the robot its next load, from the plan when it is still valid
+     * @return list of mails, empty if the pool ran dry
+     */
+    List<MailItem> takeMails() {
+        return pool.getMails(cancel());
+    }
+
+    /***
+     * Stop planning until the robot leaves again
+     * @return the plan made so far, may be null
+     */
+    synchronized AdvancedMailPool.Plan cancel() {
+        AdvancedMailPool.Plan ready = plan;
+        active = false;
+        generation++;
+        plan = null;
+        return ready;
+    }
+
+    /***
+     * Stop planning for good
+     */
+    void close() {
+        pool.removeChangeListener(listener);
+        cancel();
+    }
+
+    private synchronized void poolChanged() {
+        if (active)
+            schedule();
+    }
+
+    /** Queue a search unless one is queued already. The caller must hold the monitor. */
+    private void schedule() {
+        if (scheduled)
+            return;
+        scheduled = true;
+        executor.execute(this::replan);
+    }
+
+    private void replan() {
+        int planGeneration;
+        int planTime;
+        synchronized (this) {
+            scheduled = false;
+            if (!active)
+                return;
+            planGeneration = generation;
+            planTime = time;
+        }
+
+        // a change from here on queues another search, so the last plan kept is never older than the pool
+        AdvancedMailPool.Plan next = pool.plan(planTime);
+        synchronized (this) {
+            if (next != null && planGeneration == generation)
+                plan = next;
+        }
+    }
+}
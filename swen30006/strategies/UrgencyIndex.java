@@ -0,0 +1,366 @@
+package strategies;
+
+import automail.MailItem;
+import automail.Priority;
+import automail.Scenario;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+/**
+ * Index over the positions of a pool ranking mails by what delivering them would add to the score, so a
+ * search can be limited to the K most urgent mails on each side of the mailroom. Mails are kept in one binary
+ * heap per destination floor and priority, oldest first. Within a heap the oldest mail contributes the most
+ * whatever the time, so the heaps never need reordering as the clock moves and only the comparison across
+ * heaps depends on the time. Adding, removing and moving a position are O(log n), and selecting the K most
+ * urgent mails of a side is O((B + K) log(B + K)) for its B heaps, whatever the size of the pool.
+ * Selections reuse scratch arrays sized to K, so they take turns; the pool only keeps an index while its
+ * searches are limited to K mails.
+ */
+class UrgencyIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int SIDES = 3;
+    private static final int INITIAL_HEAP_CAPACITY = 16;
+    private static final double PENALTY = 1.1;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final int priorityCount = MailItem.PRIORITY_LEVELS.length;
+    private final int sizeCount = MailItem.POSSIBLE_SIZES.length;
+    private final int floors;
+    private final int lowestFloor;
+    private final int mailroom;
+    private final int[][] heaps;        // pool positions of each floor and priority, as binary heaps
+    private final int[] heapCounts;
+    private long[] orderOf;             // arrival time and key of each pool position, smallest oldest
+    private int[] sizeIndexOf;          // index in MailItem.POSSIBLE_SIZES of each pool position
+    private int[] heapOf;               // heap of each pool position
+    private int[] slotOf;               // index of each pool position within its heap
+
+    // scratch space of select, sized to the last limit
+    private transient double[] frontierScores;
+    private transient int[] frontierHeaps;
+    private transient int[] frontierSlots;
+    private transient int[] taken;
+
+    UrgencyIndex(int initialCapacity, Scenario scenario) {
+        floors = scenario.getFloors();
+        lowestFloor = scenario.getLowestFloor();
+        mailroom = scenario.getMailroomLocation();
+        int heapTotal = floors * priorityCount;
+        heaps = new int[heapTotal][];
+        heapCounts = new int[heapTotal];
+        orderOf = new long[initialCapacity];
+        sizeIndexOf = new int[initialCapacity];
+        heapOf = new int[initialCapacity];
+        slotOf = new int[initialCapacity];
+    }
+
+    /***
+     * Index a new pool position
+     * @param position pool position of the mail
+     * @param floor destination floor of the mail
+     * @param sizeIndex index of the mail's size in MailItem.POSSIBLE_SIZES
+     * @param priority index of the mail's priority level in MailItem.PRIORITY_LEVELS
+     * @param arrival arrival time of the mail
+     * @param key key of the mail in the pool, breaking ties between mails that arrived together
+     */
+    void add(int position, int floor, int sizeIndex, int priority, int arrival, int key) {
+        if (position >= heapOf.length) {
+            int capacity = Math.max(position + 1, heapOf.length * 2);
+            orderOf = Arrays.copyOf(orderOf, capacity);
+            sizeIndexOf = Arrays.copyOf(sizeIndexOf, capacity);
+            heapOf = Arrays.copyOf(heapOf, capacity);
+            slotOf = Arrays.copyOf(slotOf, capacity);
+        }
+        int heap = (floor - lowestFloor) * priorityCount + priority;
+        // tall buildings have many floors nobody sends mail to, so heaps are only made once needed
+        if (heaps[heap] == null)
+            heaps[heap] = new int[INITIAL_HEAP_CAPACITY];
+        if (heapCounts[heap] == heaps[heap].length)
+            heaps[heap] = Arrays.copyOf(heaps[heap], heapCounts[heap] * 2);
+        orderOf[position] = ((long) arrival << 32) | key;
+        sizeIndexOf[position] = sizeIndex;
+        heapOf[position] = heap;
+        int slot = heapCounts[heap]++;
+        place(heap, slot, position);
+        siftUp(heap, slot);
+    }
+
+    /***
+     * Forget a pool position
+     * @param position pool position of the mail
+     */
+    void remove(int position) {
+        int heap = heapOf[position];
+        int slot = slotOf[position];
+        int last = heaps[heap][--heapCounts[heap]];
+        if (slot == heapCounts[heap])
+            return;
+        place(heap, slot, last);
+        siftDown(heap, slot);
+        siftUp(heap, slotOf[last]);
+    }
+
+    /***
+     * Record that the mail at one pool position now lives at another
+     * @param from old pool position
+     * @param to new pool position, not currently indexed
+     */
+    void move(int from, int to) {
+        int heap = heapOf[from];
+        int slot = slotOf[from];
+        heaps[heap][slot] = to;
+        orderOf[to] = orderOf[from];
+        sizeIndexOf[to] = sizeIndexOf[from];
+        heapOf[to] = heap;
+        slotOf[to] = slot;
+    }
+
+    /***
+     * The most urgent mails of every side of the mailroom: those adding the most to the score if delivered
+     * straight from the mailroom at the given time plus the overshot, as the search estimates it
+     * @param time clock time of the search
+     * @param overshot time the search adds when scoring
+     * @param limit maximum number of mails per side
+     * @return the selected mails
+     */
+    synchronized Selection select(int time, int overshot, int limit) {
+        int frontierCapacity = floors * priorityCount + 2 * limit;
+        if (taken == null || taken.length != limit) {
+            frontierScores = new double[frontierCapacity];
+            frontierHeaps = new int[frontierCapacity];
+            frontierSlots = new int[frontierCapacity];
+            taken = new int[limit];
+        }
+        Selection selection = new Selection(sizeCount);
+        for (int side = 0; side < SIDES; side++) {
+            int takenCount = top(side, time + overshot, limit);
+            selection.setSide(side, taken, takenCount, sizeIndexOf);
+        }
+        return selection;
+    }
+
+    /***
+     * Walk the heaps of one side from their roots, always taking the most urgent mail at the edge of what
+     * was taken so far. The children of a taken mail are the only mails of its heap that may come next.
+     * @param side side of the mailroom
+     * @param deliveryTime time the score is projected at
+     * @param limit maximum number of mails
+     * @return number of pool positions written into taken, most urgent first
+     */
+    private int top(int side, int deliveryTime, int limit) {
+        double[] scores = frontierScores;
+        int[] frontierHeaps = this.frontierHeaps;
+        int[] frontierSlots = this.frontierSlots;
+        int frontierSize = 0;
+        for (int floor = lowestFloor; floor < lowestFloor + floors; floor++) {
+            if (MailBucketIndex.sideOf(floor, mailroom) != side)
+                continue;
+            for (int priority = 0; priority < priorityCount; priority++) {
+                int heap = (floor - lowestFloor) * priorityCount + priority;
+                if (heapCounts[heap] > 0)
+                    frontierSize = offer(scores, frontierHeaps, frontierSlots, frontierSize, heap, 0, deliveryTime);
+            }
+        }
+
+        int takenCount = 0;
+        while (takenCount < limit && frontierSize > 0) {
+            int heap = frontierHeaps[0];
+            int slot = frontierSlots[0];
+            taken[takenCount++] = heaps[heap][slot];
+
+            // pop the most urgent, then push its children
+            frontierSize--;
+            scores[0] = scores[frontierSize];
+            frontierHeaps[0] = frontierHeaps[frontierSize];
+            frontierSlots[0] = frontierSlots[frontierSize];
+            siftDownFrontier(scores, frontierHeaps, frontierSlots, frontierSize);
+            for (int child = 2 * slot + 1; child <= 2 * slot + 2 && child < heapCounts[heap]; child++) {
+                frontierSize = offer(scores, frontierHeaps, frontierSlots, frontierSize, heap, child, deliveryTime);
+            }
+        }
+        return takenCount;
+    }
+
+    /** Push a heap entry onto the frontier, a max-heap by projected score */
+    private int offer(double[] scores, int[] frontierHeaps, int[] frontierSlots, int size, int heap, int slot,
+                      int deliveryTime) {
+        double score = projectedScore(heap, heaps[heap][slot], deliveryTime);
+        int i = size;
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (scores[parent] >= score)
+                break;
+            scores[i] = scores[parent];
+            frontierHeaps[i] = frontierHeaps[parent];
+            frontierSlots[i] = frontierSlots[parent];
+            i = parent;
+        }
+        scores[i] = score;
+        frontierHeaps[i] = heap;
+        frontierSlots[i] = slot;
+        return size + 1;
+    }
+
+    private static void siftDownFrontier(double[] scores, int[] frontierHeaps, int[] frontierSlots, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && scores[left] > scores[largest])
+                largest = left;
+            if (right < size && scores[right] > scores[largest])
+                largest = right;
+            if (largest == i)
+                return;
+            swap(scores, i, largest);
+            swap(frontierHeaps, i, largest);
+            swap(frontierSlots, i, largest);
+            i = largest;
+        }
+    }
+
+    /** Score of delivering the mail alone, straight from the mailroom, as AdvancedMailPool estimates it */
+    private double projectedScore(int heap, int position, int deliveryTime) {
+        int floor = heap / priorityCount + lowestFloor;
+        int arrival = (int) (orderOf[position] >>> 32);
+        int waited = deliveryTime + Math.abs(floor - mailroom) - arrival;
+        return Math.pow(Math.max(waited, 0), PENALTY) * PRIORITIES[heap % priorityCount].weight();
+    }
+
+    private void place(int heap, int slot, int position) {
+        heaps[heap][slot] = position;
+        slotOf[position] = slot;
+    }
+
+    private void siftUp(int heap, int slot) {
+        int position = heaps[heap][slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            int parentPosition = heaps[heap][parent];
+            if (orderOf[parentPosition] <= orderOf[position])
+                break;
+            place(heap, slot, parentPosition);
+            slot = parent;
+        }
+        place(heap, slot, position);
+    }
+
+    private void siftDown(int heap, int slot) {
+        int position = heaps[heap][slot];
+        int count = heapCounts[heap];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= count)
+                break;
+            if (child + 1 < count && orderOf[heaps[heap][child + 1]] < orderOf[heaps[heap][child]])
+                child++;
+            if (orderOf[heaps[heap][child]] >= orderOf[position])
+                break;
+            place(heap, slot, heaps[heap][child]);
+            slot = child;
+        }
+        place(heap, slot, position);
+    }
+
+    private static void swap(double[] values, int i, int j) {
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    private static void swap(int[] values, int i, int j) {
+        int value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    /***
+     * The mails a search may choose from, per side of the mailroom and sorted by size so the mails small
+     * enough for a node are always a prefix
+     */
+    static final class Selection {
+        private final int[][] positions = new int[SIDES][];
+        private final int[][] fitting;      // number of mails of each side with at most each size
+        private int total;
+
+        private Selection(int sizeCount) {
+            fitting = new int[SIDES][sizeCount];
+        }
+
+        private void setSide(int side, int[] taken, int takenCount, int[] sizeIndexOf) {
+            int[] counts = fitting[side];
+            for (int i = 0; i < takenCount; i++) {
+                counts[sizeIndexOf[taken[i]]]++;
+            }
+            for (int s = 1; s < counts.length; s++) {
+                counts[s] += counts[s - 1];
+            }
+            // stable counting sort, keeping the most urgent first within a size
+            int[] sorted = new int[takenCount];
+            int[] next = new int[counts.length];
+            for (int s = 1; s < counts.length; s++) {
+                next[s] = counts[s - 1];
+            }
+            for (int i = 0; i < takenCount; i++) {
+                sorted[next[sizeIndexOf[taken[i]]]++] = taken[i];
+            }
+            positions[side] = sorted;
+            total += sorted.length;
+        }
+
+        /***
+         * @return number of mails selected over every side
+         */
+        int size() {
+            return total;
+        }
+
+        /***
+         * Mail at the given index of the sides laid end to end
+         * @param index between 0 and size()
+         * @return pool position of the mail
+         */
+        int positionAt(int index) {
+            for (int[] side : positions) {
+                if (index < side.length)
+                    return side[index];
+                index -= side.length;
+            }
+            throw new IndexOutOfBoundsException("No mail at " + index);
+        }
+
+        /***
+         * Choose distinct random mails of one side with at most the given size (Floyd's algorithm)
+         * @param random source of randomness
+         * @param side side of the mailroom
+         * @param maxSize largest size that still fits
+         * @param count maximum number of positions to choose
+         * @param chosen array receiving the chosen positions
+         * @return number of positions chosen, the smaller of count and the number of matching mails
+         */
+        int sample(RandomGenerator random, int side, int maxSize, int count, int[] chosen) {
+            int eligible = 0;
+            for (int s = 0; s < fitting[side].length && MailItem.POSSIBLE_SIZES[s] <= maxSize; s++) {
+                eligible = fitting[side][s];
+            }
+
+            int[] sorted = positions[side];
+            count = Math.min(count, eligible);
+            int chosenCount = 0;
+            for (int j = eligible - count; j < eligible; j++) {
+                int position = sorted[random.nextInt(j + 1)];
+                for (int k = 0; k < chosenCount; k++) {
+                    if (chosen[k] == position) {
+                        position = sorted[j];
+                        break;
+                    }
+                }
+                chosen[chosenCount++] = position;
+            }
+            return chosenCount;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package automail;
+
+import java.util.HashMap;
+
+import strategies.MailStrategy;
+import strategies.SearchMetrics;
+
+/**
+ * Finds the load a strategy keeps up with. Each rate of the sweep runs one arrival model, scaled to that mean
+ * rate of mail per step, over the arrival window and no further. The backlog is sampled as the run goes, and
+ * the cost of the pool's searches is measured per half of the window. Below the load the fleet can carry,
+ * the backlog levels off and searches cost the same throughout. Above it, the backlog grows with time and
+ * with it the pool every search works on, which shows as backlog growth and a search cost that keeps rising.
+ * Skewing the floors or the priorities of the mail moves that load: hot floors cut the travel per load, while
+ * more HIGH mail makes every late delivery cost more.
+ */
+public class LoadBenchmark {
+
+    /** Times the backlog is sampled over the arrival window */
+    private static final int SAMPLES = 10;
+    /** A backlog growing by more than this share of the arrivals over the second half is not stable */
+    private static final double STABLE_GROWTH = 0.05;
+    /** Nor are searches costing more than this many times as much in the second half as in the first */
+    private static final double STABLE_SEARCH_GROWTH = 2;
+
+    /** Shapes of each model with a mean of one mail per step, a burst every 100 steps, a peak each morning */
+    private static final double[] DIURNAL_CURVE = {0.25, 2.5, 1.25, 1.25, 0.5, 0.25};
+
+    private final int seed;
+    private final int steps;
+    private final int robots;
+    private final MailStrategy strategy;
+
+    /**
+     * Usage: LoadBenchmark seed steps robots model rates [zipf] [strategy] [priorities]
+     * where model is poisson, bursty or diurnal, rates a comma separated list of mean mail per step such as
+     * 0.2,0.4,0.8, zipf the exponent of the floors' skew from the mailroom up, 0 for uniform floors, and
+     * priorities the shares of LOW, MEDIUM and HIGH mail such as 1,1,4, uniform when left out
+     */
+    public static void main(String[] args){
+        if(args.length < 5){
+            System.out.println("Usage: LoadBenchmark seed steps robots model rates [zipf] [strategy] [priorities]");
+            return;
+        }
+        int steps = Integer.parseInt(args[1]);
+        ArrivalModel shape = shapeOf(args[3], steps);
+        double exponent = args.length > 5 ? Double.parseDouble(args[5]) : 0;
+        FloorDistribution floors = exponent == 0 ? FloorDistribution.UNIFORM :
+                FloorDistribution.zipf(exponent, Scenario.DEFAULT.getMailroomLocation());
+        MailStrategy strategy = args.length > 6 ? MailStrategy.valueOf(args[6]) : MailStrategy.ADVANCED;
+        PriorityDistribution priorities = args.length > 7 ? prioritiesOf(args[7]) : PriorityDistribution.UNIFORM;
+        String[] rates = args[4].split(",");
+
+        LoadBenchmark benchmark = new LoadBenchmark(Integer.parseInt(args[0]), steps, Integer.parseInt(args[2]),
+                strategy);
+        System.out.println(strategy + " with " + args[2] + " robots over " + steps + " steps, " + args[3]
+                + " arrivals to " + floors + " floors, " + priorities + " priorities");
+        System.out.println(benchmark.generate(shape.scaled(Double.parseDouble(rates[rates.length - 1])), floors,
+                priorities));
+        for(String rate : rates){
+            System.out.println(benchmark.run(shape.scaled(Double.parseDouble(rate.trim())), floors, priorities));
+        }
+    }
+
+    /**
+     * Constructor for a benchmark
+     * @param seed seed of every run
+     * @param steps length of the arrival window
+     * @param robots size of the fleet
+     * @param strategy mail pool and sorter to measure
+     */
+    public LoadBenchmark(int seed, int steps, int robots, MailStrategy strategy){
+        if(steps < 2 * SAMPLES){
+            throw new IllegalArgumentException("An arrival window of " + steps + " steps is too short to sample");
+        }
+        this.seed = seed;
+        this.steps = steps;
+        this.robots = robots;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Runs the model over the arrival window, sampling the backlog. Only the ADVANCED strategy records its
+     * searches, for the others the search cost is not reported.
+     * @param model arrivals of the run
+     * @param floors floors the mail goes to
+     * @param priorities priorities of the mail
+     * @return one line of the backlog, its growth, the search cost and whether the load is stable
+     */
+    public String run(ArrivalModel model, FloorDistribution floors, PriorityDistribution priorities){
+        Simulation simulation = new Simulation(seed, strategy);
+        simulation.setScenario(Scenario.DEFAULT.withLastDeliveryTime(steps));
+        simulation.setRobotCount(robots);
+        simulation.setArrivalModel(model);
+        simulation.setFloorDistribution(floors);
+        simulation.setPriorityDistribution(priorities);
+        SearchMetrics metrics = new SearchMetrics();
+        simulation.setSearchMetrics(metrics);
+
+        int[] backlog = new int[SAMPLES + 1];
+        double[] searchNanos = new double[2];
+        for(int sample = 1; sample <= SAMPLES; sample++){
+            simulation.runUntil(steps * sample / SAMPLES + 1);
+            backlog[sample] = simulation.getBacklog();
+            if(sample == SAMPLES / 2 || sample == SAMPLES){
+                searchNanos[sample == SAMPLES ? 1 : 0] = metrics.getDispatches() == 0 ? 0 :
+                        (double) metrics.getCpuNanos() / metrics.getDispatches();
+                metrics.reset();
+            }
+        }
+        int arrivals = simulation.getLedger().getDeliveredCount() + backlog[SAMPLES];
+
+        double halfArrivals = model.getMeanRate() * (steps - steps / 2);
+        double growth = (backlog[SAMPLES] - backlog[SAMPLES / 2]) / Math.max(1, halfArrivals);
+        boolean stable = growth <= STABLE_GROWTH
+                && (searchNanos[0] == 0 || searchNanos[1] <= STABLE_SEARCH_GROWTH * searchNanos[0]);
+        StringBuilder samples = new StringBuilder();
+        for(int sample = 1; sample <= SAMPLES; sample++){
+            samples.append(sample == 1 ? "" : " ").append(backlog[sample]);
+        }
+        return String.format("rate %8.2f/step: %9d arrivals, backlog [%s], growth %5.1f%%, search %8.1fus then "
+                        + "%8.1fus per dispatch, %s", model.getMeanRate(), arrivals, samples, growth * 100,
+                searchNanos[0] / 1e3, searchNanos[1] / 1e3, stable ? "stable" : "NOT STABLE");
+    }
+
+    /**
+     * Generates the mail of a run without delivering it, to show the generator is not what limits the load
+     * @param model arrivals to generate
+     * @param floors floors the mail goes to
+     * @param priorities priorities of the mail
+     * @return one line of the mail generated and how fast
+     */
+    public String generate(ArrivalModel model, FloorDistribution floors, PriorityDistribution priorities){
+        Clock previous = Clock.current();
+        Clock.bind(new Clock());
+        try {
+            HashMap<Boolean, Integer> seedMap = new HashMap<>();
+            seedMap.put(true, seed);
+            long start = System.nanoTime();
+            ModelMailGenerator generator = new ModelMailGenerator(model, floors, priorities, MailItem::retire, seedMap,
+                    Scenario.DEFAULT.withLastDeliveryTime(steps));
+            while(!generator.isComplete()){
+                Clock.JumpTo(generator.nextArrivalTime());
+                generator.step();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            return String.format("generator: %d mail at %.2f/step in %.0fms, %.1fM mail/s", generator.getMailCreated(),
+                    model.getMeanRate(), seconds * 1e3, generator.getMailCreated() / seconds / 1e6);
+        } finally {
+            Clock.bind(previous);
+        }
+    }
+
+    /**
+     * @param shares comma separated shares of LOW, MEDIUM and HIGH mail
+     * @return distribution of the priorities
+     */
+    private static PriorityDistribution prioritiesOf(String shares){
+        String[] parts = shares.split(",");
+        double[] weights = new double[parts.length];
+        for(int p = 0; p < parts.length; p++){
+            weights[p] = Double.parseDouble(parts[p].trim());
+        }
+        return PriorityDistribution.weighted(weights);
+    }
+
+    /**
+     * @param name poisson, bursty or diurnal
+     * @param steps length of the arrival window, one day of the diurnal curve
+     * @return the model with a mean of one mail per step
+     */
+    private static ArrivalModel shapeOf(String name, int steps){
+        switch(name){
+            case "poisson":
+                return ArrivalModel.poisson(1);
+            case "bursty":
+                return ArrivalModel.bursty(3, 20, 0.5, 80);
+            case "diurnal":
+                return ArrivalModel.diurnal(DIURNAL_CURVE, steps);
+            default:
+                throw new IllegalArgumentException("Unknown arrival model " + name + ", expected poisson, bursty or diurnal");
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import strategies.MailStrategy;
+import strategies.SearchMetrics;
+import strategies.SearchParameters;
+
+/**
+ * Tunes the tree search of AdvancedMailPool by running configurations of SearchParameters, from a grid or
+ * drawn at random, over a range of seeds. Runs happen several at once, each with its own clock and pool.
+ * Compute is measured as the CPU time of the searches rather than wall-clock time, so it does not depend on
+ * how many runs share the machine. The result is the Pareto frontier of mean score against search CPU time.
+ */
+public class ParameterSweep {
+
+    private static final int RANDOM_MAX_BRANCHES = 32;
+    private static final int RANDOM_MAX_OVERSHOT = 2000;
+
+    private final int firstSeed;
+    private final int lastSeed;
+    private final int threads;
+
+    /**
+     * Usage: ParameterSweep firstSeed lastSeed threads grid depths branches overshots
+     *        ParameterSweep firstSeed lastSeed threads random samples [sweepSeed]
+     * where depths, branches and overshots are comma separated lists such as 2,3,4
+     */
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        if(args.length < 5 || !(args[3].equals("grid") && args.length == 7 || args[3].equals("random"))){
+            System.out.println("Usage: ParameterSweep firstSeed lastSeed threads grid depths branches overshots");
+            System.out.println("       ParameterSweep firstSeed lastSeed threads random samples [sweepSeed]");
+            return;
+        }
+        int firstSeed = Integer.parseInt(args[0]);
+        int lastSeed = Integer.parseInt(args[1]);
+        int threads = Integer.parseInt(args[2]);
+        List<SearchParameters> configurations;
+        if(args[3].equals("grid")){
+            configurations = grid(parseList(args[4]), parseList(args[5]), parseList(args[6]));
+        } else{
+            long sweepSeed = args.length > 5 ? Long.parseLong(args[5]) : 0;
+            configurations = random(Integer.parseInt(args[4]), sweepSeed, SearchParameters.DEFAULT.getMaxDepth(),
+                    RANDOM_MAX_BRANCHES, RANDOM_MAX_OVERSHOT);
+        }
+
+        ParameterSweep sweep = new ParameterSweep(firstSeed, lastSeed, threads);
+        long start = System.nanoTime();
+        List<SweepResult> results = sweep.run(configurations);
+        long elapsed = System.nanoTime() - start;
+        printResults(results, elapsed);
+    }
+
+    /**
+     * Constructor for a sweep
+     * @param firstSeed first seed every configuration runs, inclusive
+     * @param lastSeed last seed every configuration runs, inclusive
+     * @param threads number of simulations to run at once
+     */
+    public ParameterSweep(int firstSeed, int lastSeed, int threads){
+        if(lastSeed < firstSeed){
+            throw new IllegalArgumentException("Empty seed range " + firstSeed + ".." + lastSeed);
+        }
+        if(threads < 1){
+            throw new IllegalArgumentException("A sweep needs at least one thread, got " + threads);
+        }
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+        this.threads = threads;
+    }
+
+    /**
+     * Every combination of the given values
+     * @return configurations in the order depth, then branches, then overshot
+     */
+    public static List<SearchParameters> grid(int[] depths, int[] branches, int[] overshots){
+        List<SearchParameters> configurations = new ArrayList<>();
+        for(int depth : depths){
+            for(int branchCount : branches){
+                for(int overshot : overshots){
+                    configurations.add(new SearchParameters(depth, branchCount, overshot));
+                }
+            }
+        }
+        return configurations;
+    }
+
+    /**
+     * Distinct configurations drawn uniformly at random, always including SearchParameters.DEFAULT so the
+     * frontier can be compared against it
+     * @param samples number of configurations, the default among them
+     * @param sweepSeed seed of the draw
+     * @param maxDepth largest depth drawn
+     * @param maxBranches largest branching factor drawn
+     * @param maxOvershot largest overshot drawn
+     * @return configurations, the default first
+     */
+    public static List<SearchParameters> random(int samples, long sweepSeed, int maxDepth, int maxBranches,
+                                                int maxOvershot){
+        SplittableRandom random = new SplittableRandom(sweepSeed);
+        Set<SearchParameters> configurations = new LinkedHashSet<>();
+        configurations.add(SearchParameters.DEFAULT);
+        // a small space may hold fewer distinct configurations than asked for
+        for(int draw = 0; configurations.size() < samples && draw < samples * 10; draw++){
+            configurations.add(new SearchParameters(random.nextInt(1, maxDepth + 1),
+                    random.nextInt(1, maxBranches + 1), random.nextInt(maxOvershot + 1)));
+        }
+        return new ArrayList<>(configurations);
+    }
+
+    /**
+     * Runs every configuration over every seed of the sweep. Each configuration first runs the first seed
+     * unmeasured, so code the JIT compiler has not reached yet does not count against the first ones.
+     * @param configurations configurations of the search
+     * @return one result per configuration, in the given order
+     */
+    public List<SweepResult> run(List<SearchParameters> configurations)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<SimulationResult>> warmUps = new ArrayList<>();
+            for(SearchParameters parameters : configurations){
+                warmUps.add(executor.submit(() -> {
+                    Simulation simulation = new Simulation(firstSeed, MailStrategy.ADVANCED);
+                    simulation.setSearchParameters(parameters);
+                    return simulation.run();
+                }));
+            }
+            for(Future<SimulationResult> warmUp : warmUps){
+                warmUp.get();
+            }
+
+            int seedCount = lastSeed - firstSeed + 1;
+            List<Future<SimulationResult>> futures = new ArrayList<>();
+            List<SearchMetrics> metrics = new ArrayList<>();
+            for(SearchParameters parameters : configurations){
+                SearchMetrics configurationMetrics = new SearchMetrics();
+                metrics.add(configurationMetrics);
+                for(int seed = firstSeed; seed <= lastSeed; seed++){
+                    final int runSeed = seed;
+                    futures.add(executor.submit(() -> {
+                        Simulation simulation = new Simulation(runSeed, MailStrategy.ADVANCED);
+                        simulation.setSearchParameters(parameters);
+                        simulation.setSearchMetrics(configurationMetrics);
+                        return simulation.run();
+                    }));
+                }
+            }
+
+            List<SweepResult> results = new ArrayList<>(configurations.size());
+            for(int c = 0; c < configurations.size(); c++){
+                List<SimulationResult> runs = new ArrayList<>(seedCount);
+                for(int s = 0; s < seedCount; s++){
+                    runs.add(futures.get(c * seedCount + s).get());
+                }
+                SearchMetrics configurationMetrics = metrics.get(c);
+                results.add(new SweepResult(configurations.get(c), BatchSimulation.scoreStatistics(runs),
+                        BatchSimulation.deliveryTimeStatistics(runs), configurationMetrics.getCpuNanos(),
+                        configurationMetrics.getNodes()));
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * The results no other result dominates, see SweepResult.dominates
+     * @param results results over the same seeds
+     * @return the frontier, cheapest first
+     */
+    public static List<SweepResult> paretoFrontier(List<SweepResult> results){
+        List<SweepResult> frontier = new ArrayList<>();
+        for(SweepResult candidate : results){
+            boolean dominated = false;
+            for(SweepResult other : results){
+                if(other.dominates(candidate)){
+                    dominated = true;
+                    break;
+                }
+            }
+            if(!dominated){
+                frontier.add(candidate);
+            }
+        }
+        frontier.sort(Comparator.comparingDouble(SweepResult::getMeanSearchCpuNanos));
+        return frontier;
+    }
+
+    public static void printResults(List<SweepResult> results, long elapsedNanos){
+        System.out.println("Sweep complete! " + results.size() + " configurations in " + elapsedNanos / 1000000 + "ms");
+        for(SweepResult result : results){
+            System.out.println("  " + result);
+        }
+        System.out.println("Pareto frontier of score against search CPU time:");
+        for(SweepResult result : paretoFrontier(results)){
+            System.out.println("  " + result);
+        }
+    }
+
+    private static int[] parseList(String list){
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
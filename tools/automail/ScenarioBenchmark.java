@@ -0,0 +1,113 @@
+package automail;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import strategies.MailStrategy;
+import strategies.SearchMetrics;
+
+/**
+ * Measures how the search of a mail pool scales with the height of the building and the capacity of the
+ * tubes. Every scenario runs the same seeds; compute is the CPU time and the nodes of each search, so a
+ * search that blows up with the floors or the capacity shows as a growing cost per search.
+ */
+public class ScenarioBenchmark {
+
+    private static final int[] DEFAULT_FLOORS = {9, 100, 500, 1000};
+    private static final int[] DEFAULT_CAPACITIES = {4, 16, 32, 64};
+
+    private final int firstSeed;
+    private final int lastSeed;
+    private final int mailToCreate;
+    private final MailStrategy strategy;
+
+    /**
+     * Usage: ScenarioBenchmark firstSeed lastSeed mailToCreate [strategy] [floors] [capacities]
+     * where floors and capacities are comma separated lists such as 9,100,500
+     */
+    public static void main(String[] args){
+        if(args.length < 3){
+            System.out.println("Usage: ScenarioBenchmark firstSeed lastSeed mailToCreate [strategy] [floors] [capacities]");
+            return;
+        }
+        MailStrategy strategy = args.length > 3 ? MailStrategy.valueOf(args[3]) : MailStrategy.ADVANCED;
+        int[] floors = args.length > 4 ? parseList(args[4]) : DEFAULT_FLOORS;
+        int[] capacities = args.length > 5 ? parseList(args[5]) : DEFAULT_CAPACITIES;
+
+        List<Scenario> scenarios = new ArrayList<>();
+        for(int floorCount : floors){
+            for(int capacity : capacities){
+                scenarios.add(Scenario.DEFAULT.withFloors(floorCount).withTubeCapacity(capacity));
+            }
+        }
+        ScenarioBenchmark benchmark = new ScenarioBenchmark(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                Integer.parseInt(args[2]), strategy);
+        System.out.println(strategy + " with " + args[2] + " mail, seeds " + args[0] + ".." + args[1]);
+        for(Scenario scenario : scenarios){
+            System.out.println(benchmark.run(scenario));
+        }
+    }
+
+    /**
+     * Constructor for a benchmark
+     * @param firstSeed first seed every scenario runs, inclusive
+     * @param lastSeed last seed every scenario runs, inclusive
+     * @param mailToCreate how much mail arrives over each run
+     * @param strategy mail pool and sorter to measure
+     */
+    public ScenarioBenchmark(int firstSeed, int lastSeed, int mailToCreate, MailStrategy strategy){
+        if(lastSeed < firstSeed){
+            throw new IllegalArgumentException("Empty seed range " + firstSeed + ".." + lastSeed);
+        }
+        this.firstSeed = firstSeed;
+        this.lastSeed = lastSeed;
+        this.mailToCreate = mailToCreate;
+        this.strategy = strategy;
+    }
+
+    /**
+     * Runs every seed in the scenario, after one unmeasured run of the first seed to warm up the JIT compiler.
+     * Only the ADVANCED strategy records its searches, the others report the CPU time of whole runs.
+     * @param scenario building and tubes to run in
+     * @return one line of the cost per search and the mean score
+     */
+    public String run(Scenario scenario){
+        simulate(firstSeed, scenario, null);
+
+        SearchMetrics metrics = new SearchMetrics();
+        double[] scores = new double[lastSeed - firstSeed + 1];
+        long start = SearchMetrics.threadCpuTime();
+        for(int seed = firstSeed; seed <= lastSeed; seed++){
+            scores[seed - firstSeed] = simulate(seed, scenario, metrics).getFinalScore();
+        }
+        long runCpuNanos = SearchMetrics.threadCpuTime() - start;
+
+        Statistics scoreStatistics = new Statistics(scores);
+        long searches = metrics.getDispatches();
+        if(searches == 0){
+            return String.format("%5d floors, capacity %3d: run cpu %8.1fms, score %.1f", scenario.getFloors(),
+                    scenario.getTubeCapacity(), runCpuNanos / 1e6 / scores.length, scoreStatistics.mean());
+        }
+        return String.format("%5d floors, capacity %3d: %6d searches, %8.1fus and %7.0f nodes per search, "
+                        + "mean pool %6.1f, score %.1f", scenario.getFloors(), scenario.getTubeCapacity(), searches,
+                metrics.getCpuNanos() / 1e3 / searches, (double) metrics.getNodes() / searches,
+                metrics.getMeanPoolSize(), scoreStatistics.mean());
+    }
+
+    private SimulationResult simulate(int seed, Scenario scenario, SearchMetrics metrics){
+        Simulation simulation = new Simulation(seed, strategy);
+        simulation.setScenario(scenario);
+        simulation.setMailToCreate(mailToCreate);
+        simulation.setSearchMetrics(metrics);
+        return simulation.run();
+    }
+
+    private static int[] parseList(String list){
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,88 @@
+package automail;
+
+import strategies.SearchParameters;
+
+/**
+ * The outcome of running one configuration of the search over every seed of a sweep
+ */
+public class SweepResult {
+
+    private final SearchParameters parameters;
+    private final Statistics scores;
+    private final Statistics deliveryTimes;
+    private final long searchCpuNanos;
+    private final long searchNodes;
+
+    /**
+     * Constructor for a sweep result
+     * @param parameters configuration of the search
+     * @param scores final score of every run
+     * @param deliveryTimes final delivery time of every run
+     * @param searchCpuNanos CPU time the searches of all runs took together
+     * @param searchNodes nodes the searches of all runs expanded together
+     */
+    public SweepResult(SearchParameters parameters, Statistics scores, Statistics deliveryTimes,
+                       long searchCpuNanos, long searchNodes){
+        this.parameters = parameters;
+        this.scores = scores;
+        this.deliveryTimes = deliveryTimes;
+        this.searchCpuNanos = searchCpuNanos;
+        this.searchNodes = searchNodes;
+    }
+
+    /**
+     * @return configuration of the search
+     */
+    public SearchParameters getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return statistics of the final score over the runs
+     */
+    public Statistics getScores() {
+        return scores;
+    }
+
+    /**
+     * @return statistics of the final delivery time over the runs
+     */
+    public Statistics getDeliveryTimes() {
+        return deliveryTimes;
+    }
+
+    /**
+     * @return mean CPU time the searches of a run took, in nanoseconds
+     */
+    public double getMeanSearchCpuNanos() {
+        return (double) searchCpuNanos / scores.count();
+    }
+
+    /**
+     * @return mean number of nodes the searches of a run expanded
+     */
+    public double getMeanSearchNodes() {
+        return (double) searchNodes / scores.count();
+    }
+
+    /**
+     * Whether this configuration is at least as good as the other on both score and CPU time, and better on
+     * one of them. Lower scores are better.
+     * @param other result over the same seeds
+     * @return true if the other configuration is never worth picking over this one
+     */
+    public boolean dominates(SweepResult other){
+        double score = scores.mean();
+        double otherScore = other.scores.mean();
+        double cpu = getMeanSearchCpuNanos();
+        double otherCpu = other.getMeanSearchCpuNanos();
+        return score <= otherScore && cpu <= otherCpu && (score < otherScore || cpu < otherCpu);
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s: score %.1f (stddev %.1f), delivery time %.1f, search cpu %.1fms, nodes %.0f",
+                parameters, scores.mean(), scores.stddev(), deliveryTimes.mean(), getMeanSearchCpuNanos() / 1e6,
+                getMeanSearchNodes());
+    }
+}
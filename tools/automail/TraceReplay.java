@@ -0,0 +1,134 @@
+package automail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+
+import strategies.MailStrategy;
+
+/**
+ * Records, replays and measures mail traces, see MailTrace.
+ * record runs a simulation and keeps its workload, replay runs a strategy on a recorded workload,
+ * synthesize writes the arrivals of a large workload without simulating it, and scan feeds every arrival of
+ * a trace to a pool that drops it, which measures how fast a trace replays.
+ */
+public class TraceReplay {
+
+    /**
+     * Usage: TraceReplay record trace seed mailToCreate [strategy]
+     *        TraceReplay replay trace [strategy] [robots]
+     *        TraceReplay synthesize trace mailToCreate [seed]
+     *        TraceReplay scan trace
+     */
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2){
+            printUsage();
+            return;
+        }
+        Path trace = Paths.get(args[1]);
+        switch(args[0]){
+            case "record":
+                if(args.length < 4){
+                    printUsage();
+                    return;
+                }
+                Simulation recording = new Simulation(Integer.parseInt(args[2]), strategyOf(args, 4));
+                recording.setMailToCreate(Integer.parseInt(args[3]));
+                recording.setTraceRecording(trace);
+                recording.run();
+                recording.printResults();
+                break;
+            case "replay":
+                Simulation replay = new Simulation(new HashMap<>(), strategyOf(args, 2));
+                if(args.length > 3){
+                    replay.setRobotCount(Integer.parseInt(args[3]));
+                }
+                replay.setTraceReplay(trace);
+                replay.run();
+                replay.printResults();
+                break;
+            case "synthesize":
+                if(args.length < 3){
+                    printUsage();
+                    return;
+                }
+                long start = System.nanoTime();
+                int seed = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+                long records = synthesize(trace, Integer.parseInt(args[2]), seed);
+                report("Synthesized", records, Files.size(trace), System.nanoTime() - start);
+                break;
+            case "scan":
+                start = System.nanoTime();
+                long arrivals = scan(trace);
+                report("Replayed", arrivals, Files.size(trace), System.nanoTime() - start);
+                break;
+            default:
+                printUsage();
+        }
+    }
+
+    /**
+     * Writes the arrivals of mail generated as in a streaming simulation, without any robots delivering it
+     * @param trace file to write
+     * @param mailToCreate how many mail arrive
+     * @param seed seed of the generator
+     * @return number of records written
+     */
+    public static long synthesize(Path trace, int mailToCreate, int seed) throws IOException {
+        Clock previous = Clock.current();
+        Clock.bind(new Clock());
+        try (TraceRecorder recorder = new TraceRecorder(trace)) {
+            HashMap<Boolean, Integer> seedMap = new HashMap<>();
+            seedMap.put(true, seed);
+            IMailPool dropping = MailItem::retire;
+            IMailGenerator generator = new StreamingMailGenerator(mailToCreate, recorder.recordingArrivals(dropping), seedMap);
+            drain(generator);
+            return recorder.getRecordCount();
+        } finally {
+            Clock.bind(previous);
+        }
+    }
+
+    /**
+     * Adds every arrival of a trace to a pool that drops it straight away
+     * @param trace file written by a TraceRecorder
+     * @return number of arrivals replayed
+     */
+    public static long scan(Path trace) throws IOException {
+        Clock previous = Clock.current();
+        Clock.bind(new Clock());
+        try (TraceMailGenerator generator = new TraceMailGenerator(trace, MailItem::retire)) {
+            drain(generator);
+            return generator.getMailCreated();
+        } finally {
+            Clock.bind(previous);
+        }
+    }
+
+    /** Steps the generator from arrival to arrival until it is done */
+    private static void drain(IMailGenerator generator){
+        while(!generator.isComplete()){
+            Clock.JumpTo(generator.nextArrivalTime());
+            generator.step();
+        }
+    }
+
+    private static MailStrategy strategyOf(String[] args, int index){
+        return args.length > index ? MailStrategy.valueOf(args[index]) : MailStrategy.ADVANCED;
+    }
+
+    private static void report(String action, long records, long bytes, long elapsedNanos){
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s %d records in %.2fs: %.1fM records/s, %.0fMB/s%n", action, records, seconds,
+                records / seconds / 1e6, bytes / seconds / 1e6);
+    }
+
+    private static void printUsage(){
+        System.out.println("Usage: TraceReplay record trace seed mailToCreate [strategy]");
+        System.out.println("       TraceReplay replay trace [strategy] [robots]");
+        System.out.println("       TraceReplay synthesize trace mailToCreate [seed]");
+        System.out.println("       TraceReplay scan trace");
+    }
+}
@@ -0,0 +1,77 @@
+package strategies;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * ScoreKernel scoring as many candidates at once as the preferred vector holds doubles. Lane c follows
+ * candidate c through its mails exactly as the scalar kernel does, one multiply and one add per mail, and the
+ * penalties are gathered from the same table, so the scores are bit-identical to it. Built by
+ * ant compile-vector and used only when the run adds jdk.incubator.vector, see ScoreKernel.create.
+ * Candidates left over after the last full vector, and vectors with a waiting time outside the table, are
+ * scored by the scalar kernel.
+ */
+final class VectorScoreKernel extends ScoreKernel {
+    private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS =
+            VectorSpecies.of(int.class, VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+    private static final int LANES = DOUBLES.length();
+    /** Waiting times of one vector as gather indices, per thread as searches share the kernel */
+    private static final ThreadLocal<int[]> WAITS = ThreadLocal.withInitial(() -> new int[LANES]);
+
+    VectorScoreKernel() {
+        if (INTS.length() != LANES)
+            throw new IllegalStateException("No int vector of " + LANES + " lanes");
+    }
+
+    @Override
+    public void score(int count, int length, int[] floors, int[] arrivals, double[] weights, int stride,
+                      int mailroom, int startTime, double[] scores) {
+        int[] waits = WAITS.get();
+        int c = 0;
+        for (; c + LANES <= count; c += LANES) {
+            if (!scoreLanes(c, length, floors, arrivals, weights, stride, mailroom, startTime, scores, waits)) {
+                for (int lane = c; lane < c + LANES; lane++) {
+                    scores[lane] = scoreOne(lane, length, floors, arrivals, weights, stride, mailroom, startTime);
+                }
+            }
+        }
+        for (; c < count; c++) {
+            scores[c] = scoreOne(c, length, floors, arrivals, weights, stride, mailroom, startTime);
+        }
+    }
+
+    /***
+     * Score the candidates of one full vector starting at candidate c
+     * @return false, leaving the scores unwritten, if a waiting time fell outside the table
+     */
+    private static boolean scoreLanes(int c, int length, int[] floors, int[] arrivals, double[] weights,
+                                      int stride, int mailroom, int startTime, double[] scores, int[] waits) {
+        IntVector currTime = IntVector.broadcast(INTS, startTime);
+        IntVector currFloor = IntVector.broadcast(INTS, mailroom);
+        DoubleVector score = DoubleVector.zero(DOUBLES);
+        for (int k = 0, i = c; k < length; k++, i += stride) {
+            IntVector floor = IntVector.fromArray(INTS, floors, i);
+            currTime = currTime.add(currFloor.sub(floor).abs());
+            IntVector wait = currTime.sub(IntVector.fromArray(INTS, arrivals, i));
+            // negative waits compare as huge unsigned ones
+            if (wait.compare(VectorOperators.UNSIGNED_GE, TABLE_SIZE).anyTrue())
+                return false;
+            wait.intoArray(waits, 0);
+            DoubleVector penalty = DoubleVector.fromArray(DOUBLES, PENALTIES, 0, waits, 0);
+            score = score.add(penalty.mul(DoubleVector.fromArray(DOUBLES, weights, i)));
+            currTime = currTime.add(1);
+            currFloor = floor;
+        }
+        score.intoArray(scores, c);
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return "vector, " + LANES + " lanes";
+    }
+}